@@ -1 +1 @@
-docker build -t ucamcldtg/chemistry-checker . && docker run -p 80:80 -it ucamcldtg/chemistry-checker
+docker build -t ucamcldtg/chemistry-checker . && docker run -p 80:5000 -it ucamcldtg/chemistry-checker
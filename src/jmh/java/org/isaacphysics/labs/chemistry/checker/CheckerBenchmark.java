@@ -0,0 +1,125 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.isaacphysics.labs.chemistry.checker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the checker end to end, as the servlets call it: parsing, comparing and rendering JSON.
+ * Each operation is one pass over the whole corpus.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckerBenchmark {
+
+    /**
+     * Target answers, in corpus order.
+     */
+    private List<String> targets;
+
+    /**
+     * Test answers, each checked against the target at the same index.
+     */
+    private List<String> tests;
+
+    /**
+     * Loads the corpus and silences output.
+     *
+     * @throws IOException Corpus cannot be read.
+     */
+    @Setup
+    public void setUp() throws IOException {
+
+        Corpus corpus = Corpus.load();
+        targets = corpus.getTargets();
+        tests = corpus.getTests();
+
+        Corpus.silence();
+    }
+
+    /**
+     * Checks every test against its target as RunParser.check does when the result is not in {@link CheckCache}.
+     * After warm-up every target comes from the target cache, but every test is parsed and compared.
+     *
+     * @param bh Consumes the JSON results.
+     * @throws Exception Parser having trouble reading a statement.
+     */
+    @Benchmark
+    public void check(final Blackhole bh) throws Exception {
+        for (int i = 0; i < tests.size(); i++) {
+            bh.consume(JsonOutput.toString(RunParser.checkResult(tests.get(i), TargetCache.get(targets.get(i))),
+                    false));
+        }
+    }
+
+    /**
+     * Checks every test against its target with RunParser.check. After warm-up every result comes from
+     * {@link CheckCache}, so this measures a cache hit and the rendering of its JSON.
+     *
+     * @param bh Consumes the JSON results.
+     * @throws Exception Parser having trouble reading a statement.
+     */
+    @Benchmark
+    public void checkCached(final Blackhole bh) throws Exception {
+        for (int i = 0; i < tests.size(); i++) {
+            bh.consume(RunParser.check(tests.get(i), targets.get(i)));
+        }
+    }
+
+    /**
+     * Checks every test against its target, parsing the target afresh every time as if the cache always missed.
+     *
+     * @param bh Consumes the JSON results.
+     * @throws Exception Parser having trouble reading a statement.
+     */
+    @Benchmark
+    public void checkUncached(final Blackhole bh) throws Exception {
+        for (int i = 0; i < tests.size(); i++) {
+            bh.consume(JsonOutput.toString(
+                    RunParser.checkResult(tests.get(i), CompiledTarget.compile(targets.get(i))), false));
+        }
+    }
+
+    /**
+     * Parses every test with RunParser.parseFromString, as the /parse endpoint does.
+     *
+     * @param bh Consumes the JSON results.
+     */
+    @Benchmark
+    public void parseFromString(final Blackhole bh) {
+        for (String s : tests) {
+            bh.consume(RunParser.parseFromString(s));
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.isaacphysics.labs.chemistry.checker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the individual comparisons made by a check, on statements parsed ahead of time.
+ * Each operation compares every (target, test) pair in the corpus once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ComparisonBenchmark {
+
+    /**
+     * Parsed target answers, in corpus order.
+     */
+    private List<Statement> targets;
+
+    /**
+     * Parsed test answers, each compared against the target at the same index.
+     */
+    private List<Statement> tests;
+
+    /**
+     * Matchers compiled from the targets, in corpus order.
+     */
+    private List<TargetMatcher> matchers;
+
+    /**
+     * Loads and parses the corpus.
+     *
+     * @throws Exception Corpus cannot be read or parsed.
+     */
+    @Setup
+    public void setUp() throws Exception {
+
+        Corpus corpus = Corpus.load();
+        Corpus.silence();
+
+        targets = new ArrayList<>();
+        tests = new ArrayList<>();
+
+        for (String s : corpus.getTargets()) {
+            targets.add(Corpus.parse(s));
+        }
+
+        for (String s : corpus.getTests()) {
+            tests.add(Corpus.parse(s));
+        }
+
+        matchers = new ArrayList<>();
+
+        for (Statement target : targets) {
+            matchers.add(new TargetMatcher(target));
+        }
+    }
+
+    /**
+     * Compares every pair with equals.
+     *
+     * @param bh Consumes the results.
+     */
+    @Benchmark
+    public void equality(final Blackhole bh) {
+        for (int i = 0; i < targets.size(); i++) {
+            bh.consume(targets.get(i).equals(tests.get(i)));
+        }
+    }
+
+    /**
+     * Compares every pair with weaklyEquivalent.
+     *
+     * @param bh Consumes the results.
+     */
+    @Benchmark
+    public void weaklyEquivalent(final Blackhole bh) {
+        for (int i = 0; i < targets.size(); i++) {
+            bh.consume(targets.get(i).weaklyEquivalent(tests.get(i)));
+        }
+    }
+
+    /**
+     * Compares every chemical pair with sameCoefficients. Nuclear statements do not compare coefficients.
+     *
+     * @param bh Consumes the results.
+     */
+    @Benchmark
+    public void sameCoefficients(final Blackhole bh) {
+        for (int i = 0; i < targets.size(); i++) {
+
+            Statement target = targets.get(i);
+
+            if (target instanceof EquationStatement) {
+                bh.consume(((EquationStatement) target).sameCoefficients(tests.get(i)));
+            } else if (target instanceof ExpressionStatement) {
+                bh.consume(((ExpressionStatement) target).sameCoefficients(tests.get(i)));
+            }
+        }
+    }
+
+    /**
+     * Finds the wrong terms of every pair with getWrongTerms.
+     *
+     * @param bh Consumes the results.
+     */
+    @Benchmark
+    public void getWrongTerms(final Blackhole bh) {
+        for (int i = 0; i < targets.size(); i++) {
+            bh.consume(targets.get(i).getWrongTerms(tests.get(i)));
+        }
+    }
+
+    /**
+     * Makes every comparison a check reports, one method at a time, as checks did before targets had matchers.
+     *
+     * @param bh Consumes the results.
+     */
+    @Benchmark
+    public void allComparisons(final Blackhole bh) {
+        for (int i = 0; i < targets.size(); i++) {
+
+            Statement target = targets.get(i);
+            Statement test = tests.get(i);
+
+            bh.consume(target.equals(test));
+            bh.consume(target.weaklyEquivalent(test));
+
+            if (target instanceof EquationStatement) {
+                bh.consume(((EquationStatement) target).sameCoefficients(test));
+                bh.consume(((EquationStatement) target).sameStateSymbols(test));
+            } else if (target instanceof ExpressionStatement) {
+                bh.consume(((ExpressionStatement) target).sameCoefficients(test));
+                bh.consume(((ExpressionStatement) target).sameStateSymbols(test));
+            }
+
+            bh.consume(target.getWrongTerms(test));
+        }
+    }
+
+    /**
+     * Makes every comparison a check reports in one pass, with matchers compiled from the targets.
+     *
+     * @param bh Consumes the results.
+     */
+    @Benchmark
+    public void matcher(final Blackhole bh) {
+        for (int i = 0; i < matchers.size(); i++) {
+            bh.consume(matchers.get(i).match(tests.get(i)));
+        }
+    }
+}
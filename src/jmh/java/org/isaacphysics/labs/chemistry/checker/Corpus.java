@@ -0,0 +1,158 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.isaacphysics.labs.chemistry.checker;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The (target, test) pairs the benchmarks run over, read from <code>chemistry-corpus.tsv</code>.
+ */
+final class Corpus {
+
+    /**
+     * Name of the corpus resource.
+     */
+    private static final String RESOURCE = "/chemistry-corpus.tsv";
+
+    /**
+     * Target answers, in corpus order.
+     */
+    private final List<String> targets;
+
+    /**
+     * Test answers, in corpus order, each checked against the target at the same index.
+     */
+    private final List<String> tests;
+
+    /**
+     * Constructor method of Corpus.
+     *
+     * @param targets Target answers, in corpus order.
+     * @param tests Test answers, in corpus order.
+     */
+    private Corpus(final List<String> targets, final List<String> tests) {
+        this.targets = Collections.unmodifiableList(targets);
+        this.tests = Collections.unmodifiableList(tests);
+    }
+
+    /**
+     * Reads the corpus. Blank lines and lines starting with # are skipped.
+     *
+     * @return The corpus.
+     * @throws IOException The corpus resource is missing or malformed.
+     */
+    static Corpus load() throws IOException {
+
+        List<String> targets = new ArrayList<>();
+        List<String> tests = new ArrayList<>();
+
+        InputStream in = Corpus.class.getResourceAsStream(RESOURCE);
+
+        if (in == null) {
+            throw new IOException("Corpus " + RESOURCE + " not found.");
+        }
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+
+                if (line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] pair = line.split("\t");
+
+                if (pair.length != 2) {
+                    throw new IOException("Expected a target and a test separated by a tab: " + line);
+                }
+
+                targets.add(pair[0]);
+                tests.add(pair[1]);
+            }
+        }
+
+        return new Corpus(targets, tests);
+    }
+
+    /**
+     * Discards everything written to standard output and standard error from now on.
+     * <p>
+     *     The checker reports progress on standard output, and CUP reports syntax errors on standard error. Neither
+     *     should drown the benchmark results, nor be part of what is measured.
+     */
+    static void silence() {
+
+        PrintStream nowhere = new PrintStream(new OutputStream() {
+            @Override
+            public void write(final int b) {
+                // Discard.
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) {
+                // Discard.
+            }
+        });
+
+        System.setOut(nowhere);
+        System.setErr(nowhere);
+    }
+
+    /**
+     * Parses a single statement.
+     *
+     * @param s A single mhchem statement in string form.
+     * @return The parsed statement.
+     * @throws Exception Parser having trouble reading the string.
+     */
+    static Statement parse(final String s) throws Exception {
+        return StatementParser.parse(s);
+    }
+
+    /**
+     * @return Target answers, in corpus order.
+     */
+    List<String> getTargets() {
+        return targets;
+    }
+
+    /**
+     * @return Test answers, in corpus order.
+     */
+    List<String> getTests() {
+        return tests;
+    }
+
+    /**
+     * @return Every target and test answer, in corpus order.
+     */
+    List<String> getAll() {
+        List<String> all = new ArrayList<>(targets);
+        all.addAll(tests);
+        return all;
+    }
+}
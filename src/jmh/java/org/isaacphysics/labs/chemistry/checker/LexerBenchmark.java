@@ -0,0 +1,110 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.isaacphysics.labs.chemistry.checker;
+
+import java_cup.runtime.Symbol;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how fast ChemistryLexer splits the corpus into tokens.
+ * <p>
+ *     Besides the time per pass over the corpus, the <code>tokens</code> counter reports tokens per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LexerBenchmark {
+
+    /**
+     * Every statement in the corpus.
+     */
+    private List<String> statements;
+
+    /**
+     * Counts the tokens read, reported by JMH as a rate.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Tokens {
+
+        /**
+         * Number of tokens read in the current iteration.
+         */
+        public long tokens;
+
+        /**
+         * Resets the count before each iteration.
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            tokens = 0;
+        }
+    }
+
+    /**
+     * Loads the corpus.
+     *
+     * @throws IOException Corpus cannot be read.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        statements = Corpus.load().getAll();
+    }
+
+    /**
+     * Lexes every statement in the corpus.
+     *
+     * @param counter Counter of tokens read.
+     * @return Total of the token ids, so that the work cannot be optimised away.
+     * @throws IOException Lexer failed to read a statement.
+     */
+    @Benchmark
+    public long lexCorpus(final Tokens counter) throws IOException {
+
+        long checksum = 0;
+
+        for (String s : statements) {
+
+            ChemistryLexer lexer = new ChemistryLexer(new StringReader(s));
+
+            for (Symbol t = lexer.next_token(); t.sym != sym.EOF; t = lexer.next_token()) {
+                checksum += t.sym;
+                counter.tokens++;
+            }
+        }
+
+        return checksum;
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.isaacphysics.labs.chemistry.checker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency of ChemistryParser.parse, one pass over the whole corpus per operation.
+ * <p>
+ *     Parsing through {@link StatementParser}, which reuses one lexer and parser per thread, is compared with building
+ *     a new lexer and parser for every statement. Run with {@code -prof gc} to see the allocation difference.
+ * <p>
+ *     The corpus contains a deliberate syntax error, which CUP reports on standard error. Output is silenced during
+ *     the benchmark so that the report does not drown the results.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    /**
+     * Which statements of the corpus to parse: the targets, the tests, or both.
+     */
+    @Param({"all"})
+    private String subset;
+
+    /**
+     * Statements to be parsed.
+     */
+    private List<String> statements;
+
+    /**
+     * Loads the corpus and silences output.
+     *
+     * @throws IOException Corpus cannot be read.
+     */
+    @Setup
+    public void setUp() throws IOException {
+
+        Corpus corpus = Corpus.load();
+
+        if ("targets".equals(subset)) {
+            statements = corpus.getTargets();
+        } else if ("tests".equals(subset)) {
+            statements = corpus.getTests();
+        } else {
+            statements = corpus.getAll();
+        }
+
+        Corpus.silence();
+    }
+
+    /**
+     * Parses every selected statement in the corpus, reusing this thread's lexer and parser.
+     *
+     * @param bh Consumes the parsed statements.
+     * @throws Exception Parser having trouble reading a statement.
+     */
+    @Benchmark
+    public void parseCorpus(final Blackhole bh) throws Exception {
+        for (String s : statements) {
+            bh.consume(Corpus.parse(s));
+        }
+    }
+
+    /**
+     * Parses every selected statement in the corpus, with a new lexer and parser for each one.
+     *
+     * @param bh Consumes the parsed statements.
+     * @throws Exception Parser having trouble reading a statement.
+     */
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public void parseCorpusFresh(final Blackhole bh) throws Exception {
+        for (String s : statements) {
+            bh.consume(new ChemistryParser(new ChemistryLexer(new StringReader(s))).parse().value);
+        }
+    }
+}
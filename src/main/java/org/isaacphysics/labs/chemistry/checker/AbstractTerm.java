@@ -23,42 +23,27 @@ package org.isaacphysics.labs.chemistry.checker;
  */
 abstract class AbstractTerm implements Countable {
 
-    /**
-     * Helper static variable for issuing unique IDs.
-     */
-    private static int dotIdTracker = 0;
+    @Override
+    public abstract boolean equals(Object o);
 
-    /**
-     * Stores unique ID for every Term.
-     */
-    private int dotId;
+    @Override
+    public abstract int hashCode();
 
     /**
-     * Constructor function.
-     * Initializes dotId, so that every term has an unique ID number.
+     * Accepts a visitor, calling its method for this kind of term.
+     *
+     * @param visitor The visitor.
+     * @param <R> Type of result given by the visitor.
+     * @return Result given by the visitor.
      */
-    AbstractTerm() {
-        dotId = dotIdTracker;
-        dotIdTracker += 1;
-    }
+    abstract <R> R accept(AstVisitor<R> visitor);
 
     /**
-     * Gives the private unique ID for an abstract term.
+     * Gives everything derived from the counts in this term, worked out by {@link Analyser}.
      *
-     * @return Unique ID for an abstract term.
+     * @return Summary of the term.
      */
-    int getdotId() {
-        return dotId;
-    }
-
-    @Override
-    public abstract boolean equals(Object o);
-
-    @Override
-    public int hashCode() {
-        //System.out.printf("HashCode of %s: %d\n", toString(), toString().hashCode());
-        return toString().hashCode();
-    }
+    abstract Summary getSummary();
 
     /**
      * Defined for nuclear terms only.
@@ -44,9 +44,4 @@ public final class AlphaParticle extends SpecialNuclear {
         AlphaParticle p = (AlphaParticle) o;
         return p.getAtomicNumber().equals(getAtomicNumber()) && p.getMassNumber().equals(getMassNumber());
     }
-
-    @Override
-    public int hashCode() {
-        return toString().hashCode();
-    }
 }
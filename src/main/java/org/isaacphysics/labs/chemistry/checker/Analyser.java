@@ -0,0 +1,77 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.isaacphysics.labs.chemistry.checker;
+
+/**
+ * Works out the {@link Summary} of a node in a single pass, reusing the summaries already saved on its terms.
+ * Holds no state, so one instance serves every thread.
+ */
+final class Analyser implements AstVisitor<Summary> {
+
+    /**
+     * The only instance.
+     */
+    static final Analyser INSTANCE = new Analyser();
+
+    /**
+     * Constructor method of Analyser.
+     * Set to private, as the class holds no state and {@link #INSTANCE} can always be used.
+     */
+    private Analyser() {
+        // Nothing here.
+    }
+
+    @Override
+    public Summary visitExpression(final Expression expression) {
+
+        Summary summary = null;
+
+        for (AbstractTerm t : expression.getTerms()) {
+            summary = summary == null ? t.getSummary() : summary.plus(t.getSummary());
+        }
+
+        return summary;
+    }
+
+    @Override
+    public Summary visitTerm(final Term term) {
+        return term.getFormula().accept(this).times(term.getNumber().toFraction());
+    }
+
+    @Override
+    public Summary visitErrorTerm(final ErrorTerm term) {
+        return Summary.ERROR;
+    }
+
+    @Override
+    public Summary visitFormula(final Formula formula) {
+
+        Fraction massCount = null;
+        Fraction atomicCount = null;
+
+        // Only nuclear formulas have mass and atomic numbers, so check rather than catch NuclearException.
+        if (formula instanceof Nuclear) {
+            Nuclear n = (Nuclear) formula;
+            massCount = Fraction.valueOf(n.getMassNumber());
+            atomicCount = Fraction.valueOf(n.getAtomicNumber());
+        }
+
+        return new Summary(formula.getAtomVector(), formula.getCharge(), massCount, atomicCount, false,
+                formula.isValidAtomicNumber());
+    }
+}
@@ -46,9 +46,4 @@ public class AntiNeutrino extends SpecialNuclear {
         return p.getAtomicNumber().equals(getAtomicNumber()) && p.getMassNumber().equals(getMassNumber());
     }
 
-    @Override
-    public int hashCode() {
-        return toString().hashCode();
-    }
-
 }
@@ -0,0 +1,60 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.isaacphysics.labs.chemistry.checker;
+
+/**
+ * Visits the nodes of a parsed expression: the expression itself, its terms, and the formula of each term.
+ * <p>
+ *     Formulas are visited as a whole, as their atom counts and charges are already worked out as they are built.
+ *
+ * @param <R> Type of result given for each node.
+ */
+interface AstVisitor<R> {
+
+    /**
+     * Visits an expression.
+     *
+     * @param expression The expression.
+     * @return Result for the expression.
+     */
+    R visitExpression(Expression expression);
+
+    /**
+     * Visits a term.
+     *
+     * @param term The term.
+     * @return Result for the term.
+     */
+    R visitTerm(Term term);
+
+    /**
+     * Visits a term that could not be parsed.
+     *
+     * @param term The error term.
+     * @return Result for the error term.
+     */
+    R visitErrorTerm(ErrorTerm term);
+
+    /**
+     * Visits the formula of a term.
+     *
+     * @param formula The formula.
+     * @return Result for the formula.
+     */
+    R visitFormula(Formula formula);
+}
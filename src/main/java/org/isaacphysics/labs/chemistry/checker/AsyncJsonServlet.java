@@ -0,0 +1,633 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Base of the servlets that answer a JSON request body with a single JSON result, without tying up container threads.
+ * <p>
+ *     The body is read with a {@link ReadListener} as it arrives, so a slow client holds no thread while it sends.
+ *     Parsing and checking run on the {@link CheckingPool}, and the response is sent with a {@link WriteListener}.
+ *     An answer that is spread over several checking threads is sent once the last of them finishes.
+ *     When the pool is full the request is answered at once with 503 and a Retry-After header. Requests that take
+ *     longer than <code>chemistry.async.timeout</code> milliseconds (default 30000) are abandoned, and answered the
+ *     same way if their reply has not been started.
+ *
+ * @param <T> Type of the request body.
+ */
+abstract class AsyncJsonServlet<T> extends HttpServlet {
+
+    /**
+     * Logger for requests that fail unexpectedly.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncJsonServlet.class);
+
+    /**
+     * Milliseconds a request may take before it is abandoned.
+     */
+    static final long TIMEOUT = Long.getLong("chemistry.async.timeout", 30000L);
+
+    /**
+     * Size of the buffer each read is made into.
+     */
+    private static final int CHUNK_SIZE = 4096;
+
+    /**
+     * Endpoint the requests are counted under.
+     */
+    private final Metrics.Endpoint endpoint;
+
+    /**
+     * Name of the endpoint in trace lines.
+     */
+    private final String name;
+
+    /**
+     * Reads request bodies. Readers are immutable, so one is shared by all threads.
+     */
+    private final ObjectReader reader;
+
+    /**
+     * Largest request body, in bytes.
+     */
+    private final int maxBytes;
+
+    /**
+     * Constructor method of AsyncJsonServlet, for bodies of up to {@link RequestBody#MAX_BYTES} bytes.
+     *
+     * @param endpoint Endpoint the requests are counted under.
+     * @param name Name of the endpoint in trace lines.
+     * @param type Type of the request body.
+     */
+    AsyncJsonServlet(final Metrics.Endpoint endpoint, final String name, final Class<T> type) {
+        this(endpoint, name, type, RequestBody.MAX_BYTES);
+    }
+
+    /**
+     * Constructor method of AsyncJsonServlet.
+     *
+     * @param endpoint Endpoint the requests are counted under.
+     * @param name Name of the endpoint in trace lines.
+     * @param type Type of the request body.
+     * @param maxBytes Largest request body, in bytes.
+     */
+    AsyncJsonServlet(final Metrics.Endpoint endpoint, final String name, final Class<T> type, final int maxBytes) {
+        this.endpoint = endpoint;
+        this.name = name;
+        this.reader = RunParser.MAPPER.readerFor(type);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gives the time after which a request is abandoned.
+     *
+     * @param start Start time of the request, as given by {@link System#nanoTime()}.
+     * @return The deadline, as given by {@link System#nanoTime()}.
+     */
+    static long deadline(final long start) {
+        return start + TimeUnit.MILLISECONDS.toNanos(TIMEOUT);
+    }
+
+    /**
+     * Answers a request. Runs on a checking thread, and reports errors in the reply rather than throwing them.
+     *
+     * @param body The request body.
+     * @param deadline Time, as given by {@link System#nanoTime()}, after which the request is abandoned.
+     * @param trace Whether to log a trace line for the request.
+     * @return The reply.
+     */
+    abstract Reply answer(T body, long deadline, boolean trace);
+
+    /**
+     * Gives the result sent back, with 400, when the request body is not valid JSON.
+     *
+     * @param e Exception thrown while reading the body.
+     * @return JSON object describing the error.
+     */
+    JsonResult unreadable(final Exception e) {
+        return JsonResult.error(e.getClass().getSimpleName());
+    }
+
+    @Override
+    protected void doPost(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+
+        AsyncContext async = request.startAsync();
+        async.setTimeout(TIMEOUT);
+
+        // The stream is taken before any parameter is looked at, so that parameters never come from the body.
+        ServletInputStream in = request.getInputStream();
+        Exchange exchange = new Exchange(async, in, response, request.getParameter("pretty") != null);
+
+        async.addListener(exchange);
+
+        if (request.getContentLength() > maxBytes) {
+            exchange.tooLarge();
+        } else {
+            in.setReadListener(exchange);
+        }
+    }
+
+    /**
+     * Status and body of the response to a request.
+     */
+    static final class Reply {
+
+        /**
+         * HTTP status code.
+         */
+        private final int status;
+
+        /**
+         * Response body.
+         */
+        private final JsonResult body;
+
+        /**
+         * Whether the request was answered, rather than an error reported instead.
+         */
+        private final boolean answered;
+
+        /**
+         * The reply itself, when it is still being worked out, or null otherwise.
+         */
+        private final CompletableFuture<Reply> later;
+
+        /**
+         * Constructor method of Reply.
+         *
+         * @param status HTTP status code.
+         * @param body Response body.
+         * @param answered Whether the request was answered, rather than an error reported instead.
+         * @param later The reply itself, when it is still being worked out, or null otherwise.
+         */
+        private Reply(final int status, final JsonResult body, final boolean answered,
+                      final CompletableFuture<Reply> later) {
+            this.status = status;
+            this.body = body;
+            this.answered = answered;
+            this.later = later;
+        }
+
+        /**
+         * Gives the reply to a request that was answered.
+         *
+         * @param body Response body.
+         * @return The reply.
+         */
+        static Reply answer(final JsonResult body) {
+            return new Reply(HttpServletResponse.SC_OK, body, true, null);
+        }
+
+        /**
+         * Gives the reply to a request that could not be answered.
+         *
+         * @param status HTTP status code.
+         * @param body Response body, describing the error.
+         * @return The reply.
+         */
+        static Reply error(final int status, final JsonResult body) {
+            return new Reply(status, body, false, null);
+        }
+
+        /**
+         * Gives the reply to a request whose answer is still being worked out, e.g. on other checking threads.
+         * The future is cancelled if the request times out first.
+         *
+         * @param reply The reply, once it is known.
+         * @return The reply.
+         */
+        static Reply later(final CompletableFuture<Reply> reply) {
+            return new Reply(0, null, false, reply);
+        }
+    }
+
+    /**
+     * Buffer for a request body, which can be decoded without copying it first.
+     * <p>
+     *     The buffer starts at one chunk, whatever length the client declares, and grows only as data arrives, so
+     *     that a connection that has sent little holds little. It never grows past the largest body allowed.
+     */
+    private static final class Body extends ByteArrayOutputStream {
+
+        /**
+         * Largest size the buffer may grow to, in bytes.
+         */
+        private final int limit;
+
+        /**
+         * Constructor method of Body.
+         *
+         * @param limit Largest size the buffer may grow to, in bytes.
+         */
+        Body(final int limit) {
+            super(Math.min(CHUNK_SIZE, limit));
+            this.limit = limit;
+        }
+
+        /**
+         * Checks whether more bytes can be written without passing the limit.
+         *
+         * @param n Number of bytes about to be written.
+         * @return True if they fit within the limit.
+         */
+        boolean fits(final int n) {
+            return count + n <= limit;
+        }
+
+        @Override
+        public synchronized void write(final byte[] b, final int off, final int len) {
+
+            if (count + len > buf.length) {
+                buf = Arrays.copyOf(buf, Math.min(limit, Math.max(buf.length * 2, count + len)));
+            }
+
+            super.write(b, off, len);
+        }
+
+        /**
+         * Decodes the body as JSON.
+         *
+         * @param reader Reader for the type of body expected.
+         * @param <B> Type of body expected.
+         * @return The body.
+         * @throws IOException The body is not valid JSON for the type expected.
+         */
+        <B> B decode(final ObjectReader reader) throws IOException {
+            return reader.readValue(buf, 0, count);
+        }
+    }
+
+    /**
+     * A single request, from reading its body to sending the response.
+     */
+    private final class Exchange implements ReadListener, WriteListener, AsyncListener {
+
+        /**
+         * Context of the request.
+         */
+        private final AsyncContext async;
+
+        /**
+         * Stream the body is read from.
+         */
+        private final ServletInputStream in;
+
+        /**
+         * The response.
+         */
+        private final HttpServletResponse response;
+
+        /**
+         * Whether to indent the response.
+         */
+        private final boolean pretty;
+
+        /**
+         * Whether to log a trace line for the request.
+         */
+        private final boolean trace = RequestLog.sampled();
+
+        /**
+         * Start time of the request, from {@link Metrics.Endpoint#start()}.
+         */
+        private final long start = endpoint.start();
+
+        /**
+         * The body read so far.
+         */
+        private final Body body;
+
+        /**
+         * Buffer each read is made into.
+         */
+        private final byte[] chunk = new byte[CHUNK_SIZE];
+
+        /**
+         * Whether the request has been completed.
+         */
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        /**
+         * Whether a reply has been started, either the answer or the one sent on timing out. Only one ever is.
+         */
+        private final AtomicBoolean replied = new AtomicBoolean();
+
+        /**
+         * Whether the body was refused for being too large. Any more of it is read only to be thrown away.
+         */
+        private volatile boolean rejected;
+
+        /**
+         * Reply still being worked out, or null if there is none.
+         */
+        private volatile CompletableFuture<Reply> pending;
+
+        /**
+         * Response body still to be sent, or null once it has been.
+         */
+        private byte[] output;
+
+        /**
+         * Whether the request was answered, rather than an error reported instead.
+         */
+        private volatile boolean answered;
+
+        /**
+         * Constructor method of Exchange.
+         *
+         * @param async Context of the request.
+         * @param in Stream the body is read from.
+         * @param response The response.
+         * @param pretty Whether to indent the response.
+         */
+        Exchange(final AsyncContext async, final ServletInputStream in, final HttpServletResponse response,
+                 final boolean pretty) {
+            this.async = async;
+            this.in = in;
+            this.response = response;
+            this.pretty = pretty;
+            this.body = new Body(maxBytes);
+        }
+
+        @Override
+        public void onDataAvailable() throws IOException {
+
+            int n;
+
+            while (in.isReady() && (n = in.read(chunk)) != -1) {
+
+                if (rejected) {
+                    continue;
+                }
+
+                if (body.fits(n)) {
+                    body.write(chunk, 0, n);
+                } else {
+                    tooLarge();
+                }
+            }
+        }
+
+        @Override
+        public void onAllDataRead() throws IOException {
+
+            if (rejected) {
+                // Already answered with 413.
+                return;
+            }
+
+            T request;
+
+            try {
+                request = body.decode(reader);
+                Metrics.Phase.BODY_READ.recordSince(start);
+            } catch (IOException e) {
+                Metrics.exception(e);
+                reply(Reply.error(HttpServletResponse.SC_BAD_REQUEST, unreadable(e)));
+
+                if (trace) {
+                    // The request itself is not valid JSON, which is the client's problem rather than ours.
+                    RequestLog.TRACE.info("{} error={} message={}", name, e.getClass().getSimpleName(),
+                            RequestLog.quote(e.getMessage()));
+                }
+                return;
+            }
+
+            long queued = System.nanoTime();
+
+            try {
+                CheckingPool.execute(() -> {
+                    Metrics.Phase.QUEUE.recordSince(queued);
+                    run(request);
+                });
+            } catch (RejectedExecutionException e) {
+                Metrics.exception(e);
+                reply(Reply.error(HttpServletResponse.SC_SERVICE_UNAVAILABLE, JsonResult.error("Too busy!")));
+
+                if (trace) {
+                    RequestLog.TRACE.info("{} error=\"Too busy!\"", name);
+                }
+            }
+        }
+
+        /**
+         * Answers the request and starts sending the reply. Runs on a checking thread.
+         *
+         * @param request The request body.
+         */
+        private void run(final T request) {
+            try {
+                Reply reply = answer(request, deadline(start), trace);
+
+                if (reply.later == null) {
+                    reply(reply);
+                } else {
+                    pending = reply.later;
+                    reply.later.whenComplete(this::finish);
+                }
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Sends a reply that was worked out later, on whichever thread finished it.
+         *
+         * @param reply The reply, or null if it failed.
+         * @param t The reason it failed, or null if it did not.
+         */
+        private void finish(final Reply reply, final Throwable t) {
+
+            if (replied.get()) {
+                // Timed out already, and the client has been told so.
+                return;
+            }
+
+            try {
+                if (t != null) {
+                    fail(t);
+                } else {
+                    reply(reply);
+                }
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Refuses a request body that is too large. Any more of the body is read, but thrown away.
+         *
+         * @throws IOException Response cannot be written.
+         */
+        void tooLarge() throws IOException {
+
+            rejected = true;
+            reply(Reply.error(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, JsonResult.error("Request too large!")));
+
+            if (trace) {
+                RequestLog.TRACE.info("{} error=\"Request too large!\" length={}", name,
+                        async.getRequest().getContentLength());
+            }
+        }
+
+        /**
+         * Starts sending a reply.
+         *
+         * @param reply The reply.
+         * @throws IOException Reply cannot be written.
+         */
+        private void reply(final Reply reply) throws IOException {
+
+            if (!replied.compareAndSet(false, true)) {
+                // Timed out already, and the client has been told so.
+                return;
+            }
+
+            byte[] json = JsonOutput.toBytes(reply.body, pretty);
+
+            answered = reply.answered;
+            output = json;
+
+            response.setStatus(reply.status);
+
+            if (reply.status == HttpServletResponse.SC_SERVICE_UNAVAILABLE) {
+                response.setHeader("Retry-After", Integer.toString(CheckingPool.RETRY_AFTER));
+            }
+
+            JsonOutput.setContentType(response);
+            response.setContentLength(json.length);
+            response.getOutputStream().setWriteListener(this);
+        }
+
+        @Override
+        public void onWritePossible() throws IOException {
+
+            ServletOutputStream out = response.getOutputStream();
+
+            while (out.isReady()) {
+
+                if (output == null) {
+                    complete();
+                    return;
+                }
+
+                out.write(output);
+                output = null;
+            }
+        }
+
+        @Override
+        public void onError(final Throwable t) {
+            fail(t);
+        }
+
+        /**
+         * Gives up on the request after an unexpected error.
+         *
+         * @param t The error.
+         */
+        private void fail(final Throwable t) {
+
+            Metrics.exception(t);
+            answered = false;
+
+            if (!response.isCommitted()) {
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+
+            LOG.warn("Cannot answer {} request", name, t);
+            complete();
+        }
+
+        /**
+         * Completes the request, once only.
+         */
+        private void complete() {
+            if (completed.compareAndSet(false, true)) {
+                async.complete();
+            }
+        }
+
+        @Override
+        public void onComplete(final AsyncEvent event) {
+            endpoint.finish(start, !answered);
+        }
+
+        @Override
+        public void onTimeout(final AsyncEvent event) throws IOException {
+
+            answered = false;
+
+            if (trace) {
+                RequestLog.TRACE.info("{} error=\"Timed out!\"", name);
+            }
+
+            CompletableFuture<Reply> later = pending;
+
+            if (later != null) {
+                // Checks not yet started are dropped.
+                later.cancel(false);
+            }
+
+            // A reply already started is cut short. Otherwise no write listener has been set, so a blocking write
+            // is allowed, and the client is told to try again as when the pool is full.
+            if (replied.compareAndSet(false, true) && !response.isCommitted()) {
+
+                byte[] json = JsonOutput.toBytes(JsonResult.error("Timed out!"), pretty);
+
+                response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                response.setHeader("Retry-After", Integer.toString(CheckingPool.RETRY_AFTER));
+                JsonOutput.setContentType(response);
+                response.setContentLength(json.length);
+                response.getOutputStream().write(json);
+            }
+
+            complete();
+        }
+
+        @Override
+        public void onError(final AsyncEvent event) {
+            answered = false;
+        }
+
+        @Override
+        public void onStartAsync(final AsyncEvent event) {
+            // Nothing here.
+        }
+    }
+}
@@ -0,0 +1,468 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Immutable count of the atoms in a countable term, stored as a sparse vector indexed by atomic number.
+ * <p>
+ *     Counts are fractions kept in lowest terms with a positive denominator, held in primitive arrays sorted by
+ *     atomic number. An element that is mentioned but cancels out keeps an entry with a count of zero, so that two
+ *     vectors are equal exactly when the atom count maps they stand for are equal.
+ * <p>
+ *     As with {@link Fraction}, a vector whose counts do not all fit in longs is held in fractions instead, and
+ *     arithmetic that would overflow falls back to fractions. Vectors only go back to longs when every count fits.
+ */
+final class AtomVector {
+
+    /**
+     * Vector with no atoms at all.
+     */
+    static final AtomVector EMPTY = new AtomVector(new int[0], new long[0], new long[0], null, 0);
+
+    /**
+     * Atomic numbers of the elements counted, in increasing order.
+     */
+    private final int[] elements;
+
+    /**
+     * Numerators of the count of each element, or null if some count is too large for a long.
+     */
+    private final long[] numerators;
+
+    /**
+     * Denominators of the count of each element, always positive, or null if some count is too large for a long.
+     */
+    private final long[] denominators;
+
+    /**
+     * Count of each element if some count is too large for a long, otherwise null.
+     */
+    private final Fraction[] bigCounts;
+
+    /**
+     * Hash code, computed once as vectors never change.
+     */
+    private final int hash;
+
+    /**
+     * Constructor method of AtomVector. Takes ownership of the arrays, which must not be changed afterwards.
+     *
+     * @param elements Atomic numbers of the elements counted, in increasing order.
+     * @param numerators Numerators of the count of each element.
+     * @param denominators Denominators of the count of each element.
+     * @param bigCounts Count of each element if some count is too large for a long, in which case the numerators
+     *                  and denominators are null, otherwise null.
+     * @param size Number of entries in use at the start of each array.
+     */
+    private AtomVector(final int[] elements, final long[] numerators, final long[] denominators,
+                       final Fraction[] bigCounts, final int size) {
+
+        if (size == elements.length) {
+            this.elements = elements;
+            this.numerators = numerators;
+            this.denominators = denominators;
+            this.bigCounts = bigCounts;
+        } else {
+            this.elements = Arrays.copyOf(elements, size);
+            this.numerators = numerators == null ? null : Arrays.copyOf(numerators, size);
+            this.denominators = denominators == null ? null : Arrays.copyOf(denominators, size);
+            this.bigCounts = bigCounts == null ? null : Arrays.copyOf(bigCounts, size);
+        }
+
+        int h = Arrays.hashCode(this.elements);
+        h = 31 * h + Arrays.hashCode(this.numerators);
+        h = 31 * h + Arrays.hashCode(this.denominators);
+        this.hash = 31 * h + Arrays.hashCode(this.bigCounts);
+    }
+
+    /**
+     * Gives the atom count with the given counts, held in longs if they all fit.
+     *
+     * @param elements Atomic numbers of the elements counted, in increasing order.
+     * @param counts Count of each element.
+     * @param size Number of entries in use at the start of each array.
+     * @return The atom count.
+     */
+    private static AtomVector ofFractions(final int[] elements, final Fraction[] counts, final int size) {
+
+        long[] n = new long[size];
+        long[] d = new long[size];
+
+        for (int i = 0; i < size; i++) {
+
+            if (counts[i].isBig()) {
+                return new AtomVector(elements, null, null, counts, size);
+            }
+
+            n[i] = counts[i].getNumerator();
+            d[i] = counts[i].getDenominator();
+        }
+
+        return new AtomVector(elements, n, d, null, size);
+    }
+
+    /**
+     * @return True if some count is too large for a long, so the counts are held in fractions.
+     */
+    private boolean isBig() {
+        return bigCounts != null;
+    }
+
+    /**
+     * Gives the count of one element.
+     *
+     * @param i Index of the element in this vector.
+     * @return Number of atoms of that element.
+     */
+    private Fraction count(final int i) {
+        return isBig() ? bigCounts[i] : Fraction.valueOf(numerators[i], denominators[i]);
+    }
+
+    /**
+     * Gives the atom count of a number of atoms of a single element.
+     *
+     * @param symbol Symbol of the element, e.g. "Na".
+     * @param count Number of atoms.
+     * @return Vector counting only that element.
+     */
+    static AtomVector of(final String symbol, final long count) {
+
+        int z = PeriodicTable.atomicNumber(symbol);
+
+        if (z == 0) {
+            throw new IllegalArgumentException("Unknown element " + symbol + ".");
+        }
+
+        return ofFractions(new int[] {z}, new Fraction[] {Fraction.valueOf(count)}, 1);
+    }
+
+    /**
+     * Adds two atom counts, element by element.
+     *
+     * @param other Atom count to be added.
+     * @return The sum of the two counts.
+     */
+    AtomVector plus(final AtomVector other) {
+
+        if (other.elements.length == 0) {
+            return this;
+        } else if (elements.length == 0) {
+            return other;
+        } else if (isBig() || other.isBig()) {
+            return plusFractions(other);
+        }
+
+        int size = elements.length + other.elements.length;
+        int[] e = new int[size];
+        long[] n = new long[size];
+        long[] d = new long[size];
+
+        int i = 0;
+        int j = 0;
+        int k = 0;
+
+        // Both vectors are sorted, so a single merge pass lines up matching elements.
+        while (i < elements.length || j < other.elements.length) {
+
+            if (j == other.elements.length || (i < elements.length && elements[i] < other.elements[j])) {
+                e[k] = elements[i];
+                n[k] = numerators[i];
+                d[k] = denominators[i];
+                i++;
+            } else if (i == elements.length || other.elements[j] < elements[i]) {
+                e[k] = other.elements[j];
+                n[k] = other.numerators[j];
+                d[k] = other.denominators[j];
+                j++;
+            } else {
+                long g = gcd(denominators[i], other.denominators[j]);
+                long x = numerators[i] * (other.denominators[j] / g);
+                long y = other.numerators[j] * (denominators[i] / g);
+                long num = x + y;
+                long denom = denominators[i] / g * other.denominators[j];
+
+                // Overflow, or a sum of Long.MIN_VALUE that cannot be negated, is rare enough to redo with fractions.
+                if (multiplyOverflows(numerators[i], other.denominators[j] / g)
+                        || multiplyOverflows(other.numerators[j], denominators[i] / g)
+                        || ((x ^ num) & (y ^ num)) < 0 || num == Long.MIN_VALUE
+                        || multiplyOverflows(denominators[i] / g, other.denominators[j])) {
+                    return plusFractions(other);
+                }
+
+                long r = gcd(Math.abs(num), denom);
+
+                e[k] = elements[i];
+                n[k] = num / r;
+                d[k] = denom / r;
+                i++;
+                j++;
+            }
+
+            k++;
+        }
+
+        return new AtomVector(e, n, d, null, k);
+    }
+
+    /**
+     * Adds two atom counts, element by element, using fractions.
+     *
+     * @param other Atom count to be added.
+     * @return The sum of the two counts.
+     */
+    private AtomVector plusFractions(final AtomVector other) {
+
+        int size = elements.length + other.elements.length;
+        int[] e = new int[size];
+        Fraction[] c = new Fraction[size];
+
+        int i = 0;
+        int j = 0;
+        int k = 0;
+
+        while (i < elements.length || j < other.elements.length) {
+
+            if (j == other.elements.length || (i < elements.length && elements[i] < other.elements[j])) {
+                e[k] = elements[i];
+                c[k] = count(i);
+                i++;
+            } else if (i == elements.length || other.elements[j] < elements[i]) {
+                e[k] = other.elements[j];
+                c[k] = other.count(j);
+                j++;
+            } else {
+                e[k] = elements[i];
+                c[k] = count(i).plus(other.count(j));
+                i++;
+                j++;
+            }
+
+            k++;
+        }
+
+        return ofFractions(e, c, k);
+    }
+
+    /**
+     * Multiplies every count by a whole number.
+     *
+     * @param factor Number to multiply by.
+     * @return The scaled atom count.
+     */
+    AtomVector times(final long factor) {
+        return times(Fraction.valueOf(factor));
+    }
+
+    /**
+     * Multiplies every count by a fraction.
+     *
+     * @param factor Fraction to multiply by.
+     * @return The scaled atom count.
+     */
+    AtomVector times(final Fraction factor) {
+
+        if (isBig() || factor.isBig()) {
+            return timesFractions(factor);
+        }
+
+        return times(factor.getNumerator(), factor.getDenominator());
+    }
+
+    /**
+     * Multiplies every count by a fraction.
+     *
+     * @param num Numerator of the factor, not Long.MIN_VALUE.
+     * @param denom Denominator of the factor, positive.
+     * @return The scaled atom count.
+     */
+    private AtomVector times(final long num, final long denom) {
+
+        if (num == 1 && denom == 1) {
+            return this;
+        }
+
+        long[] n = new long[elements.length];
+        long[] d = new long[elements.length];
+
+        for (int i = 0; i < elements.length; i++) {
+
+            // Cancel common factors first, so that the product is already in lowest terms.
+            long g1 = gcd(Math.abs(numerators[i]), denom);
+            long g2 = gcd(Math.abs(num), denominators[i]);
+
+            if (multiplyOverflows(numerators[i] / g1, num / g2) || multiplyOverflows(denominators[i] / g2, denom / g1)
+                    || numerators[i] / g1 * (num / g2) == Long.MIN_VALUE) {
+                return timesFractions(Fraction.valueOf(num, denom));
+            }
+
+            n[i] = numerators[i] / g1 * (num / g2);
+            d[i] = denominators[i] / g2 * (denom / g1);
+
+            if (n[i] == 0) {
+                d[i] = 1;
+            }
+        }
+
+        return new AtomVector(elements, n, d, null, elements.length);
+    }
+
+    /**
+     * Multiplies every count by a fraction, using fractions.
+     *
+     * @param factor Fraction to multiply by.
+     * @return The scaled atom count.
+     */
+    private AtomVector timesFractions(final Fraction factor) {
+
+        Fraction[] c = new Fraction[elements.length];
+
+        for (int i = 0; i < elements.length; i++) {
+            c[i] = count(i).times(factor);
+        }
+
+        return ofFractions(elements, c, elements.length);
+    }
+
+    /**
+     * Gives the map view of this atom count, as reported to users.
+     *
+     * @return A fresh map from element symbol to number of atoms.
+     */
+    HashMap<String, Fraction> toMap() {
+
+        HashMap<String, Fraction> map = new HashMap<>();
+
+        for (int i = 0; i < elements.length; i++) {
+            map.put(PeriodicTable.symbol(elements[i]), count(i));
+        }
+
+        return map;
+    }
+
+    /**
+     * Writes this atom count to a {@link QuestionBank}.
+     *
+     * @param out Output to write to.
+     * @throws IOException The output cannot be written, or a count is too large for a long.
+     */
+    void writeTo(final DataOutput out) throws IOException {
+
+        if (isBig()) {
+            throw new IOException("Atom count " + this + " is too large to write.");
+        }
+
+        out.writeInt(elements.length);
+
+        for (int i = 0; i < elements.length; i++) {
+            out.writeByte(elements[i]);
+            out.writeLong(numerators[i]);
+            out.writeLong(denominators[i]);
+        }
+    }
+
+    /**
+     * Reads back an atom count written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in Buffer positioned at the atom count, which is moved past it.
+     * @return The atom count.
+     */
+    static AtomVector readFrom(final ByteBuffer in) {
+
+        int size = in.getInt();
+
+        if (size == 0) {
+            return EMPTY;
+        }
+
+        int[] e = new int[size];
+        long[] n = new long[size];
+        long[] d = new long[size];
+
+        for (int i = 0; i < size; i++) {
+            e[i] = in.get();
+            n[i] = in.getLong();
+            d[i] = in.getLong();
+        }
+
+        return new AtomVector(e, n, d, null, size);
+    }
+
+    /**
+     * Finds the gcd of two non-negative arguments.
+     *
+     * @param x First argument.
+     * @param y Second argument.
+     * @return GCD of two arguments, or the other argument if one is zero.
+     */
+    private static long gcd(final long x, final long y) {
+
+        long a = x;
+        long b = y;
+
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+
+        return a;
+    }
+
+    /**
+     * Checks if the product of two longs would overflow.
+     *
+     * @param x First factor.
+     * @param y Second factor.
+     * @return True if x * y does not fit in a long.
+     */
+    private static boolean multiplyOverflows(final long x, final long y) {
+        long r = x * y;
+        return (y != 0 && (r / y != x || (x == Long.MIN_VALUE && y == -1)));
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+
+        if (!(o instanceof AtomVector)) {
+            return false;
+        }
+
+        AtomVector other = (AtomVector) o;
+
+        return hash == other.hash
+                && Arrays.equals(elements, other.elements)
+                && Arrays.equals(numerators, other.numerators)
+                && Arrays.equals(denominators, other.denominators)
+                && Arrays.equals(bigCounts, other.bigCounts);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+}
@@ -0,0 +1,374 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This servlet checks many mhchem expressions in a single request, and gives back an array of the results
+ * {@link RunParser#check(String, String)} would give for each of them.
+ * <p>
+ *     The request is a JSON object, either with one <code>target</code> and an array of <code>tests</code>:
+ *     <pre>{"target": "H2O", "tests": ["H2O", "HO2"]}</pre>
+ *     or with an array of test/target <code>pairs</code>:
+ *     <pre>{"pairs": [{"test": "H2O", "target": "H2O"}, {"test": "NaCl", "target": "NaCl(aq)"}]}</pre>
+ *     Either form may also list the result <code>fields</code> wanted, as {@link CheckerServlet} does, which then
+ *     apply to every answer. Results are in the same order as the inputs. An input that cannot be parsed gives an
+ *     <code>{"error": ...}</code> object in its place, like CheckerServlet does.
+ * <p>
+ *     Requests are handled asynchronously, see {@link AsyncJsonServlet}. The answers are shared out between up to
+ *     one task per {@link CheckingPool} thread, each of which takes the next unchecked answer until none are left, and
+ *     compiles its target through the {@link TargetCache}. At most <code>chemistry.batch.maxSize</code> (default
+ *     1000) answers are accepted per request, in a body of at most <code>chemistry.batch.maxBytes</code> (default 1M)
+ *     bytes.
+ */
+public class BatchCheckerServlet extends AsyncJsonServlet<JsonNode> {
+
+    /**
+     * Default maximum number of answers in one request.
+     */
+    private static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+
+    /**
+     * Default largest request body, in bytes.
+     */
+    private static final int DEFAULT_MAX_BYTES = 1024 * 1024;
+
+    /**
+     * Maximum number of answers in one request.
+     */
+    private final int maxBatchSize = Integer.getInteger("chemistry.batch.maxSize", DEFAULT_MAX_BATCH_SIZE);
+
+    /**
+     * Constructor method of BatchCheckerServlet.
+     */
+    public BatchCheckerServlet() {
+        super(Metrics.Endpoint.CHECK_BATCH, "check_batch", JsonNode.class,
+                Integer.getInteger("chemistry.batch.maxBytes", DEFAULT_MAX_BYTES));
+    }
+
+    /**
+     * Checks every answer in a request, sharing them out over the checking threads.
+     *
+     * @param req The request body.
+     * @param deadline Time, as given by {@link System#nanoTime()}, after which the request is abandoned.
+     * @param trace Whether to log a trace line for the request.
+     * @return The results, once the last answer has been checked, or the error reported instead.
+     */
+    @Override
+    Reply answer(final JsonNode req, final long deadline, final boolean trace) {
+
+        List<String[]> inputs = readInputs(req);
+
+        if (inputs == null) {
+
+            if (trace) {
+                RequestLog.TRACE.info("check_batch error=\"Bad input!\"");
+            }
+
+            return Reply.error(HttpServletResponse.SC_BAD_REQUEST, JsonResult.error("Bad input!"));
+        }
+
+        if (inputs.size() > maxBatchSize) {
+
+            if (trace) {
+                RequestLog.TRACE.info("check_batch error=\"Too many answers!\" answers={}", inputs.size());
+            }
+
+            return Reply.error(HttpServletResponse.SC_BAD_REQUEST,
+                    JsonResult.error("Too many answers! At most " + maxBatchSize + " allowed."));
+        }
+
+        Set<CheckResult.Field> fields;
+
+        try {
+            fields = readFields(req);
+        } catch (IllegalArgumentException e) {
+
+            if (trace) {
+                RequestLog.TRACE.info("check_batch error=\"Bad fields!\" fields={}", req.get("fields"));
+            }
+
+            return Reply.error(HttpServletResponse.SC_BAD_REQUEST, JsonResult.error(e.getMessage()));
+        }
+
+        if (trace) {
+            RequestLog.TRACE.info("check_batch answers={} targets={} description={}", inputs.size(),
+                    inputs.stream().map(input -> input[1]).distinct().count(),
+                    RequestLog.quote(req.path("description").asText(null)));
+        }
+
+        Batch batch = new Batch(inputs, fields, deadline, trace);
+        int tasks = Math.min(CheckingPool.threads(), inputs.size());
+        int started = 0;
+
+        for (int i = 0; i < tasks; i++) {
+            try {
+                CheckingPool.execute(batch::run);
+                started++;
+            } catch (RejectedExecutionException e) {
+                // The tasks already queued check every answer between them, only more slowly.
+                break;
+            }
+        }
+
+        if (started == 0) {
+            // No room at all, so this thread checks the whole batch itself.
+            batch.run();
+        }
+
+        return Reply.later(batch.reply);
+    }
+
+    @Override
+    JsonResult unreadable(final Exception e) {
+        return JsonResult.error("Bad input!");
+    }
+
+    /**
+     * Reads the (test, target) pairs to be checked from a request.
+     *
+     * @param req The JSON request.
+     * @return List of {test, target} arrays, or null if the request is malformed.
+     */
+    private static List<String[]> readInputs(final JsonNode req) {
+
+        List<String[]> inputs = new ArrayList<>();
+
+        if (req.path("target").isTextual() && req.path("tests").isArray()) {
+
+            String target = req.get("target").asText();
+
+            for (JsonNode test : req.get("tests")) {
+                if (!test.isTextual()) {
+                    return null;
+                }
+                inputs.add(new String[] {test.asText(), target});
+            }
+
+        } else if (req.path("pairs").isArray()) {
+
+            for (JsonNode pair : req.get("pairs")) {
+                if (!pair.path("test").isTextual() || !pair.path("target").isTextual()) {
+                    return null;
+                }
+                inputs.add(new String[] {pair.get("test").asText(), pair.get("target").asText()});
+            }
+
+        } else {
+            return null;
+        }
+
+        return inputs;
+    }
+
+    /**
+     * Reads the result fields asked for in a request.
+     *
+     * @param req The JSON request.
+     * @return The fields, or all of them if the request does not list any.
+     * @throws IllegalArgumentException The fields are not an array of field names.
+     */
+    private static Set<CheckResult.Field> readFields(final JsonNode req) {
+
+        JsonNode fields = req.path("fields");
+
+        if (fields.isMissingNode() || fields.isNull()) {
+            return CheckResult.Field.ALL;
+        } else if (!fields.isArray()) {
+            throw new IllegalArgumentException("Fields must be an array.");
+        }
+
+        List<String> names = new ArrayList<>();
+
+        for (JsonNode name : fields) {
+            names.add(name.asText());
+        }
+
+        return CheckResult.Field.parse(names);
+    }
+
+    /**
+     * Gives the JSON object reported in place of a failed check.
+     *
+     * @param e The reason the check failed.
+     * @return JSON object describing the error.
+     */
+    private static JsonResult error(final Throwable e) {
+
+        Metrics.exception(e);
+
+        if (e instanceof ParseException) {
+            return ((ParseException) e).getSyntaxError().asFailure();
+        } else if (e instanceof TimeoutException) {
+            return JsonResult.error("Timed out!");
+        }
+
+        return JsonResult.error(e.getClass().getSimpleName());
+    }
+
+    /**
+     * The answers in one request, and their results as they are checked.
+     */
+    private static final class Batch {
+
+        /**
+         * List of {test, target} arrays to be checked.
+         */
+        private final List<String[]> inputs;
+
+        /**
+         * Fields to work out.
+         */
+        private final Set<CheckResult.Field> fields;
+
+        /**
+         * Time, as given by {@link System#nanoTime()}, after which the request is abandoned.
+         */
+        private final long deadline;
+
+        /**
+         * Whether to log a trace line for each result.
+         */
+        private final boolean trace;
+
+        /**
+         * Result of each answer, in input order.
+         */
+        private final JsonResult[] results;
+
+        /**
+         * Index of the next answer to be checked.
+         */
+        private final AtomicInteger next = new AtomicInteger();
+
+        /**
+         * Number of answers not yet checked.
+         */
+        private final AtomicInteger left;
+
+        /**
+         * Targets that could not be compiled, so that they are only parsed once per request.
+         */
+        private final Map<String, Exception> failedTargets = new ConcurrentHashMap<>();
+
+        /**
+         * The reply, completed once every answer has been checked.
+         */
+        private final CompletableFuture<Reply> reply = new CompletableFuture<>();
+
+        /**
+         * Constructor method of Batch.
+         *
+         * @param inputs List of {test, target} arrays to be checked.
+         * @param fields Fields to work out.
+         * @param deadline Time, as given by {@link System#nanoTime()}, after which the request is abandoned.
+         * @param trace Whether to log a trace line for each result.
+         */
+        Batch(final List<String[]> inputs, final Set<CheckResult.Field> fields, final long deadline,
+              final boolean trace) {
+            this.inputs = inputs;
+            this.fields = fields;
+            this.deadline = deadline;
+            this.trace = trace;
+            this.results = new JsonResult[inputs.size()];
+            this.left = new AtomicInteger(inputs.size());
+
+            if (inputs.isEmpty()) {
+                finish();
+            }
+        }
+
+        /**
+         * Checks answers until there are none left, or the request has been given up on.
+         */
+        void run() {
+
+            int i;
+
+            while (!reply.isDone() && (i = next.getAndIncrement()) < results.length) {
+
+                results[i] = check(inputs.get(i)[0], inputs.get(i)[1]);
+
+                if (trace) {
+                    RequestLog.TRACE.info("check_batch {}", results[i]);
+                }
+
+                if (left.decrementAndGet() == 0) {
+                    finish();
+                }
+            }
+        }
+
+        /**
+         * Checks a single answer. Errors are reported in the result rather than thrown.
+         *
+         * @param test User-inputted string.
+         * @param targetString Target to be matched with.
+         * @return The check result, or an error object.
+         */
+        private JsonResult check(final String test, final String targetString) {
+
+            Exception failed = failedTargets.get(targetString);
+
+            if (failed != null) {
+                return error(failed);
+            }
+
+            CompiledTarget target;
+
+            try {
+                target = TargetCache.get(targetString, deadline);
+            } catch (Exception e) {
+                failedTargets.put(targetString, e);
+                return error(e);
+            }
+
+            try {
+                return CheckCache.get(test, target, fields, deadline);
+            } catch (Exception e) {
+                return error(e);
+            }
+        }
+
+        /**
+         * Completes the reply with every result, in input order.
+         */
+        private void finish() {
+            reply.complete(Reply.answer(g -> {
+                g.writeStartArray();
+
+                for (JsonResult result : results) {
+                    result.writeTo(g);
+                }
+
+                g.writeEndArray();
+            }));
+        }
+    }
+}
@@ -44,9 +44,4 @@ public final class BetaParticle extends SpecialNuclear {
         BetaParticle p = (BetaParticle) o;
         return p.getAtomicNumber().equals(getAtomicNumber()) && p.getMassNumber().equals(getMassNumber());
     }
-
-    @Override
-    public int hashCode() {
-        return toString().hashCode();
-    }
 }
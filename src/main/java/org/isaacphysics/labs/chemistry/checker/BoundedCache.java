@@ -0,0 +1,413 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size- and age-bounded cache that is safe to share between request threads.
+ * <p>
+ *     Keys are spread over a number of independently locked segments, each of which evicts its least recently used
+ *     entry once full. Entries older than the time-to-live are treated as missing and dropped on access. A key that
+ *     several threads miss on at once is only loaded by one of them, and the others wait for it no longer than their
+ *     own deadline.
+ *
+ * @param <K> Type of the keys.
+ * @param <V> Type of the cached values.
+ */
+final class BoundedCache<K, V> {
+
+    /**
+     * Computes the value for a key that is not in the cache.
+     *
+     * @param <K> Type of the keys.
+     * @param <V> Type of the values.
+     */
+    interface Loader<K, V> {
+
+        /**
+         * Computes the value of a key.
+         *
+         * @param key Key whose value is missing.
+         * @return Value of the key, never null.
+         * @throws Exception Value cannot be computed; nothing is cached.
+         */
+        V load(K key) throws Exception;
+    }
+
+    /**
+     * Maximum number of segments the cache is split into.
+     */
+    private static final int MAX_SEGMENTS = 16;
+
+    /**
+     * Independently locked parts of the cache.
+     */
+    private final Segment<V>[] segments;
+
+    /**
+     * Time in nanoseconds an entry stays valid after being stored. Non-positive means forever.
+     */
+    private final long ttlNanos;
+
+    /**
+     * Number of lookups answered from the cache.
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * Number of lookups that were not in the cache.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Number of entries dropped, either for space or for age.
+     */
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Number of misses that waited for another thread to load the same key.
+     */
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Keys being loaded right now, with the load that will give their value.
+     */
+    private final ConcurrentHashMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor method of BoundedCache.
+     *
+     * @param maxSize Maximum number of entries held at once.
+     * @param ttl Time an entry stays valid after being stored. Non-positive means forever.
+     * @param unit Unit of ttl.
+     */
+    @SuppressWarnings("unchecked")
+    BoundedCache(final int maxSize, final long ttl, final TimeUnit unit) {
+
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size must be positive, got " + maxSize + ".");
+        }
+
+        int segmentCount = 1;
+
+        while (segmentCount < MAX_SEGMENTS && segmentCount * 2 <= maxSize) {
+            segmentCount *= 2;
+        }
+
+        segments = (Segment<V>[]) new Segment[segmentCount];
+
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>((maxSize + segmentCount - 1) / segmentCount, evictions);
+        }
+
+        ttlNanos = unit.toNanos(ttl);
+    }
+
+    /**
+     * Looks up a key in the cache.
+     *
+     * @param key Key to look up.
+     * @return The cached value, or null if it is absent or has expired.
+     */
+    V get(final K key) {
+
+        V value = lookup(key);
+
+        if (value == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+
+        return value;
+    }
+
+    /**
+     * Looks up a key in the cache without counting the lookup, dropping the entry if it has expired.
+     *
+     * @param key Key to look up.
+     * @return The cached value, or null if it is absent or has expired.
+     */
+    private V lookup(final K key) {
+
+        Segment<V> segment = segmentFor(key);
+
+        synchronized (segment) {
+            Entry<V> entry = segment.get(key);
+
+            if (entry == null) {
+                return null;
+            }
+
+            if (entry.isExpired(System.nanoTime())) {
+                segment.remove(key);
+                evictions.incrementAndGet();
+                return null;
+            }
+
+            return entry.value;
+        }
+    }
+
+    /**
+     * Stores a value in the cache, possibly evicting the least recently used entry of its segment.
+     *
+     * @param key Key of the value.
+     * @param value Value to be stored.
+     */
+    void put(final K key, final V value) {
+
+        Entry<V> entry = new Entry<>(value, ttlNanos > 0 ? System.nanoTime() + ttlNanos : 0);
+        Segment<V> segment = segmentFor(key);
+
+        synchronized (segment) {
+            segment.put(key, entry);
+        }
+    }
+
+    /**
+     * Returns the value of a key, computing and storing it if it is not cached.
+     * <p>
+     *     The value is computed outside of any lock, so that slow loaders do not block unrelated lookups. Threads that
+     *     miss on a key while another thread is already computing it wait for that computation and share its value,
+     *     or its exception, instead of computing it again. They stop waiting at the deadline, so that a load that
+     *     never finishes cannot hold up every thread that wants the same key.
+     *
+     * @param key Key to look up.
+     * @param loader Computes the value when it is absent.
+     * @param deadline Time, as given by {@link System#nanoTime()}, after which another thread's load is not waited for.
+     * @return The cached or freshly computed value.
+     * @throws TimeoutException Another thread was loading the key, and did not finish by the deadline.
+     * @throws Exception The loader failed.
+     */
+    V get(final K key, final Loader<? super K, ? extends V> loader, final long deadline) throws Exception {
+
+        V value = get(key);
+
+        if (value != null) {
+            return value;
+        }
+
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> running = loading.putIfAbsent(key, mine);
+
+        if (running != null) {
+            coalesced.incrementAndGet();
+            return await(running, deadline);
+        }
+
+        try {
+            // The thread that loaded the key last may have finished between the miss above and claiming the key.
+            value = lookup(key);
+
+            if (value == null) {
+                value = loader.load(key);
+                put(key, value);
+            }
+
+            mine.complete(value);
+            return value;
+
+        } catch (Exception | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, mine);
+        }
+    }
+
+    /**
+     * Waits for another thread to finish loading a key.
+     *
+     * @param running The other thread's load.
+     * @param deadline Time, as given by {@link System#nanoTime()}, after which the load is no longer waited for.
+     * @return The value it loaded.
+     * @throws TimeoutException The load did not finish by the deadline. It is left running.
+     * @throws Exception The other thread's loader failed, or this thread was interrupted while waiting.
+     */
+    private V await(final CompletableFuture<V> running, final long deadline) throws Exception {
+        try {
+            return running.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+
+            Throwable cause = e.getCause();
+
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw (Exception) cause;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+
+    /**
+     * Removes every entry from the cache. Counters are left untouched.
+     */
+    void clear() {
+        for (Segment<V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * @return Number of entries currently held, including any that have expired but not yet been dropped.
+     */
+    int size() {
+
+        int size = 0;
+
+        for (Segment<V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * @return Number of lookups answered from the cache.
+     */
+    long hitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return Number of lookups that were not in the cache.
+     */
+    long missCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return Number of entries dropped, either for space or for age.
+     */
+    long evictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * @return Number of misses that waited for another thread to load the same key.
+     */
+    long coalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * Finds the segment responsible for a key.
+     *
+     * @param key Key to be stored or looked up.
+     * @return Segment that holds the key.
+     */
+    private Segment<V> segmentFor(final Object key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return segments[h & (segments.length - 1)];
+    }
+
+    /**
+     * A cached value, with the time it stops being valid.
+     *
+     * @param <V> Type of the value.
+     */
+    private static final class Entry<V> {
+
+        /**
+         * The cached value.
+         */
+        private final V value;
+
+        /**
+         * System.nanoTime() after which the entry is expired, or 0 if it never expires.
+         */
+        private final long expiresAt;
+
+        /**
+         * Constructor method of Entry.
+         *
+         * @param value The cached value.
+         * @param expiresAt System.nanoTime() after which the entry is expired, or 0 if it never expires.
+         */
+        Entry(final V value, final long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * @param now Current System.nanoTime().
+         * @return True if the entry should no longer be served.
+         */
+        boolean isExpired(final long now) {
+            return expiresAt != 0 && now - expiresAt > 0;
+        }
+    }
+
+    /**
+     * A least recently used map holding part of the cache. Must only be used while holding its lock.
+     *
+     * @param <V> Type of the cached values.
+     */
+    private static final class Segment<V> extends LinkedHashMap<Object, Entry<V>> {
+
+        /**
+         * Maximum number of entries in this segment.
+         */
+        private final int capacity;
+
+        /**
+         * Counter of evicted entries, shared by all segments of a cache.
+         */
+        private final AtomicLong evictions;
+
+        /**
+         * Constructor method of Segment.
+         *
+         * @param capacity Maximum number of entries in this segment.
+         * @param evictions Counter of evicted entries, shared by all segments of a cache.
+         */
+        Segment(final int capacity, final AtomicLong evictions) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Object, Entry<V>> eldest) {
+
+            if (size() > capacity) {
+                evictions.incrementAndGet();
+                return true;
+            }
+
+            return false;
+        }
+    }
+}
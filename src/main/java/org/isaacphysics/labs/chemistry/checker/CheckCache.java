@@ -0,0 +1,193 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide cache of check results, keyed by the (test, target) pair of strings and the fields asked for.
+ * <p>
+ *     When many users submit the same answer at once, it is checked by one thread and the others wait for that
+ *     result, which is then kept for later submissions. Keys are the strings exactly as given, since results quote
+ *     them back. Results are shared, which is safe as they cannot be changed once built.
+ * <p>
+ *     The size and time-to-live can be set with the system properties
+ *     <code>chemistry.checkCache.maxSize</code> (default 10000 entries) and
+ *     <code>chemistry.checkCache.ttlSeconds</code> (default 600, 0 to never expire).
+ */
+final class CheckCache {
+
+    /**
+     * Default maximum number of cached results.
+     */
+    private static final int DEFAULT_MAX_SIZE = 10000;
+
+    /**
+     * Default lifetime of a cached result, in seconds.
+     */
+    private static final long DEFAULT_TTL_SECONDS = 600;
+
+    /**
+     * The cache itself.
+     */
+    private static final BoundedCache<Key, CheckResult> CACHE = new BoundedCache<>(
+            Integer.getInteger("chemistry.checkCache.maxSize", DEFAULT_MAX_SIZE),
+            Long.getLong("chemistry.checkCache.ttlSeconds", DEFAULT_TTL_SECONDS),
+            TimeUnit.SECONDS);
+
+    /**
+     * Constructor method of CheckCache.
+     * Set to private, because we don't want people to instantiate an utility class.
+     */
+    private CheckCache() {
+        // Nothing here.
+    }
+
+    /**
+     * Returns the result of checking user input against a target, checking it only if it is not already cached.
+     * Waits for the same check running in another thread for as long as a request may take.
+     *
+     * @param testString User-inputted string.
+     * @param target Target to be matched with.
+     * @param fields Fields to work out.
+     * @return Result of the matching, as given by {@link RunParser#checkResult(String, CompiledTarget, Set)}.
+     * @throws Exception Parser having trouble reading the user input, or another thread taking too long to.
+     */
+    static CheckResult get(final String testString, final CompiledTarget target,
+                           final Set<CheckResult.Field> fields) throws Exception {
+        return get(testString, target, fields, AsyncJsonServlet.deadline(System.nanoTime()));
+    }
+
+    /**
+     * Returns the result of checking user input against a target, checking it only if it is not already cached.
+     *
+     * @param testString User-inputted string.
+     * @param target Target to be matched with.
+     * @param fields Fields to work out.
+     * @param deadline Time, as given by {@link System#nanoTime()}, after which the same check running in another
+     *                 thread is no longer waited for.
+     * @return Result of the matching, as given by {@link RunParser#checkResult(String, CompiledTarget, Set)}.
+     * @throws java.util.concurrent.TimeoutException Another thread was running the check, and did not finish in time.
+     * @throws Exception Parser having trouble reading the user input.
+     */
+    static CheckResult get(final String testString, final CompiledTarget target,
+                           final Set<CheckResult.Field> fields, final long deadline) throws Exception {
+        return CACHE.get(new Key(testString, target.getSource(), CheckResult.Field.mask(fields)),
+                key -> RunParser.checkResult(testString, target, fields), deadline);
+    }
+
+    /**
+     * Drops every cached result.
+     */
+    static void clear() {
+        CACHE.clear();
+    }
+
+    /**
+     * @return Number of results currently cached.
+     */
+    static int size() {
+        return CACHE.size();
+    }
+
+    /**
+     * @return Number of checks answered from the cache.
+     */
+    static long hitCount() {
+        return CACHE.hitCount();
+    }
+
+    /**
+     * @return Number of checks that were not in the cache.
+     */
+    static long missCount() {
+        return CACHE.missCount();
+    }
+
+    /**
+     * @return Number of checks that waited for the same check already running in another thread.
+     */
+    static long coalescedCount() {
+        return CACHE.coalescedCount();
+    }
+
+    /**
+     * @return Number of results dropped from the cache, either for space or for age.
+     */
+    static long evictionCount() {
+        return CACHE.evictionCount();
+    }
+
+    /**
+     * A (test, target) pair of strings, with the fields asked for.
+     */
+    private static final class Key {
+
+        /**
+         * User-inputted string.
+         */
+        private final String test;
+
+        /**
+         * Target string.
+         */
+        private final String target;
+
+        /**
+         * Fields asked for, as given by {@link CheckResult.Field#mask(Set)}.
+         */
+        private final int fields;
+
+        /**
+         * Hash code, computed once as keys never change.
+         */
+        private final int hash;
+
+        /**
+         * Constructor method of Key.
+         *
+         * @param test User-inputted string.
+         * @param target Target string.
+         * @param fields Fields asked for, as a bit mask.
+         */
+        Key(final String test, final String target, final int fields) {
+            this.test = test;
+            this.target = target;
+            this.fields = fields;
+            this.hash = 31 * (31 * test.hashCode() + target.hashCode()) + fields;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) o;
+
+            return hash == other.hash && fields == other.fields && test.equals(other.test)
+                    && target.equals(other.target);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
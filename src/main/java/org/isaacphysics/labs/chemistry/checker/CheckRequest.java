@@ -0,0 +1,98 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Body of a request to {@link CheckerServlet}:
+ * <code>{"test": ..., "target": ..., "fields": [...], "description": ...}</code>.
+ * Any other properties are ignored.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+final class CheckRequest {
+
+    /**
+     * User input to be checked, or null if missing.
+     */
+    private final String test;
+
+    /**
+     * Target to check against, or null if missing.
+     */
+    private final String target;
+
+    /**
+     * Names of the result fields asked for, or null for all of them.
+     */
+    private final List<String> fields;
+
+    /**
+     * Free text describing the request, only used for logging.
+     */
+    private final String description;
+
+    /**
+     * Constructor method of CheckRequest, used by Jackson.
+     *
+     * @param test User input to be checked.
+     * @param target Target to check against.
+     * @param fields Names of the result fields asked for.
+     * @param description Free text describing the request.
+     */
+    @JsonCreator
+    CheckRequest(@JsonProperty("test") final String test, @JsonProperty("target") final String target,
+                 @JsonProperty("fields") final List<String> fields,
+                 @JsonProperty("description") final String description) {
+        this.test = test;
+        this.target = target;
+        this.fields = fields;
+        this.description = description;
+    }
+
+    /**
+     * @return User input to be checked, or null if missing.
+     */
+    String getTest() {
+        return test;
+    }
+
+    /**
+     * @return Target to check against, or null if missing.
+     */
+    String getTarget() {
+        return target;
+    }
+
+    /**
+     * @return Names of the result fields asked for, or null for all of them.
+     */
+    List<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * @return Free text describing the request, or null if missing.
+     */
+    String getDescription() {
+        return description;
+    }
+}
@@ -0,0 +1,622 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Result of checking user input against a target, as described in {@link RunParser#check(String, String)}.
+ * <p>
+ *     Flags that do not apply to the kind of statement being checked, or that were not asked for, are left null, and
+ *     are then not written out. The strings checked and their types are always written.
+ * <p>
+ *     Results are made with a {@link Builder} and cannot be changed afterwards, so one result can be handed to every
+ *     caller that asks for the same check.
+ */
+final class CheckResult implements JsonResult {
+
+    /**
+     * Results a caller can ask for, each named after its key in the JSON output.
+     */
+    enum Field {
+
+        /**
+         * <code>equal</code>.
+         */
+        EQUAL("equal"),
+
+        /**
+         * <code>weaklyEquivalent</code>.
+         */
+        WEAKLY_EQUIVALENT("weaklyEquivalent"),
+
+        /**
+         * <code>sameCoefficient</code>.
+         */
+        SAME_COEFFICIENT("sameCoefficient"),
+
+        /**
+         * <code>sameState</code>.
+         */
+        SAME_STATE("sameState"),
+
+        /**
+         * <code>sameArrow</code>.
+         */
+        SAME_ARROW("sameArrow"),
+
+        /**
+         * <code>isBalanced</code>.
+         */
+        IS_BALANCED("isBalanced"),
+
+        /**
+         * <code>balancedAtoms</code>.
+         */
+        BALANCED_ATOMS("balancedAtoms"),
+
+        /**
+         * <code>balancedCharge</code>.
+         */
+        BALANCED_CHARGE("balancedCharge"),
+
+        /**
+         * <code>balancedAtomic</code>.
+         */
+        BALANCED_ATOMIC("balancedAtomic"),
+
+        /**
+         * <code>balancedMass</code>.
+         */
+        BALANCED_MASS("balancedMass"),
+
+        /**
+         * <code>validAtomicNumber</code>.
+         */
+        VALID_ATOMIC_NUMBER("validAtomicNumber"),
+
+        /**
+         * <code>wrongTerms</code>.
+         */
+        WRONG_TERMS("wrongTerms");
+
+        /**
+         * Every field, which is what callers get unless they ask for fewer.
+         */
+        static final Set<Field> ALL = Collections.unmodifiableSet(EnumSet.allOf(Field.class));
+
+        /**
+         * Key of the field in the JSON output.
+         */
+        private final String key;
+
+        /**
+         * Constructor method of Field.
+         *
+         * @param key Key of the field in the JSON output.
+         */
+        Field(final String key) {
+            this.key = key;
+        }
+
+        /**
+         * @return Key of the field in the JSON output.
+         */
+        String getKey() {
+            return key;
+        }
+
+        /**
+         * Reads the fields asked for by a caller.
+         *
+         * @param keys JSON keys of the fields, or null for every field.
+         * @return The fields.
+         * @throws IllegalArgumentException One of the keys is not a field.
+         */
+        static Set<Field> parse(final Collection<String> keys) {
+
+            if (keys == null) {
+                return ALL;
+            }
+
+            EnumSet<Field> fields = EnumSet.noneOf(Field.class);
+
+            for (String k : keys) {
+                fields.add(of(k));
+            }
+
+            return fields;
+        }
+
+        /**
+         * Packs a set of fields into the bits of an int, one bit per field.
+         *
+         * @param fields The fields.
+         * @return Bit mask of the fields.
+         */
+        static int mask(final Set<Field> fields) {
+
+            int mask = 0;
+
+            for (Field f : fields) {
+                mask |= 1 << f.ordinal();
+            }
+
+            return mask;
+        }
+
+        /**
+         * Finds a field by its JSON key.
+         *
+         * @param key JSON key of the field.
+         * @return The field.
+         * @throws IllegalArgumentException There is no field with that key.
+         */
+        private static Field of(final String key) {
+
+            for (Field f : values()) {
+                if (f.key.equals(key)) {
+                    return f;
+                }
+            }
+
+            throw new IllegalArgumentException("Unknown field " + key + ".");
+        }
+    }
+
+    /**
+     * The user-provided string.
+     */
+    private final String testString;
+
+    /**
+     * The string matched against.
+     */
+    private final String targetString;
+
+    /**
+     * Parsed user input, in mhchem format.
+     */
+    private final String test;
+
+    /**
+     * Parsed target, in mhchem format.
+     */
+    private final String target;
+
+    /**
+     * Whether user input contains error terms.
+     */
+    private final boolean containsError;
+
+    /**
+     * Whether user input is equivalent to target.
+     */
+    private final Boolean equal;
+
+    /**
+     * Whether user input and target are different types of statement.
+     */
+    private final boolean typeMismatch;
+
+    /**
+     * Type of the target statement.
+     */
+    private final String expectedType;
+
+    /**
+     * Type of the user input statement.
+     */
+    private final String receivedType;
+
+    /**
+     * Whether user input is equivalent to target, disregarding state symbols and coefficients.
+     */
+    private final Boolean weaklyEquivalent;
+
+    /**
+     * Whether equal terms have the same coefficients.
+     */
+    private final Boolean sameCoefficient;
+
+    /**
+     * Whether the state symbols used are the same.
+     */
+    private final Boolean sameState;
+
+    /**
+     * Whether both equations use the same arrow.
+     */
+    private final Boolean sameArrow;
+
+    /**
+     * Whether the user's equation is balanced.
+     */
+    private final Boolean isBalanced;
+
+    /**
+     * Whether atom counts balance in the user's equation.
+     */
+    private final Boolean balancedAtoms;
+
+    /**
+     * Whether charges balance in the user's equation.
+     */
+    private final Boolean balancedCharge;
+
+    /**
+     * Whether atomic numbers balance in the user's nuclear equation.
+     */
+    private final Boolean balancedAtomic;
+
+    /**
+     * Whether mass numbers balance in the user's nuclear equation.
+     */
+    private final Boolean balancedMass;
+
+    /**
+     * Whether the atomic numbers of isotopes in user input match their element symbols.
+     */
+    private final Boolean validAtomicNumber;
+
+    /**
+     * Wrong terms in user input, in mhchem format, or null if they were not asked for.
+     */
+    private final List<String> wrongTerms;
+
+    /**
+     * Constructor method of CheckResult.
+     *
+     * @param builder Builder holding the result.
+     */
+    private CheckResult(final Builder builder) {
+        this.testString = builder.testString;
+        this.targetString = builder.targetString;
+        this.test = builder.test;
+        this.target = builder.target;
+        this.containsError = builder.containsError;
+        this.equal = builder.equal;
+        this.typeMismatch = builder.typeMismatch;
+        this.expectedType = builder.expectedType;
+        this.receivedType = builder.receivedType;
+        this.weaklyEquivalent = builder.weaklyEquivalent;
+        this.sameCoefficient = builder.sameCoefficient;
+        this.sameState = builder.sameState;
+        this.sameArrow = builder.sameArrow;
+        this.isBalanced = builder.isBalanced;
+        this.balancedAtoms = builder.balancedAtoms;
+        this.balancedCharge = builder.balancedCharge;
+        this.balancedAtomic = builder.balancedAtomic;
+        this.balancedMass = builder.balancedMass;
+        this.validAtomicNumber = builder.validAtomicNumber;
+        this.wrongTerms = builder.wrongTerms == null ? null : Collections.unmodifiableList(builder.wrongTerms);
+    }
+
+    /**
+     * Collects the fields of a result as they are worked out, before the result is built and shared.
+     */
+    static final class Builder {
+
+        /**
+         * The user-provided string.
+         */
+        private final String testString;
+
+        /**
+         * The string matched against.
+         */
+        private final String targetString;
+
+        /**
+         * Parsed user input, in mhchem format.
+         */
+        private final String test;
+
+        /**
+         * Parsed target, in mhchem format.
+         */
+        private final String target;
+
+        /**
+         * Whether user input contains error terms.
+         */
+        private boolean containsError;
+
+        /**
+         * Whether user input is equivalent to target.
+         */
+        private Boolean equal;
+
+        /**
+         * Whether user input and target are different types of statement.
+         */
+        private boolean typeMismatch;
+
+        /**
+         * Type of the target statement.
+         */
+        private String expectedType;
+
+        /**
+         * Type of the user input statement.
+         */
+        private String receivedType;
+
+        /**
+         * Whether user input is equivalent to target, disregarding state symbols and coefficients.
+         */
+        private Boolean weaklyEquivalent;
+
+        /**
+         * Whether equal terms have the same coefficients.
+         */
+        private Boolean sameCoefficient;
+
+        /**
+         * Whether the state symbols used are the same.
+         */
+        private Boolean sameState;
+
+        /**
+         * Whether both equations use the same arrow.
+         */
+        private Boolean sameArrow;
+
+        /**
+         * Whether the user's equation is balanced.
+         */
+        private Boolean isBalanced;
+
+        /**
+         * Whether atom counts balance in the user's equation.
+         */
+        private Boolean balancedAtoms;
+
+        /**
+         * Whether charges balance in the user's equation.
+         */
+        private Boolean balancedCharge;
+
+        /**
+         * Whether atomic numbers balance in the user's nuclear equation.
+         */
+        private Boolean balancedAtomic;
+
+        /**
+         * Whether mass numbers balance in the user's nuclear equation.
+         */
+        private Boolean balancedMass;
+
+        /**
+         * Whether the atomic numbers of isotopes in user input match their element symbols.
+         */
+        private Boolean validAtomicNumber;
+
+        /**
+         * Wrong terms in user input, in mhchem format, or null if they were not asked for.
+         */
+        private List<String> wrongTerms;
+
+        /**
+         * Constructor method of Builder.
+         *
+         * @param testString The user-provided string.
+         * @param targetString The string matched against.
+         * @param test Parsed user input, in mhchem format.
+         * @param target Parsed target, in mhchem format.
+         */
+        Builder(final String testString, final String targetString, final String test, final String target) {
+            this.testString = testString;
+            this.targetString = targetString;
+            this.test = test;
+            this.target = target;
+        }
+
+        /**
+         * @param containsError Whether user input contains error terms.
+         */
+        void setContainsError(final boolean containsError) {
+            this.containsError = containsError;
+        }
+
+        /**
+         * @param equal Whether user input is equivalent to target.
+         */
+        void setEqual(final boolean equal) {
+            this.equal = equal;
+        }
+
+        /**
+         * @param typeMismatch Whether user input and target are different types of statement.
+         */
+        void setTypeMismatch(final boolean typeMismatch) {
+            this.typeMismatch = typeMismatch;
+        }
+
+        /**
+         * @param expectedType Type of the target statement.
+         */
+        void setExpectedType(final String expectedType) {
+            this.expectedType = expectedType;
+        }
+
+        /**
+         * @param receivedType Type of the user input statement.
+         */
+        void setReceivedType(final String receivedType) {
+            this.receivedType = receivedType;
+        }
+
+        /**
+         * @param weaklyEquivalent Whether user input is equivalent to target, disregarding state symbols and
+         *                         coefficients.
+         */
+        void setWeaklyEquivalent(final boolean weaklyEquivalent) {
+            this.weaklyEquivalent = weaklyEquivalent;
+        }
+
+        /**
+         * @param sameCoefficient Whether equal terms have the same coefficients.
+         */
+        void setSameCoefficient(final boolean sameCoefficient) {
+            this.sameCoefficient = sameCoefficient;
+        }
+
+        /**
+         * @param sameState Whether the state symbols used are the same.
+         */
+        void setSameState(final boolean sameState) {
+            this.sameState = sameState;
+        }
+
+        /**
+         * @param sameArrow Whether both equations use the same arrow.
+         */
+        void setSameArrow(final boolean sameArrow) {
+            this.sameArrow = sameArrow;
+        }
+
+        /**
+         * @param isBalanced Whether the user's equation is balanced.
+         */
+        void setBalanced(final boolean isBalanced) {
+            this.isBalanced = isBalanced;
+        }
+
+        /**
+         * @param balancedAtoms Whether atom counts balance in the user's equation.
+         */
+        void setBalancedAtoms(final boolean balancedAtoms) {
+            this.balancedAtoms = balancedAtoms;
+        }
+
+        /**
+         * @param balancedCharge Whether charges balance in the user's equation.
+         */
+        void setBalancedCharge(final boolean balancedCharge) {
+            this.balancedCharge = balancedCharge;
+        }
+
+        /**
+         * @param balancedAtomic Whether atomic numbers balance in the user's nuclear equation.
+         */
+        void setBalancedAtomic(final boolean balancedAtomic) {
+            this.balancedAtomic = balancedAtomic;
+        }
+
+        /**
+         * @param balancedMass Whether mass numbers balance in the user's nuclear equation.
+         */
+        void setBalancedMass(final boolean balancedMass) {
+            this.balancedMass = balancedMass;
+        }
+
+        /**
+         * @param validAtomicNumber Whether the atomic numbers of isotopes in user input match their element symbols.
+         */
+        void setValidAtomicNumber(final boolean validAtomicNumber) {
+            this.validAtomicNumber = validAtomicNumber;
+        }
+
+        /**
+         * Sets the wrong terms found in user input.
+         *
+         * @param terms The wrong terms.
+         */
+        void setWrongTerms(final List<Term> terms) {
+
+            wrongTerms = new ArrayList<>(terms.size());
+
+            for (Term t : terms) {
+                wrongTerms.add(t.toString());
+            }
+        }
+
+        /**
+         * @return The result, which can no longer be changed.
+         */
+        CheckResult build() {
+            return new CheckResult(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "test=" + RequestLog.quote(testString) + " target=" + RequestLog.quote(targetString)
+                + " parsedTest=" + RequestLog.quote(test) + " parsedTarget=" + RequestLog.quote(target)
+                + " equal=" + equal + " weaklyEquivalent=" + weaklyEquivalent + " containsError=" + containsError;
+    }
+
+    @Override
+    public void writeTo(final JsonGenerator g) throws IOException {
+
+        g.writeStartObject();
+        g.writeStringField("testString", testString);
+        g.writeStringField("targetString", targetString);
+        g.writeStringField("test", test);
+        g.writeStringField("target", target);
+        g.writeBooleanField("containsError", containsError);
+        writeFlag(g, "equal", equal);
+        g.writeBooleanField("typeMismatch", typeMismatch);
+        g.writeStringField("expectedType", expectedType);
+        g.writeStringField("receivedType", receivedType);
+        writeFlag(g, "weaklyEquivalent", weaklyEquivalent);
+        writeFlag(g, "sameCoefficient", sameCoefficient);
+        writeFlag(g, "sameState", sameState);
+        writeFlag(g, "sameArrow", sameArrow);
+        writeFlag(g, "isBalanced", isBalanced);
+        writeFlag(g, "balancedAtoms", balancedAtoms);
+        writeFlag(g, "balancedCharge", balancedCharge);
+        writeFlag(g, "balancedAtomic", balancedAtomic);
+        writeFlag(g, "balancedMass", balancedMass);
+        writeFlag(g, "validAtomicNumber", validAtomicNumber);
+
+        if (wrongTerms != null) {
+            g.writeArrayFieldStart("wrongTerms");
+
+            for (String term : wrongTerms) {
+                g.writeString(term);
+            }
+
+            g.writeEndArray();
+        }
+
+        g.writeEndObject();
+    }
+
+    /**
+     * Writes a flag, unless it does not apply to this check.
+     *
+     * @param g Generator to be written to.
+     * @param name Name of the flag.
+     * @param value Value of the flag, or null if it does not apply or was not asked for.
+     * @throws IOException Generator failed to write.
+     */
+    private static void writeFlag(final JsonGenerator g, final String name, final Boolean value) throws IOException {
+        if (value != null) {
+            g.writeBooleanField(name, value);
+        }
+    }
+}
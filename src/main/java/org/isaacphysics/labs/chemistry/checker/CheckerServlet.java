@@ -16,90 +16,111 @@
 
 package org.isaacphysics.labs.chemistry.checker;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import javax.servlet.http.HttpServlet;
-import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
 
 /**
  * This servlet receives JSON objects that contain two mhchem expressions, and give response.
+ * Requests are handled asynchronously, see {@link AsyncJsonServlet}.
  *
  * Created by hhrl2 on 20/07/2016.
  */
-public class CheckerServlet extends HttpServlet {
+public class CheckerServlet extends AsyncJsonServlet<CheckRequest> {
+
+    /**
+     * Logger for failed checks.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(CheckerServlet.class);
+
+    /**
+     * Constructor method of CheckerServlet.
+     */
+    public CheckerServlet() {
+        super(Metrics.Endpoint.CHECK, "check", CheckRequest.class);
+    }
 
+    /**
+     * Checks the answer in a request.
+     *
+     * @param req The request body.
+     * @param deadline Time, as given by {@link System#nanoTime()}, after which the request is abandoned.
+     * @param trace Whether to log a trace line for the request.
+     * @return The check result, or the error reported instead.
+     */
     @Override
-    protected void doPost(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+    Reply answer(final CheckRequest req, final long deadline, final boolean trace) {
 
-        System.out.println("==================================================");
+        if (req.getTarget() == null || req.getTest() == null) {
 
-        BufferedReader requestStringReader = request.getReader();
-        String requestString = "";
-        String line;
+            if (trace) {
+                RequestLog.TRACE.info("check error=\"Bad input!\" test={} target={}",
+                        RequestLog.quote(req.getTest()), RequestLog.quote(req.getTarget()));
+            }
 
-        // Read the JSON object
-        while ((line = requestStringReader.readLine()) != null) {
+            return Reply.error(HttpServletResponse.SC_BAD_REQUEST, JsonResult.error("Bad input!"));
+        }
 
-            requestString += line;
+        Set<CheckResult.Field> fields;
 
-        }
+        try {
+            fields = CheckResult.Field.parse(req.getFields());
+        } catch (IllegalArgumentException e) {
 
-        ObjectMapper mapper = new ObjectMapper();
+            if (trace) {
+                RequestLog.TRACE.info("check error=\"Bad fields!\" fields={}", req.getFields());
+            }
+
+            return Reply.error(HttpServletResponse.SC_BAD_REQUEST, JsonResult.error(e.getMessage()));
+        }
 
         try {
 
-            @SuppressWarnings("unchecked")
-            HashMap<String, String> req = mapper.readValue(requestString, HashMap.class);
+            CheckResult result = CheckCache.get(req.getTest(), TargetCache.get(req.getTarget(), deadline), fields,
+                    deadline);
 
-            if (req.containsKey("description")) {
-                System.out.println(req.get("description"));
-                System.out.println("--------------------------------------------------");
+            if (trace) {
+                RequestLog.TRACE.info("check {} description={}", result, RequestLog.quote(req.getDescription()));
             }
 
-            if (req.containsKey("target") && req.containsKey("test")) {
-
-                // Get target and test mhchem expressions from JSON object
-                String targetMhchemExpression = req.get("target");
-                String testMhchemExpresion = req.get("test");
-
-                // Debug print
-                System.out.println("Target string: '" + targetMhchemExpression + "'");
-                System.out.println("Test string: '" + testMhchemExpresion + "'");
-
-                // Return
-                String result = RunParser.check(testMhchemExpresion, targetMhchemExpression);
-                response.getWriter().println(result);
-
-            } else {
-                if (req.containsKey("target")) {
-                    System.out.println("Target string: '" + req.get("target") + "'");
-                } else {
-                    System.out.println("Target string: ''");
-                }
-                if (req.containsKey("test")) {
-                    System.out.println("Test string: '" + req.get("test") + "'");
-                } else {
-                    System.out.println("Test string: ''");
-                }
-                response.getWriter().println("{\"error\" : \"Bad input!\"}");
-                response.setStatus(400);
-                System.out.println("ERROR: Bad input!");
+            return Reply.answer(result);
+
+        } catch (ParseException e) {
+
+            // A typo bad enough to stop the parser. Common, and fully described by the syntax error.
+            Metrics.exception(e);
+
+            JsonResult failure = e.getSyntaxError().asFailure();
+
+            if (trace) {
+                RequestLog.TRACE.info("check {} description={}", failure, RequestLog.quote(req.getDescription()));
             }
 
-            response.setContentType("application/json");
+            return Reply.error(HttpServletResponse.SC_OK, failure);
+
+        } catch (TimeoutException e) {
+
+            // Another request was already working out the same answer, and has not finished in time.
+            Metrics.exception(e);
+
+            if (trace) {
+                RequestLog.TRACE.info("check error=\"Timed out!\"");
+            }
+
+            return Reply.error(HttpServletResponse.SC_SERVICE_UNAVAILABLE, JsonResult.error("Timed out!"));
 
         } catch (Exception e) {
 
+            Metrics.exception(e);
+
             // Got an exception when checking expressions.
-            response.getWriter().println("{\"error\" : \"" + e.getClass().getSimpleName() + "\"}");
-            System.out.println("ERROR: Parser cannot parse input!");
+            LOG.warn("Cannot check test {} against target {}", RequestLog.quote(req.getTest()),
+                    RequestLog.quote(req.getTarget()), e);
 
+            return Reply.error(HttpServletResponse.SC_OK, JsonResult.error(e.getClass().getSimpleName()));
         }
-
-        System.out.println("==================================================\n");
     }
 }
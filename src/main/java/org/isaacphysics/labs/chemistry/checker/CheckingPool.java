@@ -0,0 +1,103 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads that parse and check statements for the asynchronous servlets, kept apart from the container's own threads.
+ * <p>
+ *     The pool has <code>chemistry.workers.threads</code> threads (default: number of processors) and a queue of
+ *     <code>chemistry.workers.queueSize</code> tasks (default 512). Once the queue is full, work is refused rather than
+ *     queued without limit, and the client is told to come back after <code>chemistry.workers.retryAfter</code>
+ *     seconds (default 1).
+ */
+final class CheckingPool {
+
+    /**
+     * Default number of tasks that may wait for a thread.
+     */
+    private static final int DEFAULT_QUEUE_SIZE = 512;
+
+    /**
+     * Seconds a client turned away should wait before trying again, sent as the Retry-After header.
+     */
+    static final int RETRY_AFTER = Integer.getInteger("chemistry.workers.retryAfter", 1);
+
+    /**
+     * The threads.
+     */
+    private static final ThreadPoolExecutor WORKERS;
+
+    static {
+
+        int threads = Integer.getInteger("chemistry.workers.threads", Runtime.getRuntime().availableProcessors());
+        AtomicInteger threadCount = new AtomicInteger();
+
+        WORKERS = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Integer.getInteger("chemistry.workers.queueSize", DEFAULT_QUEUE_SIZE)),
+                r -> {
+                    Thread t = new Thread(r, "checker-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Constructor method of CheckingPool.
+     * Set to private, because we don't want people to instantiate an utility class.
+     */
+    private CheckingPool() {
+        // Nothing here.
+    }
+
+    /**
+     * Runs a task on one of the threads.
+     *
+     * @param task The task.
+     * @throws RejectedExecutionException The queue is full.
+     */
+    static void execute(final Runnable task) {
+        WORKERS.execute(task);
+    }
+
+    /**
+     * @return Number of threads.
+     */
+    static int threads() {
+        return WORKERS.getMaximumPoolSize();
+    }
+
+    /**
+     * @return Number of tasks waiting for a thread.
+     */
+    static int queued() {
+        return WORKERS.getQueue().size();
+    }
+
+    /**
+     * @return Number of threads running a task.
+     */
+    static int active() {
+        return WORKERS.getActiveCount();
+    }
+}
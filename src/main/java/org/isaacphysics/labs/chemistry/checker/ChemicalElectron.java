@@ -16,8 +16,6 @@
 
 package org.isaacphysics.labs.chemistry.checker;
 
-import java.util.HashMap;
-
 /**
  * Special class of Formula that only cares about electrons in chemical equations.
  *
@@ -26,12 +24,7 @@ import java.util.HashMap;
 public final class ChemicalElectron extends Formula {
 
     private static final int Charge = -1;
-    private static final Fraction ChargeFrac = new Fraction(Charge, 1);
-
-    /**
-     * Saved atom count.
-     */
-    private static HashMap<String, Fraction> savedAtomCount = new HashMap<>();
+    private static final Fraction ChargeFrac = Fraction.valueOf(Charge);
 
     /**
      * Constructor function of ChemicalElectron.
@@ -66,19 +59,19 @@ public final class ChemicalElectron extends Formula {
     }
 
     @Override
-    public HashMap<String, Fraction> getAtomCount() {
-        return savedAtomCount;
+    public AtomVector getAtomVector() {
+        return AtomVector.EMPTY;
     }
 
     @Override
-    public String getDotId() {
-        return "electron_" + getdotId();
+    public String getDotId(final DotIds ids) {
+        return "electron_" + ids.of(this);
     }
 
     @Override
-    public String getDotCode() {
+    public String getDotCode(final DotIds ids) {
         return "\t"
-                + getDotId()
+                + getDotId(ids)
                 + " [label=\"{&zwj;&zwj;&zwj;&zwj;PhysicalElectron&zwnj;|\\n"
                 + getDotString()
                 + "\n\n}\",color=\"#4c7fbe\"];\n";
@@ -89,6 +82,11 @@ public final class ChemicalElectron extends Formula {
         return "e&zwj;&zwj;-&zwnj;";
     }
 
+    @Override
+    void flatten(final FlatStatement.Builder builder) {
+        builder.node(FlatStatement.ELECTRON, 0, 0, 0);
+    }
+
     @Override
     public int hashCode() {
         return toString().hashCode();
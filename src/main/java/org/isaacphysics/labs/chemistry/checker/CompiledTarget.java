@@ -0,0 +1,332 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A trusted target answer, parsed once and analysed ahead of time so that it can be checked against many inputs.
+ * <p>
+ *     Everything needed from the statement is worked out before the instance is handed out, and the statement itself is
+ *     kept only in its compact {@link FlatStatement} form, so that cached targets hold no parse trees. That form is
+ *     interned, so formulas repeated across targets are held once.
+ */
+final class CompiledTarget {
+
+    /**
+     * Logger for targets that do not parse cleanly.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(CompiledTarget.class);
+
+    /**
+     * The target string the statement was parsed from.
+     */
+    private final String source;
+
+    /**
+     * Flat form of the parsed target statement.
+     */
+    private final FlatStatement flat;
+
+    /**
+     * The target in mhchem format, as printed by the parser.
+     */
+    private final String canonical;
+
+    /**
+     * Whether the target contains error terms.
+     */
+    private final boolean containsError;
+
+    /**
+     * Type of the statement, as reported in check results.
+     */
+    private final String type;
+
+    /**
+     * Atom counts of each expression in the statement, from left to right.
+     */
+    private final List<AtomVector> atomCounts;
+
+    /**
+     * Charges of each expression in the statement, from left to right.
+     */
+    private final List<Fraction> charges;
+
+    /**
+     * Whether the statement is an equation with the same atoms on both sides.
+     */
+    private final boolean balancedAtoms;
+
+    /**
+     * Whether the statement is an equation with the same charge on both sides.
+     */
+    private final boolean balancedCharge;
+
+    /**
+     * Terms of the statement, sorted for comparing answers with.
+     */
+    private final TargetMatcher matcher;
+
+    /**
+     * Constructor method of CompiledTarget.
+     *
+     * @param source The target string the statement was parsed from.
+     * @param statement The parsed target statement.
+     */
+    private CompiledTarget(final String source, final Statement statement) {
+        this.source = source;
+        this.flat = FlatStatement.of(statement).interned();
+        this.canonical = statement.toString();
+        this.containsError = statement.containsError();
+        this.type = typeOf(statement);
+
+        this.matcher = new TargetMatcher(flat);
+
+        List<AtomVector> atoms = new ArrayList<>();
+        List<Fraction> charge = new ArrayList<>();
+
+        for (Expression e : expressionsOf(statement)) {
+            Summary summary = e.getSummary();
+            atoms.add(summary.getAtoms());
+            charge.add(summary.getCharge());
+        }
+
+        this.atomCounts = Collections.unmodifiableList(atoms);
+        this.charges = Collections.unmodifiableList(charge);
+
+        boolean equation = statement instanceof EquationStatement;
+        this.balancedAtoms = equation && !containsError && atoms.get(0).equals(atoms.get(1));
+        this.balancedCharge = equation && !containsError && charge.get(0).equals(charge.get(1));
+    }
+
+    /**
+     * Constructor method of CompiledTarget, for a target read back from a {@link QuestionBank}.
+     *
+     * @param source The target string the statement was parsed from.
+     * @param flat Flat form of the parsed target statement.
+     * @param canonical The target in mhchem format.
+     * @param type Type of the statement.
+     * @param containsError Whether the target contains error terms.
+     * @param balancedAtoms Whether the statement is an equation with the same atoms on both sides.
+     * @param balancedCharge Whether the statement is an equation with the same charge on both sides.
+     * @param atomCounts Atom counts of each expression in the statement.
+     * @param charges Charges of each expression in the statement.
+     */
+    private CompiledTarget(final String source, final FlatStatement flat, final String canonical, final String type,
+                           final boolean containsError, final boolean balancedAtoms, final boolean balancedCharge,
+                           final List<AtomVector> atomCounts, final List<Fraction> charges) {
+        this.source = source;
+        this.flat = flat;
+        this.canonical = canonical;
+        this.type = type;
+        this.containsError = containsError;
+        this.balancedAtoms = balancedAtoms;
+        this.balancedCharge = balancedCharge;
+        this.atomCounts = Collections.unmodifiableList(atomCounts);
+        this.charges = Collections.unmodifiableList(charges);
+        this.matcher = new TargetMatcher(flat);
+    }
+
+    /**
+     * Parses and analyses a target string.
+     *
+     * @param targetString A single mhchem statement in string form.
+     * @return The compiled target.
+     * @throws Exception Parser having trouble reading the string.
+     */
+    static CompiledTarget compile(final String targetString) throws Exception {
+
+        CompiledTarget target = new CompiledTarget(targetString, StatementParser.parse(targetString));
+
+        if (target.containsError) {
+            LOG.warn("Trusted target contains error: target={} parsed={}", RequestLog.quote(targetString),
+                    RequestLog.quote(target.canonical));
+        }
+
+        return target;
+    }
+
+    /**
+     * Writes this target as an entry of a {@link QuestionBank}, starting with the target string.
+     *
+     * @param out Output to write to.
+     * @throws IOException The output cannot be written.
+     * @throws ArithmeticException A charge does not fit in a long.
+     */
+    void writeTo(final DataOutput out) throws IOException {
+
+        QuestionBank.writeString(out, source);
+        QuestionBank.writeString(out, canonical);
+        QuestionBank.writeString(out, type);
+        out.writeBoolean(containsError);
+        out.writeBoolean(balancedAtoms);
+        out.writeBoolean(balancedCharge);
+        flat.writeTo(out);
+
+        for (int i = 0; i < atomCounts.size(); i++) {
+            atomCounts.get(i).writeTo(out);
+            out.writeLong(charges.get(i).getNumerator());
+            out.writeLong(charges.get(i).getDenominator());
+        }
+    }
+
+    /**
+     * Reads back a target written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in Buffer positioned at the target, which is moved past it.
+     * @return The compiled target.
+     */
+    static CompiledTarget readFrom(final ByteBuffer in) {
+
+        String source = QuestionBank.readString(in);
+        String canonical = QuestionBank.readString(in);
+        String type = QuestionBank.readString(in);
+        boolean containsError = in.get() != 0;
+        boolean balancedAtoms = in.get() != 0;
+        boolean balancedCharge = in.get() != 0;
+        FlatStatement flat = FlatStatement.readFrom(in).interned();
+
+        List<AtomVector> atoms = new ArrayList<>();
+        List<Fraction> charge = new ArrayList<>();
+
+        for (int i = 0; i < flat.sideCount(); i++) {
+            atoms.add(AtomVector.readFrom(in));
+            charge.add(Fraction.valueOf(in.getLong(), in.getLong()));
+        }
+
+        return new CompiledTarget(source, flat, canonical, type, containsError, balancedAtoms, balancedCharge, atoms,
+                charge);
+    }
+
+    /**
+     * Gives the expressions a statement is made of.
+     *
+     * @param s The statement.
+     * @return The expression of an expression statement, or the left and right expressions of an equation.
+     */
+    static List<Expression> expressionsOf(final Statement s) {
+
+        if (s instanceof ExpressionStatement) {
+            return Collections.singletonList(((ExpressionStatement) s).getExpression());
+        } else if (s instanceof NuclearExpressionStatement) {
+            return Collections.singletonList(((NuclearExpressionStatement) s).getExpression());
+        } else if (s instanceof EquationStatement) {
+            return Arrays.asList(((EquationStatement) s).getLeftExpression(),
+                    ((EquationStatement) s).getRightExpression());
+        } else {
+            return Arrays.asList(((NuclearEquationStatement) s).getLeftExpression(),
+                    ((NuclearEquationStatement) s).getRightExpression());
+        }
+    }
+
+    /**
+     * Gives the type name of a statement, as reported in check results.
+     *
+     * @param s Statement whose type is wanted.
+     * @return Type of statement, e.g. "equation" or "nuclearexpression".
+     */
+    static String typeOf(final Statement s) {
+        return s.getClass().getSimpleName().replace("Statement", "").toLowerCase();
+    }
+
+    /**
+     * @return The target string the statement was parsed from.
+     */
+    String getSource() {
+        return source;
+    }
+
+    /**
+     * @return Flat form of the parsed target statement.
+     */
+    FlatStatement getFlat() {
+        return flat;
+    }
+
+    /**
+     * @return Terms of the target, sorted for comparing answers with.
+     */
+    TargetMatcher getMatcher() {
+        return matcher;
+    }
+
+    /**
+     * @return The target in mhchem format.
+     */
+    String getCanonical() {
+        return canonical;
+    }
+
+    /**
+     * @return True if the target contains error terms.
+     */
+    boolean containsError() {
+        return containsError;
+    }
+
+    /**
+     * @return Type of the target statement, as reported in check results.
+     */
+    String getType() {
+        return type;
+    }
+
+    /**
+     * @return Atom counts of each expression in the target, from left to right.
+     */
+    List<AtomVector> getAtomCounts() {
+        return atomCounts;
+    }
+
+    /**
+     * @return Charges of each expression in the target, from left to right.
+     */
+    List<Fraction> getCharges() {
+        return charges;
+    }
+
+    /**
+     * @return True if the target is an equation with the same atoms on both sides.
+     */
+    boolean isBalancedAtoms() {
+        return balancedAtoms;
+    }
+
+    /**
+     * @return True if the target is an equation with the same charge on both sides.
+     */
+    boolean isBalancedCharge() {
+        return balancedCharge;
+    }
+
+    /**
+     * @return True if the target is an equation with the same atoms and charge on both sides.
+     */
+    boolean isBalanced() {
+        return balancedAtoms && balancedCharge;
+    }
+}
@@ -16,11 +16,14 @@
 
 package org.isaacphysics.labs.chemistry.checker;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
 
 /**
  * Compound: A chemical item with more than one kind of elements.
+ * <p>
+ *     Compounds nest inside each other as deeply as the brackets in user input do, so anything that walks a whole
+ *     compound keeps its own stack of the compounds still to visit, rather than recursing into each one.
  *
  * Created by Ryan on 15/06/2016.
  */
@@ -35,7 +38,7 @@ public final class Compound extends Molecule {
     /**
      * The groups of molecules involved in the term.
      */
-    private ArrayList<Molecule> groups;
+    private final ArrayList<Molecule> groups;
 
     /**
      * The number of compounds involved in this term.
@@ -49,9 +52,15 @@ public final class Compound extends Molecule {
     private BracketType bracketType;
 
     /**
-     * Saved atom count.
+     * Saved atom count, or null if not yet worked out. Read once per call, as in {@link Hydrate}.
      */
-    private HashMap<String, Fraction> savedAtomCount = null;
+    private AtomVector savedAtomVector = null;
+
+    /**
+     * Saved hash code, or 0 if not yet computed. Read once per call, so racing threads at worst compute it twice.
+     * Compounds are built up piece by piece while parsing, so this is reset whenever the compound changes.
+     */
+    private int savedHash = 0;
 
     /**
      * Constructor function of Compound.
@@ -75,6 +84,8 @@ public final class Compound extends Molecule {
      */
     void add(final Molecule m) {
         groups.add(m);
+        savedHash = 0;
+        savedAtomVector = null;
     }
 
     /**
@@ -85,6 +96,9 @@ public final class Compound extends Molecule {
         for (Molecule m: c.groups) {
             groups.add(m);
         }
+
+        savedHash = 0;
+        savedAtomVector = null;
     }
 
     /**
@@ -93,6 +107,8 @@ public final class Compound extends Molecule {
      */
     public void setNumber(final Integer n) {
         number = n;
+        savedHash = 0;
+        savedAtomVector = null;
     }
 
     /**
@@ -101,6 +117,7 @@ public final class Compound extends Molecule {
      */
     void setBracketType(final BracketType b) {
         bracketType = b;
+        savedHash = 0;
     }
 
     /**
@@ -111,26 +128,39 @@ public final class Compound extends Molecule {
         return bracketType;
     }
 
-    @Override
-    public String toString() {
-        StringBuilder b = new StringBuilder();
+    /**
+     * @return The opening bracket of the compound, or an empty string if it has none.
+     */
+    private String openingBracket() {
 
         if (bracketType == BracketType.SQUARE) {
-            b.append("[");
+            return "[";
         } else if (bracketType == BracketType.ROUND) {
-            b.append("(");
+            return "(";
         }
 
-        for (Molecule m : groups) {
-            b.append(m.toString());
-        }
+        return "";
+    }
+
+    /**
+     * @return The closing bracket of the compound, or an empty string if it has none.
+     */
+    private String closingBracket() {
 
         if (bracketType == BracketType.SQUARE) {
-            b.append("]");
+            return "]";
         } else if (bracketType == BracketType.ROUND) {
-            b.append(")");
+            return ")";
         }
 
+        return "";
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        appendGroups(b, this);
+
         if (number > 1) {
             b.append(number.toString());
         }
@@ -138,42 +168,146 @@ public final class Compound extends Molecule {
         return b.toString();
     }
 
+    /**
+     * Writes out the groups of a compound, in brackets if it has them, followed by everything nested inside them.
+     *
+     * @param b Builder to write to.
+     * @param outer The compound to write out, without its number.
+     */
+    private static void appendGroups(final StringBuilder b, final Compound outer) {
+
+        // Holds molecules still to be written out, and the closing text of each compound being written.
+        ArrayDeque<Object> pending = new ArrayDeque<>();
+
+        b.append(outer.openingBracket());
+        pending.push(outer.closingBracket());
+
+        for (int i = outer.groups.size() - 1; i >= 0; i--) {
+            pending.push(outer.groups.get(i));
+        }
+
+        while (!pending.isEmpty()) {
+
+            Object next = pending.pop();
+
+            if (next instanceof Compound) {
+
+                Compound c = (Compound) next;
+                b.append(c.openingBracket());
+                pending.push(c.number > 1 ? c.closingBracket() + c.number : c.closingBracket());
+
+                for (int i = c.groups.size() - 1; i >= 0; i--) {
+                    pending.push(c.groups.get(i));
+                }
+            } else {
+                b.append(next);
+            }
+        }
+    }
+
     @Override
     public boolean equals(final Object o) {
 
-        if (o instanceof Compound) {
+        if (!(o instanceof Compound)) {
+            return false;
+        }
+
+        // Pairs of nested compounds still to be compared.
+        ArrayDeque<Compound> pending = new ArrayDeque<>();
+        ArrayDeque<Compound> others = new ArrayDeque<>();
+
+        pending.push(this);
+        others.push((Compound) o);
 
-            Compound other = (Compound) o;
-            return this.toString().equals(other.toString());
+        while (!pending.isEmpty()) {
+
+            Compound c = pending.pop();
+            Compound other = others.pop();
+
+            if (c == other) {
+                continue;
+            } else if (c.hashCode() != other.hashCode()
+                    || c.bracketType != other.bracketType
+                    || c.printedNumber() != other.printedNumber()
+                    || c.groups.size() != other.groups.size()) {
+                return false;
+            }
+
+            for (int i = 0; i < c.groups.size(); i++) {
+
+                Molecule m = c.groups.get(i);
+                Molecule n = other.groups.get(i);
+
+                if (m instanceof Compound && n instanceof Compound) {
+                    pending.push((Compound) m);
+                    others.push((Compound) n);
+                } else if (!m.equals(n)) {
+                    return false;
+                }
+            }
         }
 
-        return false;
+        return true;
     }
 
-    //@Override
-    //public int hashCode() {return groups.size();}
+    /**
+     * Gives the number as it is printed, i.e. 1 when no number is shown.
+     *
+     * @return Printed number of compound.
+     */
+    private int printedNumber() {
+        return number > 1 ? number : 1;
+    }
 
     @Override
-    public HashMap<String, Fraction> getAtomCount() {
+    public AtomVector getAtomVector() {
+
+        AtomVector atoms = savedAtomVector;
 
-        if (savedAtomCount == null) {
-            savedAtomCount = new HashMap<>();
+        if (atoms == null) {
 
-            for (Molecule m : groups) {
+            // Counts nested compounds innermost first, so that every group is already counted when its compound is.
+            ArrayDeque<Compound> pending = new ArrayDeque<>();
+            pending.push(this);
 
-                for (String element : m.getAtomCount().keySet()) {
+            while (!pending.isEmpty()) {
 
-                    if (!savedAtomCount.containsKey(element)) {
-                        savedAtomCount.put(element, m.getAtomCount().get(element).times(number));
-                    } else {
-                        savedAtomCount.put(element,
-                                savedAtomCount.get(element).plus(m.getAtomCount().get(element).times(number)));
+                Compound c = pending.peek();
+                boolean ready = true;
+
+                for (Molecule m : c.groups) {
+                    if (m instanceof Compound && ((Compound) m).savedAtomVector == null) {
+                        pending.push((Compound) m);
+                        ready = false;
                     }
                 }
+
+                if (ready) {
+                    pending.pop();
+                    atoms = c.countGroups();
+                    c.savedAtomVector = atoms;
+                }
             }
         }
 
-        return savedAtomCount;
+        // The last compound counted is this one.
+        return atoms;
+    }
+
+    /**
+     * Counts the atoms of the compound, once every group in it has been counted.
+     *
+     * @return Atom count of the compound.
+     */
+    private AtomVector countGroups() {
+
+        AtomVector count = AtomVector.EMPTY;
+
+        for (Molecule m : groups) {
+            count = count.plus(m.getAtomVector());
+        }
+
+        return count.times(number);
     }
 
 /*    public Integer getCharge()
@@ -185,50 +319,71 @@ public final class Compound extends Molecule {
     }*/
 
     @Override
-    public String getDotId() {
-        return "compound" + getdotId();
+    public String getDotId(final DotIds ids) {
+        return "compound" + ids.of(this);
     }
 
     @Override
-    public String getDotCode() {
+    public String getDotCode(final DotIds ids) {
         StringBuilder result = new StringBuilder();
-        result.append("\t");
-        result.append(getDotId());
-        result.append(" [label=\"{&zwj;&zwj;&zwj;&zwj;Compound&zwnj;|\\n");
-        result.append(getDotString());
-        result.append("\\n\\n|&zwj;&zwj;&zwj;number&zwnj;: ");
-        result.append(number);
-        result.append("\\n|&zwj;&zwj;&zwj;molecules&zwnj;}\",color=\"#944cbe\"];\n");
-        for (Molecule m : groups) {
+
+        // Groups still to be drawn, each with the compound it is in. They are pushed last first, so that they are
+        // drawn in the same order as by a recursive walk.
+        ArrayDeque<Molecule> pending = new ArrayDeque<>();
+        ArrayDeque<Compound> parents = new ArrayDeque<>();
+
+        appendDotNode(result, ids, this, pending, parents);
+
+        while (!pending.isEmpty()) {
+
+            Molecule m = pending.pop();
+            Compound parent = parents.pop();
+
             result.append("\t");
-            result.append(getDotId());
+            result.append(parent.getDotId(ids));
             result.append(":s -> ");
-            result.append(m.getDotId());
+            result.append(m.getDotId(ids));
             result.append(":n;\n");
-            result.append(m.getDotCode());
+
+            if (m instanceof Compound) {
+                appendDotNode(result, ids, (Compound) m, pending, parents);
+            } else {
+                result.append(m.getDotCode(ids));
+            }
         }
+
         return result.toString();
     }
 
-    @Override
-    public String getDotString() {
-        StringBuilder b = new StringBuilder();
-
-        if (bracketType == BracketType.SQUARE) {
-            b.append("[");
-        } else if (bracketType == BracketType.ROUND) {
-            b.append("(");
-        }
+    /**
+     * Draws the node of a compound, and queues up its groups to be drawn after it.
+     *
+     * @param result Builder the Graphviz code is written to.
+     * @param ids IDs of the nodes in the graph.
+     * @param c The compound.
+     * @param pending Groups still to be drawn.
+     * @param parents Compound each group still to be drawn is in.
+     */
+    private static void appendDotNode(final StringBuilder result, final DotIds ids, final Compound c,
+                                      final ArrayDeque<Molecule> pending, final ArrayDeque<Compound> parents) {
+        result.append("\t");
+        result.append(c.getDotId(ids));
+        result.append(" [label=\"{&zwj;&zwj;&zwj;&zwj;Compound&zwnj;|\\n");
+        result.append(c.getDotString());
+        result.append("\\n\\n|&zwj;&zwj;&zwj;number&zwnj;: ");
+        result.append(c.number);
+        result.append("\\n|&zwj;&zwj;&zwj;molecules&zwnj;}\",color=\"#944cbe\"];\n");
 
-        for (Molecule m : groups) {
-            b.append(m.toString());
+        for (int i = c.groups.size() - 1; i >= 0; i--) {
+            pending.push(c.groups.get(i));
+            parents.push(c);
         }
+    }
 
-        if (bracketType == BracketType.SQUARE) {
-            b.append("]");
-        } else if (bracketType == BracketType.ROUND) {
-            b.append(")");
-        }
+    @Override
+    public String getDotString() {
+        StringBuilder b = new StringBuilder();
+        appendGroups(b, this);
 
         if (number > 1) {
             b.append("&zwj;");
@@ -244,8 +399,71 @@ public final class Compound extends Molecule {
         return number;
     }
 
+    @Override
+    void flatten(final FlatStatement.Builder builder) {
+
+        byte kind = FlatStatement.COMPOUND;
+
+        if (bracketType == BracketType.ROUND) {
+            kind = FlatStatement.ROUND_COMPOUND;
+        } else if (bracketType == BracketType.SQUARE) {
+            kind = FlatStatement.SQUARE_COMPOUND;
+        }
+
+        builder.node(kind, printedNumber(), groups);
+    }
+
     @Override
     public int hashCode() {
-        return toString().hashCode();
+
+        int h = savedHash;
+
+        if (h == 0) {
+
+            // Hashes nested compounds innermost first, so that every group is already hashed when its compound is.
+            ArrayDeque<Compound> pending = new ArrayDeque<>();
+            pending.push(this);
+
+            while (!pending.isEmpty()) {
+
+                Compound c = pending.peek();
+                boolean ready = true;
+
+                for (Molecule m : c.groups) {
+                    if (m instanceof Compound && ((Compound) m).savedHash == 0) {
+                        pending.push((Compound) m);
+                        ready = false;
+                    }
+                }
+
+                if (ready) {
+                    pending.pop();
+                    h = c.hashGroups();
+                    c.savedHash = h;
+                }
+            }
+        }
+
+        // The last compound hashed is this one.
+        return h;
+    }
+
+    /**
+     * Hashes the compound, once every group in it has been hashed.
+     *
+     * @return Hash code of the compound, never 0 so that it is only worked out once.
+     */
+    private int hashGroups() {
+
+        int h = 1;
+
+        for (Molecule m : groups) {
+            h = 31 * h + m.hashCode();
+        }
+
+        h = 31 * h + printedNumber();
+        h = 31 * h + (bracketType == null ? 0 : bracketType.ordinal() + 1);
+
+        return h == 0 ? 1 : h;
     }
 }
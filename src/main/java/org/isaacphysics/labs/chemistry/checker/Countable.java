@@ -29,12 +29,23 @@ interface Countable {
      */
     Fraction getCharge();
 
+    /**
+     * Gives the number of each kind of atom involved in a countable term.
+     * Subparticles like electrons and gamma rays are not involved.
+     * @return Atom count of the term
+     */
+    AtomVector getAtomVector();
+
     /**
      * Gives a list of all atoms involved in a countable term, as well as their corresponding numbers.
      * Subparticles like electrons and gamma rays are not involved.
+     * <p>
+     *     The map is built afresh from {@link #getAtomVector()} on every call, so should only be used for output.
      * @return A list of (atom, number) pairs
      */
-    HashMap<String, Fraction> getAtomCount();
+    default HashMap<String, Fraction> getAtomCount() {
+        return getAtomVector().toMap();
+    }
 
     @Override
     boolean equals(Object o);
@@ -44,9 +55,10 @@ interface Countable {
 
     /**
      * Getter function. Gives unique ID of the term.
+     * @param ids Allocator of IDs for the graph being drawn
      * @return Unique ID of the term
      */
-    String getDotId();
+    String getDotId(DotIds ids);
 
     /**
      * Returns Graphviz code that generates syntax tree of chemical term.
@@ -60,9 +72,10 @@ interface Countable {
      *     <li> &zwnj;: Delimiter that removes effect of above.
      * </ul>
      *
+     * @param ids Allocator of IDs for the graph being drawn
      * @return Graphviz code that generates the abstract syntax tree
      */
-    String getDotCode();
+    String getDotCode(DotIds ids);
 
     /**
      * Returns pretty-printed chemical term/equation/expression.
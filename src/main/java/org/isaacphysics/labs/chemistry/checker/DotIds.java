@@ -0,0 +1,51 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import java.util.IdentityHashMap;
+
+/**
+ * Hands out the unique IDs used to name nodes in Graphviz code.
+ * <p>
+ *     A new instance is used for every syntax tree that is drawn, and a node is only given an ID when it is first
+ *     drawn. Building a syntax tree therefore touches no shared state, and IDs are small and stable for each graph.
+ */
+final class DotIds {
+
+    /**
+     * IDs given out so far, by node.
+     */
+    private final IdentityHashMap<Object, Integer> ids = new IdentityHashMap<>();
+
+    /**
+     * Gives the ID of a node, allocating the next free one the first time the node is seen.
+     *
+     * @param node Node in the syntax tree.
+     * @return Unique ID of the node within this graph.
+     */
+    int of(final Object node) {
+
+        Integer id = ids.get(node);
+
+        if (id == null) {
+            id = ids.size();
+            ids.put(node, id);
+        }
+
+        return id;
+    }
+}
@@ -26,7 +26,7 @@ final class DoubleArrow extends AbstractArrow {
     /**
      * The single class instance for DoubleArrow.
      */
-    private static DoubleArrow singleton = null;
+    private static final DoubleArrow singleton = new DoubleArrow();
 
     /**
      * Constructor function for DoubleArrow.
@@ -40,10 +40,6 @@ final class DoubleArrow extends AbstractArrow {
      * @return Class instance of DoubleArrow
      */
     static DoubleArrow getDoubleArrow() {
-        if (singleton == null) {
-            singleton = new DoubleArrow();
-        }
-
         return singleton;
     }
 
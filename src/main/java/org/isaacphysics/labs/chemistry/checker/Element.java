@@ -16,7 +16,7 @@
 
 package org.isaacphysics.labs.chemistry.checker;
 
-import java.util.HashMap;
+import java.util.Objects;
 
 /**
  * Created by Ryan on 15/06/2016.
@@ -26,18 +26,23 @@ public final class Element extends Molecule {
     /**
      * The name of atom involved in this element.
      */
-    private String element;
+    private final String element;
 
     /**
      * Subscript of element.
      * For example number of H2 is 2.
      */
-    private Integer number;
+    private final Integer number;
 
     /**
-     * Saved atom count.
+     * Atom count, worked out once as elements never change.
      */
-    private HashMap<String, Fraction> savedAtomCount;
+    private final AtomVector atoms;
+
+    /**
+     * Hash code, computed once as elements never change.
+     */
+    private final int hash;
 
     /**
      * Constructor function of Element.
@@ -48,6 +53,17 @@ public final class Element extends Molecule {
         super();
         element = e;
         number = n;
+        atoms = element == null ? AtomVector.EMPTY : AtomVector.of(element, number);
+        hash = 31 * Objects.hashCode(element) + printedNumber();
+    }
+
+    /**
+     * Gives the subscript as it is printed, i.e. 1 when no subscript is shown.
+     *
+     * @return Printed subscript of element.
+     */
+    private int printedNumber() {
+        return number > 1 ? number : 1;
     }
 
     @Override
@@ -66,7 +82,9 @@ public final class Element extends Molecule {
 
         if (o instanceof Element) {
             Element other = (Element) o;
-            return this.toString().equals(other.toString());
+            return this.hash == other.hash
+                    && Objects.equals(this.element, other.element)
+                    && this.printedNumber() == other.printedNumber();
         }
 
         return false;
@@ -89,32 +107,23 @@ public final class Element extends Molecule {
     }*/
 
     @Override
-    public HashMap<String, Fraction> getAtomCount() {
-
-        if (savedAtomCount == null) {
-            savedAtomCount = new HashMap<>();
-
-            if (element != null) {
-                savedAtomCount.put(element, new Fraction(number, 1));
-            }
-        }
-
-        return savedAtomCount;
+    public AtomVector getAtomVector() {
+        return atoms;
     }
 
     //public Integer getCharge() {return charge;}
 
     @Override
-    public String getDotId() {
-        return "group_" + getdotId();
+    public String getDotId(final DotIds ids) {
+        return "group_" + ids.of(this);
     }
 
     @Override
-    public String getDotCode() {
+    public String getDotCode(final DotIds ids) {
         StringBuilder result = new StringBuilder();
 
         result.append("\t");
-        result.append(getDotId());
+        result.append(getDotId(ids));
 
         result.append(" [label=\"{&zwj;&zwj;&zwj;&zwj;Element&zwnj;|\\n");
         result.append(getDotString());
@@ -151,8 +160,14 @@ public final class Element extends Molecule {
         return number;
     }
 
+    @Override
+    void flatten(final FlatStatement.Builder builder) {
+        int z = element == null ? 0 : PeriodicTable.atomicNumber(element);
+        builder.node(FlatStatement.ELEMENT, z, printedNumber(), 0);
+    }
+
     @Override
     public int hashCode() {
-        return toString().hashCode();
+        return hash;
     }
 }
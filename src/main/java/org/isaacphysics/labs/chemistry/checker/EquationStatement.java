@@ -26,17 +26,17 @@ final class EquationStatement extends Statement {
     /**
      * The left expression of a equation.
      */
-    private Expression left;
+    private final Expression left;
 
     /**
      * The right expression of a equation.
      */
-    private Expression right;
+    private final Expression right;
 
     /**
      * The arrow used in equation.
      */
-    private AbstractArrow arrow;
+    private final AbstractArrow arrow;
 
     /**
      * Constructor method of EquationStatement.
@@ -83,7 +83,7 @@ final class EquationStatement extends Statement {
      * @return True if atom counts are balanced.
      */
     boolean isBalancedAtoms() {
-        return !containsError() && left.getAtomCount().equals(right.getAtomCount());
+        return !containsError() && left.getSummary().getAtoms().equals(right.getSummary().getAtoms());
     }
 
     /**
@@ -92,7 +92,7 @@ final class EquationStatement extends Statement {
      * @return True if charges are balanced.
      */
     boolean isBalancedCharge() {
-        return !containsError() && (left.getCharge().equals(right.getCharge()));
+        return !containsError() && left.getSummary().getCharge().equals(right.getSummary().getCharge());
     }
 
     /**
@@ -133,6 +133,9 @@ final class EquationStatement extends Statement {
 
     @Override
     public String getDotCode() {
+
+        DotIds ids = new DotIds();
+
         return "digraph chemical_syntax_tree {\n"
                 + "\tnode [shape=record,penwidth=2,splines=ortho];\n\n"
                 + "\tequation [label=\"{&zwj;&zwj;&zwj;&zwj;Equation&zwnj;|\\n"
@@ -142,11 +145,11 @@ final class EquationStatement extends Statement {
                 + "\\n\\n|<left>&zwj;&zwj;&zwj;left&zwnj;|<arrow>&zwj;&zwj;&zwj;arrow&zwnj;|"
                 + "<right>&zwj;&zwj;&zwj;right&zwnj;}\",color=\"#bb2828\"];\n"
 
-                + "\tequation:left:w -> " + left.getDotId() + ";\n"
+                + "\tequation:left:w -> " + left.getDotId(ids) + ";\n"
                 + "\tequation:arrow -> " + "arrow:w" + ";\n"
-                + "\tequation:right:e -> " + right.getDotId() + ";\n"
+                + "\tequation:right:e -> " + right.getDotId(ids) + ";\n"
 
-                + left.getDotCode() + arrow.getDotCode() + right.getDotCode()
+                + left.getDotCode(ids) + arrow.getDotCode() + right.getDotCode(ids)
 
                 + "}\n";
     }
@@ -303,6 +306,6 @@ final class EquationStatement extends Statement {
 
     @Override
     public int hashCode() {
-        return toString().hashCode();
+        return 31 * (31 * left.hashCode() + arrow.hashCode()) + right.hashCode();
     }
 }
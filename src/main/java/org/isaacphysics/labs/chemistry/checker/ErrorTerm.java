@@ -16,8 +16,6 @@
 
 package org.isaacphysics.labs.chemistry.checker;
 
-import java.util.HashMap;
-
 /**
  * Instance of an error term - terms that contain syntax errors.
  */
@@ -25,7 +23,7 @@ public final class ErrorTerm extends AbstractTerm {
 
     /**
      * Constructor method for ErrorTerm.
-     * Does nothing other than invoking its base class, AbstractTerm for generating dotId.
+     * Does nothing other than invoking its base class, AbstractTerm.
      */
     public ErrorTerm() {
         super();
@@ -42,6 +40,16 @@ public final class ErrorTerm extends AbstractTerm {
         return false;
     }
 
+    @Override
+    <R> R accept(final AstVisitor<R> visitor) {
+        return visitor.visitErrorTerm(this);
+    }
+
+    @Override
+    Summary getSummary() {
+        return Summary.ERROR;
+    }
+
     @Override
     public Fraction getMassNumber() throws NuclearException {
         throw new NuclearException("Mass number not defined for ErrorTerm.");
@@ -53,25 +61,25 @@ public final class ErrorTerm extends AbstractTerm {
     }
 
     @Override
-    public HashMap<String, Fraction> getAtomCount() {
-        return new HashMap<>();
+    public AtomVector getAtomVector() {
+        return AtomVector.EMPTY;
     }
 
     @Override
     public Fraction getCharge() {
-        return new Fraction(0, 1);
+        return Fraction.ZERO;
     }
 
     @Override
-    public String getDotId() {
-        return "error_term_" + getdotId();
+    public String getDotId(final DotIds ids) {
+        return "error_term_" + ids.of(this);
     }
 
     @Override
-    public String getDotCode() {
+    public String getDotCode(final DotIds ids) {
 
         return "\t"
-                + getDotId()
+                + getDotId(ids)
                 + " [label=\"{&zwj;&zwj;&zwj;&zwj;Term&zwnj;|\\n"
                 + "Syntax Error"
                 + "\\n\\n}\",color=\"#49902a\"];\n";
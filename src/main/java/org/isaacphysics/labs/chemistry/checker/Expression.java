@@ -18,6 +18,7 @@ package org.isaacphysics.labs.chemistry.checker;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.function.BiPredicate;
 
 /**
  * Instance of an expression.
@@ -29,22 +30,19 @@ public final class Expression implements Countable {
     /**
      * Array of all terms involved in expression.
      */
-    private ArrayList<AbstractTerm> terms;
+    private final ArrayList<AbstractTerm> terms;
 
     /**
-     * Helper static variable for issuing unique IDs.
+     * Saved summary of the counts in this expression, or null if not yet worked out.
+     * Reset whenever a term is added.
      */
-    private static int dotIdTracker = 0;
+    private Summary savedSummary;
 
     /**
-     * Stores unique ID for every Expression.
+     * Saved hash code, or 0 if not yet computed. Read once per call, so racing threads at worst compute it twice.
+     * Expressions are built up term by term while parsing, so this is reset whenever a term is added.
      */
-    private int dotId;
-
-    /**
-     * Saved atom count.
-     */
-    private HashMap<String, Fraction> savedAtomCount;
+    private int savedHash = 0;
 
     /**
      * Construction method for Expression.
@@ -53,8 +51,6 @@ public final class Expression implements Countable {
     public Expression(final AbstractTerm t) {
         terms = new ArrayList<>();
         terms.add(t);
-        dotId = dotIdTracker;
-        dotIdTracker += 1;
     }
 
     /**
@@ -63,6 +59,8 @@ public final class Expression implements Countable {
      */
     void add(final AbstractTerm t) {
         terms.add(t);
+        savedHash = 0;
+        savedSummary = null;
     }
 
     @Override
@@ -91,68 +89,88 @@ public final class Expression implements Countable {
 
             Expression other = (Expression) o;
 
-            if (terms.size() != other.terms.size()) {
-                return false;
-            }
+            // Error terms are never equal to anything, but an expression still equals itself.
+            return hashCode() == other.hashCode()
+                    && sameTerms(other, (t1, t2) -> t1 == t2 || t1.equals(t2));
+        }
 
-            HashMap<AbstractTerm, Integer> htable1 = new HashMap<>();
-            HashMap<AbstractTerm, Integer> htable2 = new HashMap<>();
+        return false;
+    }
 
-            for (AbstractTerm t: terms) {
+    /**
+     * Checks if the terms of two expressions can be paired up one to one, in any order, so that each pair matches.
+     * <p>
+     *     Matching terms are paired greedily, which is correct as long as matching is an equivalence relation.
+     *
+     * @param expr Expression to be compared against.
+     * @param match Decides whether two terms match.
+     * @return True if every term of this expression is matched by a distinct term of the other.
+     */
+    private boolean sameTerms(final Expression expr, final BiPredicate<AbstractTerm, AbstractTerm> match) {
 
-                if (htable1.containsKey(t)) {
-                    htable1.put(t, htable1.get(t) + 1);
-                } else {
-                    htable1.put(t, 1);
-                }
-            }
+        if (terms.size() != expr.terms.size()) {
+            return false;
+        }
 
-            for (AbstractTerm t: other.terms) {
-                if (htable2.containsKey(t)) {
-                    htable2.put(t, htable2.get(t) + 1);
-                } else {
-                    htable2.put(t, 1);
+        boolean[] used = new boolean[terms.size()];
+
+        for (AbstractTerm t1 : terms) {
+
+            boolean found = false;
+
+            for (int j = 0; j < used.length && !found; j++) {
+                if (!used[j] && match.test(t1, expr.terms.get(j))) {
+                    used[j] = true;
+                    found = true;
                 }
             }
 
-            return htable1.equals(htable2);
+            if (!found) {
+                return false;
+            }
         }
 
-        return false;
+        return true;
     }
 
-    @Override
-    public HashMap<String, Fraction> getAtomCount() {
+    /**
+     * Accepts a visitor.
+     *
+     * @param visitor The visitor.
+     * @param <R> Type of result given by the visitor.
+     * @return Result given by the visitor.
+     */
+    <R> R accept(final AstVisitor<R> visitor) {
+        return visitor.visitExpression(this);
+    }
 
-        if (savedAtomCount == null) {
-            savedAtomCount = new HashMap<>();
+    /**
+     * Gives everything derived from the counts in this expression, worked out by {@link Analyser} in one pass over
+     * its terms.
+     *
+     * @return Summary of the expression.
+     */
+    Summary getSummary() {
 
-            for (AbstractTerm t : terms) {
-                for (String e : t.getAtomCount().keySet()) {
-                    if (!savedAtomCount.containsKey(e)) {
-                        savedAtomCount.put(e, t.getAtomCount().get(e));
-                    } else {
-                        savedAtomCount.put(e, savedAtomCount.get(e).plus(t.getAtomCount().get(e)));
-                    }
+        // Summaries never change, so a thread seeing null just works out an equal one again.
+        Summary summary = savedSummary;
 
-                }
-            }
+        if (summary == null) {
+            summary = accept(Analyser.INSTANCE);
+            savedSummary = summary;
         }
 
-        return savedAtomCount;
+        return summary;
     }
 
     @Override
-    public Fraction getCharge() {
-
-        Fraction c = terms.get(0).getCharge();
-
-        for (int i = 1; i < terms.size(); i++) {
-            c = c.plus(terms.get(i).getCharge());
-        }
-
-        return c;
+    public AtomVector getAtomVector() {
+        return getSummary().getAtoms();
+    }
 
+    @Override
+    public Fraction getCharge() {
+        return getSummary().getCharge();
     }
 
     /**
@@ -161,15 +179,7 @@ public final class Expression implements Countable {
      * @return True if error terms exist.
      */
     boolean containsError() {
-
-        for (AbstractTerm t : terms) {
-            if (t instanceof ErrorTerm) {
-                return true;
-            }
-        }
-
-        return false;
-
+        return getSummary().containsError();
     }
 
     /**
@@ -192,56 +202,11 @@ public final class Expression implements Countable {
      */
     boolean weaklyEquivalent(final Expression expr) {
 
-        if (terms.size() != expr.terms.size()) {
+        if (containsError() || expr.containsError()) {
             return false;
         }
 
-        HashMap<Formula, Integer> htable1 = new HashMap<>();
-        HashMap<Formula, Integer> htable2 = new HashMap<>();
-
-        for (AbstractTerm t: terms) {
-
-            if (t instanceof ErrorTerm) {
-
-                return false;
-
-            } else {
-
-                Term foo = (Term) t;
-                Formula f = foo.getFormula();
-
-                if (htable1.containsKey(f)) {
-
-                    htable1.put(f, htable1.get(f) + 1);
-
-                } else {
-
-                    htable1.put(f, 1);
-
-                }
-            }
-        }
-
-        for (AbstractTerm t: expr.terms) {
-
-            if (t instanceof ErrorTerm) {
-                return false;
-            } else {
-
-                Term foo = (Term) t;
-                Formula f = foo.getFormula();
-
-                if (htable2.containsKey(f)) {
-                    htable2.put(f, htable2.get(f) + 1);
-                } else {
-                    htable2.put(f, 1);
-                }
-
-            }
-        }
-
-        //System.out.println(htable1 + "\n" + htable2);
-        return htable1.equals(htable2);
+        return sameTerms(expr, (t1, t2) -> ((Term) t1).getFormula().equals(((Term) t2).getFormula()));
     }
 
     /**
@@ -249,72 +214,17 @@ public final class Expression implements Countable {
      *
      * E.g. 2NaOH (aq), 2NaOH (g) should return true.
      *
-     * Should assert that both expressions are weakly equivalent before executing this code,
-     * as it is quite time consuming.
-     *
      * @param expr Expression to be compared against.
      * @return True if both expressions are weakly equivalent, and contains same coefficients in relevant terms.
      */
     boolean sameCoefficients(final Expression expr) {
 
-        if (terms.size() != expr.terms.size()) {
+        if (containsError() || expr.containsError()) {
             return false;
         }
 
-        // Key = (Formula, Coefficient).
-        HashMap<Pair<Formula, Coefficient>, Integer> htable1 = new HashMap<>();
-        HashMap<Pair<Formula, Coefficient>, Integer> htable2 = new HashMap<>();
-
-        for (AbstractTerm t: terms) {
-
-            if (t instanceof ErrorTerm) {
-
-                return false;
-
-            } else {
-
-                Term foo = (Term) t;
-                Formula f = foo.getFormula();
-                Coefficient coeff = foo.getNumber();
-
-                Pair<Formula, Coefficient> temp = new Pair<>(f, coeff);
-
-                if (htable1.containsKey(temp)) {
-                    htable1.put(temp, htable1.get(temp) + 1);
-                } else {
-                    htable1.put(temp, 1);
-                }
-            }
-        }
-
-        for (AbstractTerm t: expr.terms) {
-
-            if (t instanceof ErrorTerm) {
-
-                return false;
-
-            } else {
-
-                Term foo = (Term) t;
-                Formula f = foo.getFormula();
-                Coefficient coeff = foo.getNumber();
-
-                Pair<Formula, Coefficient> temp = new Pair<>(f, coeff);
-
-                if (htable2.containsKey(temp)) {
-
-                    htable2.put(temp, htable2.get(temp) + 1);
-
-                } else {
-
-                    htable2.put(temp, 1);
-
-                }
-
-            }
-        }
-
-        return htable1.equals(htable2);
+        return sameTerms(expr, (t1, t2) -> ((Term) t1).getFormula().equals(((Term) t2).getFormula())
+                && ((Term) t1).getNumber().equals(((Term) t2).getNumber()));
     }
 
     /**
@@ -322,71 +232,17 @@ public final class Expression implements Countable {
      *
      * E.g. 2NaOH (aq), 20NaOH (aq) should return true.
      *
-     * Should assert that both expressions are weakly equivalent before executing this code,
-     * as it is quite time consuming.
-     *
      * @param expr Expression to be compared against.
      * @return True if both expressions are weakly equivalent and contains same states symbols in all terms.
      */
     boolean sameStateSymbols(final Expression expr) {
 
-        if (terms.size() != expr.terms.size()) {
+        if (containsError() || expr.containsError()) {
             return false;
         }
 
-        // Key = (Formula, State symbol).
-        HashMap<Pair<Formula, String>, Integer> htable1 = new HashMap<>();
-        HashMap<Pair<Formula, String>, Integer> htable2 = new HashMap<>();
-
-        for (AbstractTerm t: terms) {
-
-            if (t instanceof ErrorTerm) {
-
-                return false;
-
-            } else {
-                Term foo = (Term) t;
-                Formula f = foo.getFormula();
-                String state = "null";
-
-                if (foo.getState() != null) {
-                    state = foo.getState().toString();
-                }
-
-                Pair<Formula, String> temp = new Pair<>(f, state);
-
-                if (htable1.containsKey(temp)) {
-                    htable1.put(temp, htable1.get(temp) + 1);
-                } else {
-                    htable1.put(temp, 1);
-                }
-            }
-        }
-
-        for (AbstractTerm t: expr.terms) {
-
-            if (t instanceof ErrorTerm) {
-                return false;
-            } else {
-                Term foo = (Term) t;
-                Formula f = foo.getFormula();
-                String state = "null";
-
-                if (foo.getState() != null) {
-                    state = foo.getState().toString();
-                }
-
-                Pair<Formula, String> temp = new Pair<>(f, state);
-
-                if (htable2.containsKey(temp)) {
-                    htable2.put(temp, htable2.get(temp) + 1);
-                } else {
-                    htable2.put(temp, 1);
-                }
-            }
-        }
-
-        return htable1.equals(htable2);
+        return sameTerms(expr, (t1, t2) -> ((Term) t1).getFormula().equals(((Term) t2).getFormula())
+                && ((Term) t1).getState() == ((Term) t2).getState());
     }
 
     /**
@@ -442,27 +298,27 @@ public final class Expression implements Countable {
     }
 
     @Override
-    public String getDotId() {
-        return "expression_" + dotId;
+    public String getDotId(final DotIds ids) {
+        return "expression_" + ids.of(this);
     }
 
     @Override
-    public String getDotCode() {
+    public String getDotCode(final DotIds ids) {
 
         StringBuilder result = new StringBuilder();
         result.append("\t");
-        result.append(getDotId());
+        result.append(getDotId(ids));
         result.append(" [label=\"{&zwj;&zwj;&zwj;&zwj;Expression&zwnj;|\\n");
         result.append(getDotString());
         result.append("\\n\\n|<terms>&zwj;&zwj;&zwj;terms&zwnj;}\",color=\"#fea100\"];\n");
 
         for (AbstractTerm t : terms) {
             result.append("\t");
-            result.append(getDotId());
+            result.append(getDotId(ids));
             result.append(":terms -> ");
-            result.append(t.getDotId());
+            result.append(t.getDotId(ids));
             result.append(":n;\n");
-            result.append(t.getDotCode());
+            result.append(t.getDotCode(ids));
         }
 
         return result.toString();
@@ -494,10 +350,10 @@ public final class Expression implements Countable {
      */
     Fraction getMassCount() throws NuclearException {
 
-        Fraction mass = terms.get(0).getMassNumber();
+        Fraction mass = getSummary().getMassCount();
 
-        for (int i = 1; i < terms.size(); i++) {
-            mass = mass.plus(terms.get(i).getMassNumber());
+        if (mass == null) {
+            throw new NuclearException("Mass number undefined for non-nuclear expression.");
         }
 
         return mass;
@@ -512,10 +368,10 @@ public final class Expression implements Countable {
      */
     Fraction getAtomicCount() throws NuclearException {
 
-        Fraction atomic = terms.get(0).getAtomicNumber();
+        Fraction atomic = getSummary().getAtomicCount();
 
-        for (int i = 1; i < terms.size(); i++) {
-            atomic = atomic.plus(terms.get(i).getAtomicNumber());
+        if (atomic == null) {
+            throw new NuclearException("Atomic number undefined for non-nuclear expression.");
         }
 
         return atomic;
@@ -528,20 +384,24 @@ public final class Expression implements Countable {
      * @return True if the atomic numbers in nuclear equation is valid.
      */
     boolean isValidAtomicNumber() {
+        return getSummary().isValidAtomicNumber();
+    }
 
-        for (AbstractTerm t: terms) {
+    @Override
+    public int hashCode() {
 
-            if (!t.isValidAtomicNumber()) {
-                return false;
+        int h = savedHash;
+
+        if (h == 0) {
+
+            // Terms may be in any order, so their hashes are combined in an order-independent way.
+            for (AbstractTerm t : terms) {
+                h += t.hashCode();
             }
 
+            savedHash = h;
         }
 
-        return true;
-    }
-
-    @Override
-    public int hashCode() {
-        return toString().hashCode();
+        return h;
     }
 }
@@ -17,7 +17,6 @@
 package org.isaacphysics.labs.chemistry.checker;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 
 /**
  *
@@ -27,12 +26,7 @@ public final class ExpressionStatement extends Statement implements Countable {
     /**
      * Expression involved in statement.
      */
-    private Expression expr;
-
-    /**
-     * Saved atom count.
-     */
-    private HashMap<String, Fraction> savedAtomCount = null;
+    private final Expression expr;
 
     /**
      * Constructor method of ExpressionStatement.
@@ -48,7 +42,7 @@ public final class ExpressionStatement extends Statement implements Countable {
     }
 
     @Override
-    public String getDotId() {
+    public String getDotId(final DotIds ids) {
         return null;
     }
 
@@ -70,11 +64,8 @@ public final class ExpressionStatement extends Statement implements Countable {
     }
 
     @Override
-    public HashMap<String, Fraction> getAtomCount() {
-        if (savedAtomCount == null) {
-            savedAtomCount = expr.getAtomCount();
-        }
-        return savedAtomCount;
+    public AtomVector getAtomVector() {
+        return expr.getAtomVector();
     }
 
     @Override
@@ -92,10 +83,15 @@ public final class ExpressionStatement extends Statement implements Countable {
 
     @Override
     public String getDotCode() {
+        return getDotCode(new DotIds());
+    }
+
+    @Override
+    public String getDotCode(final DotIds ids) {
 
         return "digraph chemical_syntax_tree {\n"
                 + "\tnode [shape=record,penwidth=2,splines=ortho];\n\n"
-                + expr.getDotCode()
+                + expr.getDotCode(ids)
                 + "}\n";
 
     }
@@ -223,6 +219,6 @@ public final class ExpressionStatement extends Statement implements Countable {
 
     @Override
     public int hashCode() {
-        return toString().hashCode();
+        return expr.hashCode();
     }
 }
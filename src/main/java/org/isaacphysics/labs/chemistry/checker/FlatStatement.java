@@ -0,0 +1,1134 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A parsed statement encoded in a handful of primitive arrays, to be held in long-lived caches in place of its parse
+ * tree.
+ * <p>
+ *     Every term has an entry in each of the term arrays: its coefficient, its state and its formula. Formulas are
+ *     stored as nodes in pre-order, with an entry in each of the node arrays: the kind of node, its element, count and
+ *     charge, and the number of nodes in its subtree, so that a whole formula can be compared or skipped as one slice
+ *     of the arrays. Each term holds its formula as a {@link FormulaKey}, which is that slice. Within each expression,
+ *     terms are sorted into a canonical order, in which terms with equal formulas are next to each other and error
+ *     terms come last.
+ * <p>
+ *     Target answers are {@link #interned()} before they are cached: each of their formulas is swapped for the one
+ *     copy held in a pool shared by every target, so the water in a thousand cached targets is stored once, and
+ *     comparing equal target formulas is a check of identity. Answers are never interned, so they cannot fill the pool.
+ * <p>
+ *     Two flat statements are equal exactly when the statements they were built from are. Flat statements never change
+ *     once built, so one can be shared by every thread.
+ */
+final class FlatStatement {
+
+    /**
+     * Type of an {@link ExpressionStatement}.
+     */
+    static final byte EXPRESSION = 0;
+
+    /**
+     * Type of an {@link EquationStatement}.
+     */
+    static final byte EQUATION = 1;
+
+    /**
+     * Type of a {@link NuclearExpressionStatement}.
+     */
+    static final byte NUCLEAR_EXPRESSION = 2;
+
+    /**
+     * Type of a {@link NuclearEquationStatement}.
+     */
+    static final byte NUCLEAR_EQUATION = 3;
+
+    /**
+     * Arrow of a statement that is not a chemical equation.
+     */
+    static final byte NO_ARROW = 0;
+
+    /**
+     * Arrow of a chemical equation written with {@link SingleArrow}.
+     */
+    static final byte SINGLE_ARROW = 1;
+
+    /**
+     * Arrow of a chemical equation written with {@link DoubleArrow}.
+     */
+    static final byte DOUBLE_ARROW = 2;
+
+    /**
+     * Kind of an {@link Element} node: the element is its atomic number and the count its printed subscript.
+     */
+    static final byte ELEMENT = 0;
+
+    /**
+     * Kind of a {@link Compound} node without brackets: the count is its printed number and the children its groups.
+     */
+    static final byte COMPOUND = 1;
+
+    /**
+     * Kind of a {@link Compound} node in round brackets.
+     */
+    static final byte ROUND_COMPOUND = 2;
+
+    /**
+     * Kind of a {@link Compound} node in square brackets.
+     */
+    static final byte SQUARE_COMPOUND = 3;
+
+    /**
+     * Kind of an {@link Ion} node: the charge is its charge and the child its molecule.
+     */
+    static final byte ION = 4;
+
+    /**
+     * Kind of an {@link IonChain} node: the children are its ions, in order.
+     */
+    static final byte ION_CHAIN = 5;
+
+    /**
+     * Kind of a {@link Hydrate} node: the count is its number of water molecules and the child its compound.
+     */
+    static final byte HYDRATE = 6;
+
+    /**
+     * Kind of an {@link Isotope} node: the count is its mass number, the charge its atomic number and the child its
+     * element or ion.
+     */
+    static final byte ISOTOPE = 7;
+
+    /**
+     * Kind of a {@link ChemicalElectron} node.
+     */
+    static final byte ELECTRON = 8;
+
+    /**
+     * Kind of the first {@link SpecialNuclear} particle, whose count is its mass number and charge its atomic number.
+     * The other particles follow, in the order of {@link #PARTICLES}.
+     */
+    private static final byte FIRST_PARTICLE = 9;
+
+    /**
+     * Syntax of each kind of nuclear particle.
+     */
+    private static final String[] PARTICLES = {"alphaparticle", "betaparticle", "gammaray", "neutrino",
+        "antineutrino", "electron", "positron", "neutron", "proton"};
+
+    /**
+     * State of a term without a state symbol. Other states are one more than their ordinal in
+     * {@link Term.PhysicalState}.
+     */
+    static final byte NO_STATE = 0;
+
+    /**
+     * State of an error term, which has no formula or coefficient.
+     */
+    static final byte ERROR = -1;
+
+    /**
+     * Default maximum number of formulas in the pool shared by interned statements.
+     */
+    private static final int DEFAULT_POOL_SIZE = 20000;
+
+    /**
+     * The one copy of each formula used by interned statements, as both key and value. Evicting a formula only
+     * means that targets interned afterwards get a new copy of it.
+     */
+    private static final BoundedCache<FormulaKey, FormulaKey> POOL = new BoundedCache<>(
+            Integer.getInteger("chemistry.formulaPool.maxSize", DEFAULT_POOL_SIZE), 0, TimeUnit.SECONDS);
+
+    /**
+     * Type of the statement.
+     */
+    private final byte type;
+
+    /**
+     * Arrow of the statement.
+     */
+    private final byte arrow;
+
+    /**
+     * Index of the first term of each expression, from left to right, then the number of terms.
+     */
+    private final int[] sides;
+
+    /**
+     * Formula of each term, or null for error terms.
+     */
+    private final FormulaKey[] formulas;
+
+    /**
+     * Numerator of the coefficient of each term.
+     */
+    private final int[] numerators;
+
+    /**
+     * Denominator of the coefficient of each term, or 0 if the coefficient is a whole number.
+     */
+    private final int[] denominators;
+
+    /**
+     * State of each term.
+     */
+    private final byte[] states;
+
+    /**
+     * Index of each term in its expression, as it was written.
+     */
+    private final int[] positions;
+
+    /**
+     * Hash code, computed once as flat statements never change.
+     */
+    private final int hash;
+
+    /**
+     * Constructor method of FlatStatement. Takes ownership of the arrays, which must not be changed afterwards.
+     *
+     * @param type Type of the statement.
+     * @param arrow Arrow of the statement.
+     * @param sides Index of the first term of each expression, then the number of terms.
+     * @param formulas Formula of each term, or null for error terms.
+     * @param numerators Numerator of the coefficient of each term.
+     * @param denominators Denominator of the coefficient of each term, or 0 for whole numbers.
+     * @param states State of each term.
+     * @param positions Index of each term in its expression, as it was written.
+     */
+    private FlatStatement(final byte type, final byte arrow, final int[] sides, final FormulaKey[] formulas,
+                          final int[] numerators, final int[] denominators, final byte[] states,
+                          final int[] positions) {
+
+        this.type = type;
+        this.arrow = arrow;
+        this.sides = sides;
+        this.formulas = formulas;
+        this.numerators = numerators;
+        this.denominators = denominators;
+        this.states = states;
+        this.positions = positions;
+
+        int h = 31 * type + arrow;
+
+        for (int s = 0; s + 1 < sides.length; s++) {
+
+            // Terms may be in any order, so their hashes are combined in an order-independent way.
+            int side = 0;
+
+            for (int t = sides[s]; t < sides[s + 1]; t++) {
+
+                int term = 31 * (formulas[t] == null ? 0 : formulas[t].hash) + numerators[t];
+                term = 31 * term + denominators[t];
+                side += 31 * term + states[t];
+            }
+
+            h = 31 * h + side;
+        }
+
+        this.hash = h;
+    }
+
+    /**
+     * Encodes a parsed statement.
+     *
+     * @param statement The statement.
+     * @return The flat form of the statement.
+     */
+    static FlatStatement of(final Statement statement) {
+
+        byte type;
+        byte arrow = NO_ARROW;
+
+        if (statement instanceof ExpressionStatement) {
+            type = EXPRESSION;
+        } else if (statement instanceof EquationStatement) {
+            type = EQUATION;
+            arrow = ((EquationStatement) statement).getArrow() instanceof DoubleArrow ? DOUBLE_ARROW : SINGLE_ARROW;
+        } else if (statement instanceof NuclearExpressionStatement) {
+            type = NUCLEAR_EXPRESSION;
+        } else {
+            type = NUCLEAR_EQUATION;
+        }
+
+        Builder builder = new Builder();
+
+        for (Expression e : CompiledTarget.expressionsOf(statement)) {
+            builder.expression(e);
+        }
+
+        return builder.build(type, arrow).sorted();
+    }
+
+    /**
+     * Gives a copy of this statement whose formulas are the ones held in the pool shared by every interned statement,
+     * adding any the pool does not have yet. Only trusted statements, such as target answers, should be interned.
+     *
+     * @return The interned statement.
+     */
+    FlatStatement interned() {
+
+        FormulaKey[] shared = new FormulaKey[formulas.length];
+
+        for (int t = 0; t < formulas.length; t++) {
+
+            if (formulas[t] != null) {
+
+                FormulaKey pooled = POOL.get(formulas[t]);
+
+                if (pooled == null) {
+                    // Two threads may both add the same formula, in which case the last one stays in the pool. Both
+                    // copies are equal, so only some sharing is lost.
+                    pooled = formulas[t].compact();
+                    POOL.put(pooled, pooled);
+                }
+
+                shared[t] = pooled;
+            }
+        }
+
+        return new FlatStatement(type, arrow, sides, shared, numerators, denominators, states, positions);
+    }
+
+    /**
+     * Writes this statement to a {@link QuestionBank}. Hashes are not written, as they are quicker to work out again.
+     *
+     * @param out Output to write to.
+     * @throws IOException The output cannot be written.
+     */
+    void writeTo(final DataOutput out) throws IOException {
+
+        out.writeByte(type);
+        out.writeByte(arrow);
+        out.writeInt(sides.length);
+        writeInts(out, sides);
+
+        // The formulas are written one after another, each starting where the one before it ends.
+        int nodes = 0;
+        out.writeInt(formulas.length);
+
+        for (FormulaKey f : formulas) {
+            out.writeInt(f == null ? -1 : nodes);
+            nodes += f == null ? 0 : f.size();
+        }
+
+        writeInts(out, numerators);
+        writeInts(out, denominators);
+        out.write(states);
+        writeInts(out, positions);
+
+        out.writeInt(nodes);
+
+        for (FormulaKey f : formulas) {
+            if (f != null) {
+                out.write(f.kinds, f.root, f.size());
+            }
+        }
+
+        for (FormulaKey f : formulas) {
+            if (f != null) {
+                out.write(f.elements, f.root, f.size());
+            }
+        }
+
+        for (FormulaKey f : formulas) {
+            if (f != null) {
+                writeInts(out, f.counts, f.root, f.size());
+            }
+        }
+
+        for (FormulaKey f : formulas) {
+            if (f != null) {
+                writeInts(out, f.charges, f.root, f.size());
+            }
+        }
+
+        for (FormulaKey f : formulas) {
+            if (f != null) {
+                writeInts(out, f.sizes, f.root, f.size());
+            }
+        }
+    }
+
+    /**
+     * Reads back a statement written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in Buffer positioned at the statement, which is moved past it.
+     * @return The statement.
+     */
+    static FlatStatement readFrom(final ByteBuffer in) {
+
+        byte type = in.get();
+        byte arrow = in.get();
+        int[] sides = readInts(in, in.getInt());
+
+        int terms = in.getInt();
+        int[] roots = readInts(in, terms);
+        int[] numerators = readInts(in, terms);
+        int[] denominators = readInts(in, terms);
+        byte[] states = readBytes(in, terms);
+        int[] positions = readInts(in, terms);
+
+        int nodes = in.getInt();
+        byte[] kinds = readBytes(in, nodes);
+        byte[] elements = readBytes(in, nodes);
+        int[] counts = readInts(in, nodes);
+        int[] charges = readInts(in, nodes);
+        int[] sizes = readInts(in, nodes);
+
+        FormulaKey[] formulas = new FormulaKey[terms];
+
+        for (int t = 0; t < terms; t++) {
+            if (roots[t] >= 0) {
+                formulas[t] = new FormulaKey(kinds, elements, counts, charges, sizes, roots[t]);
+            }
+        }
+
+        return new FlatStatement(type, arrow, sides, formulas, numerators, denominators, states, positions);
+    }
+
+    /**
+     * Writes every number in an array.
+     *
+     * @param out Output to write to.
+     * @param values Numbers to write.
+     * @throws IOException The output cannot be written.
+     */
+    private static void writeInts(final DataOutput out, final int[] values) throws IOException {
+        writeInts(out, values, 0, values.length);
+    }
+
+    /**
+     * Writes a run of numbers from an array.
+     *
+     * @param out Output to write to.
+     * @param values Array holding the numbers.
+     * @param from Index of the first number to write.
+     * @param length Number of numbers to write.
+     * @throws IOException The output cannot be written.
+     */
+    private static void writeInts(final DataOutput out, final int[] values, final int from, final int length)
+            throws IOException {
+        for (int k = from; k < from + length; k++) {
+            out.writeInt(values[k]);
+        }
+    }
+
+    /**
+     * Reads an array of numbers.
+     *
+     * @param in Buffer positioned at the numbers, which is moved past them.
+     * @param length Number of numbers to read.
+     * @return The numbers.
+     */
+    private static int[] readInts(final ByteBuffer in, final int length) {
+        int[] values = new int[length];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + 4 * length);
+        return values;
+    }
+
+    /**
+     * Reads an array of bytes.
+     *
+     * @param in Buffer positioned at the bytes, which is moved past them.
+     * @param length Number of bytes to read.
+     * @return The bytes.
+     */
+    private static byte[] readBytes(final ByteBuffer in, final int length) {
+        byte[] values = new byte[length];
+        in.get(values);
+        return values;
+    }
+
+    /**
+     * Gives a copy of this statement with the terms of each expression in canonical order. The formulas are shared.
+     *
+     * @return The sorted statement.
+     */
+    private FlatStatement sorted() {
+
+        int[] order = new int[formulas.length];
+
+        for (int s = 0; s + 1 < sides.length; s++) {
+
+            // Expressions rarely have more than a handful of terms, so an insertion sort is quickest.
+            for (int k = sides[s]; k < sides[s + 1]; k++) {
+
+                int m = k;
+
+                while (m > sides[s] && compareTerms(this, order[m - 1], this, k) > 0) {
+                    order[m] = order[m - 1];
+                    m--;
+                }
+
+                order[m] = k;
+            }
+        }
+
+        FormulaKey[] f = new FormulaKey[order.length];
+        int[] n = new int[order.length];
+        int[] d = new int[order.length];
+        byte[] st = new byte[order.length];
+        int[] p = new int[order.length];
+
+        for (int k = 0; k < order.length; k++) {
+            f[k] = formulas[order[k]];
+            n[k] = numerators[order[k]];
+            d[k] = denominators[order[k]];
+            st[k] = states[order[k]];
+            p[k] = positions[order[k]];
+        }
+
+        return new FlatStatement(type, arrow, sides, f, n, d, st, p);
+    }
+
+    /**
+     * Compares the formulas of two terms, which must not be error terms. Formulas from the pool are compared by
+     * identity, and others first by hash and then node by node.
+     *
+     * @param a Statement of the first term.
+     * @param i Index of the first term.
+     * @param b Statement of the second term.
+     * @param j Index of the second term.
+     * @return Zero if the formulas are equal, otherwise a negative or positive number consistent with a total order.
+     */
+    static int compareFormulas(final FlatStatement a, final int i, final FlatStatement b, final int j) {
+        return a.formulas[i].compareTo(b.formulas[j]);
+    }
+
+    /**
+     * Compares two terms in canonical order: by formula, then coefficient, then state. Error terms come after the
+     * others, in the order they were written, and are never equal to anything.
+     *
+     * @param a Statement of the first term.
+     * @param i Index of the first term.
+     * @param b Statement of the second term.
+     * @param j Index of the second term.
+     * @return Zero if the terms are equal, otherwise a negative or positive number consistent with a total order.
+     */
+    static int compareTerms(final FlatStatement a, final int i, final FlatStatement b, final int j) {
+
+        boolean errorA = a.states[i] == ERROR;
+        boolean errorB = b.states[j] == ERROR;
+
+        if (errorA || errorB) {
+            return errorA && errorB ? (a.positions[i] < b.positions[j] ? -1 : 1) : (errorA ? 1 : -1);
+        }
+
+        int c = compareFormulas(a, i, b, j);
+        c = c != 0 ? c : Integer.compare(a.denominators[i], b.denominators[j]);
+        c = c != 0 ? c : Integer.compare(a.numerators[i], b.numerators[j]);
+
+        return c != 0 ? c : Integer.compare(a.states[i], b.states[j]);
+    }
+
+    /**
+     * Checks if two terms have the same coefficient.
+     *
+     * @param a Statement of the first term.
+     * @param i Index of the first term.
+     * @param b Statement of the second term.
+     * @param j Index of the second term.
+     * @return True if the coefficients are equal.
+     */
+    static boolean sameCoefficient(final FlatStatement a, final int i, final FlatStatement b, final int j) {
+        return a.numerators[i] == b.numerators[j] && a.denominators[i] == b.denominators[j];
+    }
+
+    /**
+     * @return Type of the statement, e.g. {@link #EQUATION}.
+     */
+    byte getType() {
+        return type;
+    }
+
+    /**
+     * @return Arrow of the statement, or {@link #NO_ARROW}.
+     */
+    byte getArrow() {
+        return arrow;
+    }
+
+    /**
+     * @return Number of expressions in the statement.
+     */
+    int sideCount() {
+        return sides.length - 1;
+    }
+
+    /**
+     * @param side Index of an expression, from left to right.
+     * @return Index of the first term of the expression.
+     */
+    int sideStart(final int side) {
+        return sides[side];
+    }
+
+    /**
+     * @param side Index of an expression, from left to right.
+     * @return Index just past the last term of the expression.
+     */
+    int sideEnd(final int side) {
+        return sides[side + 1];
+    }
+
+    /**
+     * @param side Index of an expression, from left to right.
+     * @return Index of the first error term of the expression, or just past its last term if it has none.
+     */
+    int errorStart(final int side) {
+
+        int t = sides[side + 1];
+
+        while (t > sides[side] && states[t - 1] == ERROR) {
+            t--;
+        }
+
+        return t;
+    }
+
+    /**
+     * @param term Index of a term.
+     * @return Formula of the term, or null for an error term.
+     */
+    FormulaKey getFormula(final int term) {
+        return formulas[term];
+    }
+
+    /**
+     * @param term Index of a term.
+     * @return State of the term.
+     */
+    byte getState(final int term) {
+        return states[term];
+    }
+
+    /**
+     * @param term Index of a term.
+     * @return Index of the term in its expression, as it was written.
+     */
+    int getPosition(final int term) {
+        return positions[term];
+    }
+
+    /**
+     * @return Number of formulas in the pool shared by interned statements.
+     */
+    static int poolSize() {
+        return POOL.size();
+    }
+
+    /**
+     * @return Number of formulas of interned statements found in the pool.
+     */
+    static long poolHitCount() {
+        return POOL.hitCount();
+    }
+
+    /**
+     * @return Number of formulas of interned statements added to the pool.
+     */
+    static long poolMissCount() {
+        return POOL.missCount();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+
+        if (this == o) {
+            return true;
+        } else if (!(o instanceof FlatStatement)) {
+            return false;
+        }
+
+        FlatStatement other = (FlatStatement) o;
+
+        if (hash != other.hash || type != other.type || arrow != other.arrow || !Arrays.equals(sides, other.sides)) {
+            return false;
+        }
+
+        // Both sets of terms are in canonical order, so equal statements have equal terms at each index.
+        for (int t = 0; t < states.length; t++) {
+            if (states[t] == ERROR || compareTerms(this, t, other, t) != 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Collects the terms and nodes of a statement as it is walked.
+     * <p>
+     *     Each formula adds its own node, with {@link Formula#flatten(Builder)}, and hands over its children to be
+     *     added after it. The builder keeps its own stack of the formulas still to add, so that deeply nested compounds
+     *     do not recurse.
+     */
+    static final class Builder {
+
+        /**
+         * Initial length of the node arrays.
+         */
+        private static final int INITIAL_NODES = 16;
+
+        /**
+         * Initial length of the term arrays.
+         */
+        private static final int INITIAL_TERMS = 4;
+
+        /**
+         * Formulas still to be added, each above the index of its parent's node to close once they are all added.
+         */
+        private final ArrayDeque<Object> pending = new ArrayDeque<>();
+
+        /**
+         * Index of the first term of each expression added so far, then the number of terms.
+         */
+        private int[] sides = new int[3];
+
+        /**
+         * Number of expressions added so far.
+         */
+        private int sideCount = 0;
+
+        /**
+         * Root node of the formula of each term.
+         */
+        private int[] formulas = new int[INITIAL_TERMS];
+
+        /**
+         * Numerator of the coefficient of each term.
+         */
+        private int[] numerators = new int[INITIAL_TERMS];
+
+        /**
+         * Denominator of the coefficient of each term.
+         */
+        private int[] denominators = new int[INITIAL_TERMS];
+
+        /**
+         * State of each term.
+         */
+        private byte[] states = new byte[INITIAL_TERMS];
+
+        /**
+         * Index of each term in its expression.
+         */
+        private int[] positions = new int[INITIAL_TERMS];
+
+        /**
+         * Number of terms added so far.
+         */
+        private int termCount = 0;
+
+        /**
+         * Kind of each node.
+         */
+        private byte[] kinds = new byte[INITIAL_NODES];
+
+        /**
+         * Atomic number of each element node.
+         */
+        private byte[] elements = new byte[INITIAL_NODES];
+
+        /**
+         * Count of each node.
+         */
+        private int[] counts = new int[INITIAL_NODES];
+
+        /**
+         * Charge of each node.
+         */
+        private int[] charges = new int[INITIAL_NODES];
+
+        /**
+         * Number of nodes in the subtree of each node.
+         */
+        private int[] sizes = new int[INITIAL_NODES];
+
+        /**
+         * Number of nodes added so far.
+         */
+        private int nodeCount = 0;
+
+        /**
+         * Constructor method of Builder.
+         */
+        private Builder() {
+            // Nothing here.
+        }
+
+        /**
+         * Adds the terms of an expression.
+         *
+         * @param expression The expression.
+         */
+        private void expression(final Expression expression) {
+
+            List<AbstractTerm> terms = expression.getTerms();
+
+            for (int k = 0; k < terms.size(); k++) {
+
+                if (termCount == formulas.length) {
+                    int length = 2 * termCount;
+                    formulas = Arrays.copyOf(formulas, length);
+                    numerators = Arrays.copyOf(numerators, length);
+                    denominators = Arrays.copyOf(denominators, length);
+                    states = Arrays.copyOf(states, length);
+                    positions = Arrays.copyOf(positions, length);
+                }
+
+                positions[termCount] = k;
+
+                if (terms.get(k) instanceof Term) {
+
+                    Term term = (Term) terms.get(k);
+                    Coefficient coefficient = term.getNumber();
+
+                    if (coefficient instanceof FracCoeff) {
+                        numerators[termCount] = ((FracCoeff) coefficient).getNumerator();
+                        denominators[termCount] = ((FracCoeff) coefficient).getDenominator();
+                    } else {
+                        numerators[termCount] = ((IntCoeff) coefficient).getCoefficient();
+                        denominators[termCount] = 0;
+                    }
+
+                    states[termCount] = term.getState() == null ? NO_STATE : (byte) (term.getState().ordinal() + 1);
+                    formulas[termCount] = nodeCount;
+                    formula(term.getFormula());
+
+                } else {
+                    formulas[termCount] = -1;
+                    numerators[termCount] = 0;
+                    denominators[termCount] = 0;
+                    states[termCount] = ERROR;
+                }
+
+                termCount++;
+            }
+
+            if (sideCount + 2 > sides.length) {
+                sides = Arrays.copyOf(sides, 2 * sides.length);
+            }
+
+            sides[++sideCount] = termCount;
+        }
+
+        /**
+         * Adds the nodes of a formula.
+         *
+         * @param formula The formula.
+         */
+        private void formula(final Formula formula) {
+
+            pending.push(formula);
+
+            while (!pending.isEmpty()) {
+
+                Object next = pending.pop();
+
+                if (next instanceof Formula) {
+                    ((Formula) next).flatten(this);
+                } else {
+                    // Every child of this node has been added.
+                    int index = (Integer) next;
+                    sizes[index] = nodeCount - index;
+                }
+            }
+        }
+
+        /**
+         * Adds a node without children.
+         *
+         * @param kind Kind of the node.
+         * @param element Atomic number of the node, or 0.
+         * @param count Count of the node.
+         * @param charge Charge of the node.
+         */
+        void node(final byte kind, final int element, final int count, final int charge) {
+            int index = add(kind, element, count, charge);
+            sizes[index] = 1;
+        }
+
+        /**
+         * Adds a node with a single child, which is added after it.
+         *
+         * @param kind Kind of the node.
+         * @param count Count of the node.
+         * @param charge Charge of the node.
+         * @param child Child of the node.
+         */
+        void node(final byte kind, final int count, final int charge, final Formula child) {
+            pending.push(add(kind, 0, count, charge));
+            pending.push(child);
+        }
+
+        /**
+         * Adds a node with children, which are added after it, in order.
+         *
+         * @param kind Kind of the node.
+         * @param count Count of the node.
+         * @param children Children of the node.
+         */
+        void node(final byte kind, final int count, final List<? extends Formula> children) {
+
+            pending.push(add(kind, 0, count, 0));
+
+            for (int k = children.size() - 1; k >= 0; k--) {
+                pending.push(children.get(k));
+            }
+        }
+
+        /**
+         * Adds a nuclear particle.
+         *
+         * @param syntax Syntax of the particle, e.g. "alphaparticle".
+         * @param mass Mass number of the particle, as written.
+         * @param atom Atomic number of the particle, as written.
+         */
+        void particle(final String syntax, final int mass, final int atom) {
+
+            for (int k = 0; k < PARTICLES.length; k++) {
+                if (PARTICLES[k].equals(syntax)) {
+                    node((byte) (FIRST_PARTICLE + k), 0, mass, atom);
+                    return;
+                }
+            }
+
+            throw new IllegalArgumentException("Unknown particle " + syntax + ".");
+        }
+
+        /**
+         * Adds a node, leaving its size to be filled in.
+         *
+         * @param kind Kind of the node.
+         * @param element Atomic number of the node, or 0.
+         * @param count Count of the node.
+         * @param charge Charge of the node.
+         * @return Index of the node.
+         */
+        private int add(final byte kind, final int element, final int count, final int charge) {
+
+            if (nodeCount == kinds.length) {
+                int length = 2 * nodeCount;
+                kinds = Arrays.copyOf(kinds, length);
+                elements = Arrays.copyOf(elements, length);
+                counts = Arrays.copyOf(counts, length);
+                charges = Arrays.copyOf(charges, length);
+                sizes = Arrays.copyOf(sizes, length);
+            }
+
+            kinds[nodeCount] = kind;
+            elements[nodeCount] = (byte) element;
+            counts[nodeCount] = count;
+            charges[nodeCount] = charge;
+
+            return nodeCount++;
+        }
+
+        /**
+         * Gives the statement built, with its terms as they were written.
+         *
+         * @param type Type of the statement.
+         * @param arrow Arrow of the statement.
+         * @return The flat statement, with arrays trimmed to length.
+         */
+        private FlatStatement build(final byte type, final byte arrow) {
+
+            byte[] k = Arrays.copyOf(kinds, nodeCount);
+            byte[] e = Arrays.copyOf(elements, nodeCount);
+            int[] n = Arrays.copyOf(counts, nodeCount);
+            int[] c = Arrays.copyOf(charges, nodeCount);
+            int[] z = Arrays.copyOf(sizes, nodeCount);
+
+            // The formulas of a statement share its node arrays, each as its own slice of them.
+            FormulaKey[] f = new FormulaKey[termCount];
+
+            for (int t = 0; t < termCount; t++) {
+                if (formulas[t] >= 0) {
+                    f[t] = new FormulaKey(k, e, n, c, z, formulas[t]);
+                }
+            }
+
+            return new FlatStatement(type, arrow, Arrays.copyOf(sides, sideCount + 1), f,
+                    Arrays.copyOf(numerators, termCount), Arrays.copyOf(denominators, termCount),
+                    Arrays.copyOf(states, termCount), Arrays.copyOf(positions, termCount));
+        }
+    }
+
+    /**
+     * The nodes of one formula: a slice of node arrays, starting at its root. Used to compare formulas, and as the key
+     * of the pool of formulas shared by interned statements.
+     * <p>
+     *     A formula built with a statement shares that statement's node arrays. The one held in the pool has arrays of
+     *     its own, trimmed to the formula, so that it keeps no other formula's nodes alive.
+     */
+    static final class FormulaKey implements Comparable<FormulaKey> {
+
+        /**
+         * Kind of each node.
+         */
+        private final byte[] kinds;
+
+        /**
+         * Atomic number of each element node, or 0.
+         */
+        private final byte[] elements;
+
+        /**
+         * Count of each node, as described by its kind.
+         */
+        private final int[] counts;
+
+        /**
+         * Charge of each node, as described by its kind.
+         */
+        private final int[] charges;
+
+        /**
+         * Number of nodes in the subtree of each node, itself included.
+         */
+        private final int[] sizes;
+
+        /**
+         * Index of the root node of the formula in the arrays.
+         */
+        private final int root;
+
+        /**
+         * Hash of every node in the formula, computed once as formulas never change.
+         */
+        private final int hash;
+
+        /**
+         * Constructor method of FormulaKey. The arrays are shared, and must not be changed afterwards.
+         *
+         * @param kinds Kind of each node.
+         * @param elements Atomic number of each element node, or 0.
+         * @param counts Count of each node.
+         * @param charges Charge of each node.
+         * @param sizes Number of nodes in the subtree of each node.
+         * @param root Index of the root node of the formula.
+         */
+        private FormulaKey(final byte[] kinds, final byte[] elements, final int[] counts, final int[] charges,
+                           final int[] sizes, final int root) {
+
+            this.kinds = kinds;
+            this.elements = elements;
+            this.counts = counts;
+            this.charges = charges;
+            this.sizes = sizes;
+            this.root = root;
+
+            int h = 0;
+
+            for (int k = root; k < root + sizes[root]; k++) {
+                h = 31 * h + kinds[k];
+                h = 31 * h + elements[k];
+                h = 31 * h + counts[k];
+                h = 31 * h + charges[k];
+                h = 31 * h + sizes[k];
+            }
+
+            this.hash = h;
+        }
+
+        /**
+         * @return Number of nodes in the formula.
+         */
+        int size() {
+            return sizes[root];
+        }
+
+        /**
+         * Gives a copy of this formula with arrays of its own, trimmed to its nodes.
+         *
+         * @return The copy, or this formula if its arrays already hold nothing else.
+         */
+        private FormulaKey compact() {
+
+            int size = size();
+
+            if (root == 0 && kinds.length == size) {
+                return this;
+            }
+
+            return new FormulaKey(Arrays.copyOfRange(kinds, root, root + size),
+                    Arrays.copyOfRange(elements, root, root + size), Arrays.copyOfRange(counts, root, root + size),
+                    Arrays.copyOfRange(charges, root, root + size), Arrays.copyOfRange(sizes, root, root + size), 0);
+        }
+
+        /**
+         * Compares two formulas, first by identity, then by hash and then node by node.
+         *
+         * @param other The formula to compare with.
+         * @return Zero if the formulas are equal, otherwise a negative or positive number consistent with a total
+         *         order.
+         */
+        @Override
+        public int compareTo(final FormulaKey other) {
+
+            if (this == other) {
+                return 0;
+            }
+
+            int c = Integer.compare(hash, other.hash);
+
+            if (c != 0) {
+                return c;
+            }
+
+            int x = root;
+            int y = other.root;
+
+            c = Integer.compare(sizes[x], other.sizes[y]);
+
+            for (int k = 0; c == 0 && k < sizes[x]; k++) {
+                c = Integer.compare(kinds[x + k], other.kinds[y + k]);
+                c = c != 0 ? c : Integer.compare(elements[x + k], other.elements[y + k]);
+                c = c != 0 ? c : Integer.compare(counts[x + k], other.counts[y + k]);
+                c = c != 0 ? c : Integer.compare(charges[x + k], other.charges[y + k]);
+                c = c != 0 ? c : Integer.compare(sizes[x + k], other.sizes[y + k]);
+            }
+
+            return c;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return o instanceof FormulaKey && compareTo((FormulaKey) o) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
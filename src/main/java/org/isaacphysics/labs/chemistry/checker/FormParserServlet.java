@@ -33,31 +33,41 @@ public class FormParserServlet extends HttpServlet {
     @Override
     protected void doPost(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
 
-        System.out.println("==================================================");
-        @SuppressWarnings("unchecked")
-        Map<String, String[]> input = request.getParameterMap();
-        if (input.containsKey("description")) {
-            System.out.println(input.get("description")[0]);
-            System.out.println("==================================================");
-        }
-        if (input.containsKey("test")) {
-            System.out.println("Parsing: " + input.get("test")[0]);
-            String result = RunParser.parseFromString(input.get("test")[0]);
-            response.getWriter().println(result);
-            if (result.contains("ERROR")) {
-                System.out.println("Parse success, but input contained errors.");
-            } else {
-                System.out.println("Parse success!");
+        long start = Metrics.Endpoint.PARSE_FORM.start();
+        boolean answered = false;
+
+        try {
+            boolean trace = RequestLog.sampled();
+
+            if (request.getContentLength() > RequestBody.MAX_BYTES) {
+                response.setStatus(413);
+                JsonOutput.write(request, response, JsonResult.error("Request too large!"));
+                if (trace) {
+                    RequestLog.TRACE.info("parse_form error=\"Request too large!\" length={}",
+                            request.getContentLength());
+                }
+                return;
             }
-            if (input.get("test").length != 1) {
-                System.out.println("WARN: Ignoring additional inputs!");
+
+            @SuppressWarnings("unchecked")
+            Map<String, String[]> input = request.getParameterMap();
+            Metrics.Phase.BODY_READ.recordSince(start);
+            if (input.containsKey("test")) {
+                StatementReport result = StatementReport.of(input.get("test")[0]);
+                JsonOutput.write(request, response, result);
+                answered = true;
+                if (trace) {
+                    RequestLog.TRACE.info("parse_form {} ignoredInputs={}", result, input.get("test").length - 1);
+                }
+            } else {
+                JsonOutput.write(request, response, JsonResult.error("No input!"));
+                if (trace) {
+                    RequestLog.TRACE.info("parse_form error=\"No input!\"");
+                }
             }
-        } else {
-            response.getWriter().println("{\"error\" : \"No input!\"}");
-            System.out.println("ERROR: No input!");
+        } finally {
+            Metrics.Endpoint.PARSE_FORM.finish(start, !answered);
         }
-        response.setContentType("application/json");
-        System.out.println("==================================================\n");
     }
 
 }
@@ -22,34 +22,6 @@ package org.isaacphysics.labs.chemistry.checker;
  */
 public abstract class Formula implements Countable {
 
-    /**
-     * Helper static variable for issuing unique IDs.
-     */
-    private static int dotIdTracker = 0;
-
-    /**
-     * Stores unique ID for every Formula.
-     */
-    private int dotId;
-
-    /**
-     * Constructor function.
-     * Initializes dotId, so that every formula has an unique ID number.
-     */
-    public Formula() {
-        dotId = dotIdTracker;
-        dotIdTracker++;
-    }
-
-    /**
-     * Getter method. Provides the unique ID for subclasses.
-     *
-     * @return Unique ID.
-     */
-    int getdotId() {
-        return dotId;
-    }
-
     /*@Override
     public abstract Integer getCharge();
 
@@ -95,8 +67,24 @@ public abstract class Formula implements Countable {
         return false;
     }
 
-    @Override
-    public int hashCode() {
-        return toString().hashCode();
+    /**
+     * Adds the node of this formula to a flat statement being built, handing over any children to be added after it.
+     *
+     * @param builder Builder of the flat statement.
+     */
+    abstract void flatten(FlatStatement.Builder builder);
+
+    /**
+     * Accepts a visitor. Formulas are visited as a whole, whatever their kind.
+     *
+     * @param visitor The visitor.
+     * @param <R> Type of result given by the visitor.
+     * @return Result given by the visitor.
+     */
+    <R> R accept(final AstVisitor<R> visitor) {
+        return visitor.visitFormula(this);
     }
+
+    @Override
+    public abstract int hashCode();
 }
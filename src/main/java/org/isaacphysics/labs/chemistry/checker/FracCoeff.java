@@ -23,9 +23,9 @@ package org.isaacphysics.labs.chemistry.checker;
  */
 class FracCoeff extends Coefficient {
 
-    private Integer num;
-    private Integer denom;
-    private Fraction fractionForm;
+    private final Integer num;
+    private final Integer denom;
+    private final Fraction fractionForm;
 
     /**
      * Constructor method of FracCoeff.
@@ -37,7 +37,7 @@ class FracCoeff extends Coefficient {
 
         this.num = num;
         this.denom = denom;
-        this.fractionForm = new Fraction(num, denom);
+        this.fractionForm = Fraction.valueOf(num, denom);
 
     }
 
@@ -55,7 +55,7 @@ class FracCoeff extends Coefficient {
 
     @Override
     public int hashCode() {
-        return toString().hashCode();
+        return 31 * num.hashCode() + denom.hashCode();
     }
 
     @Override
@@ -68,6 +68,20 @@ class FracCoeff extends Coefficient {
         return fractionForm;
     }
 
+    /**
+     * @return Numerator of the fraction, as written.
+     */
+    Integer getNumerator() {
+        return num;
+    }
+
+    /**
+     * @return Denominator of the fraction, as written.
+     */
+    Integer getDenominator() {
+        return denom;
+    }
+
     @Override
     public String getDotString() {
         return num + "/" + denom;
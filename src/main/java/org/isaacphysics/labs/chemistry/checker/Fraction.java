@@ -16,84 +16,344 @@
 
 package org.isaacphysics.labs.chemistry.checker;
 
+import java.math.BigInteger;
+
 /**
  * Class to do fraction operations.
+ * <p>
+ *     Fractions are immutable and always kept in lowest terms with a positive denominator. Values are held in
+ *     primitive longs, and only switch to BigInteger in the rare case that a result does not fit. The smallest long
+ *     counts as not fitting, since it cannot be negated, so a fraction held in longs can always be negated safely.
+ *     Small whole numbers, such as the usual charges and coefficients, are shared rather than allocated afresh.
  *
  * Created by hhrl2 on 26/07/2016.
  */
-class Fraction {
+final class Fraction {
 
-    private Integer num;
-    private Integer denom;
+    /**
+     * Smallest whole number that is shared.
+     */
+    private static final int CACHE_LOW = -128;
+
+    /**
+     * Largest whole number that is shared.
+     */
+    private static final int CACHE_HIGH = 127;
 
     /**
-     * Constructor method of Fraction.
+     * Shared fractions for the whole numbers CACHE_LOW to CACHE_HIGH.
+     */
+    private static final Fraction[] CACHE = new Fraction[CACHE_HIGH - CACHE_LOW + 1];
+
+    static {
+        for (int i = 0; i < CACHE.length; i++) {
+            CACHE[i] = new Fraction(i + CACHE_LOW, 1, null, null);
+        }
+    }
+
+    /**
+     * The fraction 0.
+     */
+    static final Fraction ZERO = valueOf(0);
+
+    /**
+     * The fraction 1.
+     */
+    static final Fraction ONE = valueOf(1);
+
+    /**
+     * Numerator of fraction, unless it is too large for a long.
+     */
+    private final long num;
+
+    /**
+     * Denominator of fraction, unless it is too large for a long.
+     */
+    private final long denom;
+
+    /**
+     * Numerator of fraction if it is too large for a long, otherwise null.
+     */
+    private final BigInteger bigNum;
+
+    /**
+     * Denominator of fraction if it is too large for a long, otherwise null.
+     */
+    private final BigInteger bigDenom;
+
+    /**
+     * Constructor method of Fraction, kept for existing callers. New code should use {@link #valueOf(long, long)},
+     * which does not allocate for small values.
      *
      * @param num Numerator of fraction.
      * @param denom Denominator of fraction.
+     * @deprecated Use {@link #valueOf(long, long)} instead.
      */
+    @Deprecated
     Fraction(final Integer num, final Integer denom) {
+        this(valueOf(num, denom));
+    }
+
+    /**
+     * Copy constructor of Fraction.
+     *
+     * @param f Fraction to be copied.
+     */
+    private Fraction(final Fraction f) {
+        this(f.num, f.denom, f.bigNum, f.bigDenom);
+    }
+
+    /**
+     * Constructor method of Fraction. The arguments must already be in lowest terms.
+     *
+     * @param num Numerator of fraction, if small.
+     * @param denom Positive denominator of fraction, if small.
+     * @param bigNum Numerator of fraction if it is too large for a long, otherwise null.
+     * @param bigDenom Denominator of fraction if it is too large for a long, otherwise null.
+     */
+    private Fraction(final long num, final long denom, final BigInteger bigNum, final BigInteger bigDenom) {
         this.num = num;
         this.denom = denom;
+        this.bigNum = bigNum;
+        this.bigDenom = bigDenom;
+    }
+
+    /**
+     * Gives the fraction for a whole number.
+     *
+     * @param n The whole number.
+     * @return The fraction n/1.
+     */
+    static Fraction valueOf(final long n) {
+
+        if (n >= CACHE_LOW && n <= CACHE_HIGH) {
+            return CACHE[(int) n - CACHE_LOW];
+        } else if (n == Long.MIN_VALUE) {
+            return new Fraction(0, 0, BigInteger.valueOf(n), BigInteger.ONE);
+        }
+
+        return new Fraction(n, 1, null, null);
+    }
+
+    /**
+     * Gives the fraction num/denom, simplified.
+     *
+     * @param num Numerator of fraction.
+     * @param denom Denominator of fraction.
+     * @return The fraction in lowest terms.
+     */
+    static Fraction valueOf(final long num, final long denom) {
+
+        if (denom == 0) {
+            throw new ArithmeticException("Denominator of fraction is zero.");
+        }
+
+        // Negating the smallest long overflows, so leave that case to BigInteger.
+        if (num == Long.MIN_VALUE || denom == Long.MIN_VALUE) {
+            return valueOf(BigInteger.valueOf(num), BigInteger.valueOf(denom));
+        }
+
+        long n = denom < 0 ? -num : num;
+        long d = Math.abs(denom);
+        long g = gcd(Math.abs(n), d);
+
+        n /= g;
+        d /= g;
+
+        if (d == 1) {
+            return valueOf(n);
+        }
+
+        return new Fraction(n, d, null, null);
+    }
+
+    /**
+     * Gives the fraction num/denom, simplified, going back to longs if it fits in them.
+     *
+     * @param num Numerator of fraction.
+     * @param denom Denominator of fraction.
+     * @return The fraction in lowest terms.
+     */
+    private static Fraction valueOf(final BigInteger num, final BigInteger denom) {
+
+        if (denom.signum() == 0) {
+            throw new ArithmeticException("Denominator of fraction is zero.");
+        }
 
-        simplify();
+        BigInteger n = denom.signum() < 0 ? num.negate() : num;
+        BigInteger d = denom.abs();
+        BigInteger g = n.gcd(d);
+
+        n = n.divide(g);
+        d = d.divide(g);
+
+        // The smallest long has the same bit length as the largest, but is left in BigIntegers.
+        if (fitsInLong(n) && fitsInLong(d)) {
+            return valueOf(n.longValue(), d.longValue());
+        }
+
+        return new Fraction(0, 0, n, d);
+    }
+
+    /**
+     * Checks if a number can be held in a long other than the smallest one.
+     *
+     * @param n The number.
+     * @return True if n lies strictly between Long.MIN_VALUE and Long.MAX_VALUE, or equals the latter.
+     */
+    private static boolean fitsInLong(final BigInteger n) {
+        return n.bitLength() < Long.SIZE && n.longValue() != Long.MIN_VALUE;
     }
 
     /**
-     * Finds the gcd of two arguments.
+     * Finds the gcd of two non-negative arguments, using the binary GCD algorithm.
      *
      * @param x First argument.
      * @param y Second argument.
-     * @return GCD of two arguments.
+     * @return GCD of two arguments, or the other argument if one is zero.
      */
-    private Integer gcd(final Integer x, final Integer y) {
-        if (!y.equals(0)) {
-            return gcd(y, x % y);
-        } else {
+    private static long gcd(final long x, final long y) {
+
+        if (x == 0) {
+            return y;
+        } else if (y == 0) {
             return x;
         }
+
+        int shift = Long.numberOfTrailingZeros(x | y);
+        long a = x >> Long.numberOfTrailingZeros(x);
+        long b = y;
+
+        do {
+            b >>= Long.numberOfTrailingZeros(b);
+
+            if (a > b) {
+                long t = b;
+                b = a;
+                a = t;
+            }
+
+            b -= a;
+        } while (b != 0);
+
+        return a << shift;
     }
 
     /**
-     * Simplifies the fraction.
+     * Checks if the product of two longs would overflow.
+     *
+     * @param x First factor.
+     * @param y Second factor.
+     * @return True if x * y does not fit in a long.
      */
-    private void simplify() {
+    private static boolean multiplyOverflows(final long x, final long y) {
 
-        if (num > 0) {
-            Integer gcd = gcd(num, denom);
-            num /= gcd;
-            denom /= gcd;
-        } else if (num < 0) {
-            Integer gcd = gcd(Math.multiplyExact(-1, num), denom);
-            num /= gcd;
-            denom /= gcd;
-        } else {
-            denom = 1;
+        if (((Math.abs(x) | Math.abs(y)) >>> 31) == 0) {
+            return false;
         }
+
+        long r = x * y;
+
+        return (y != 0 && r / y != x) || (x == Long.MIN_VALUE && y == -1);
+    }
+
+    /**
+     * Checks if the sum of two longs would overflow.
+     *
+     * @param x First term.
+     * @param y Second term.
+     * @return True if x + y does not fit in a long.
+     */
+    private static boolean addOverflows(final long x, final long y) {
+        long r = x + y;
+        return ((x ^ r) & (y ^ r)) < 0;
+    }
+
+    /**
+     * @return True if this fraction is held in BigIntegers, so its numerator or denominator does not fit in a long.
+     */
+    boolean isBig() {
+        return bigNum != null;
+    }
+
+    /**
+     * @return Numerator of this fraction as a BigInteger.
+     */
+    private BigInteger bigNumerator() {
+        return isBig() ? bigNum : BigInteger.valueOf(num);
+    }
+
+    /**
+     * @return Denominator of this fraction as a BigInteger.
+     */
+    private BigInteger bigDenominator() {
+        return isBig() ? bigDenom : BigInteger.valueOf(denom);
+    }
+
+    /**
+     * @return Numerator of the fraction in lowest terms.
+     * @throws ArithmeticException The numerator does not fit in a long.
+     */
+    long getNumerator() {
+
+        if (isBig()) {
+            throw new ArithmeticException("Fraction " + this + " does not fit in a long.");
+        }
+
+        return num;
+    }
+
+    /**
+     * @return Denominator of the fraction in lowest terms, always positive.
+     * @throws ArithmeticException The denominator does not fit in a long.
+     */
+    long getDenominator() {
+
+        if (isBig()) {
+            throw new ArithmeticException("Fraction " + this + " does not fit in a long.");
+        }
+
+        return denom;
     }
 
     @Override
     public boolean equals(final Object obj) {
 
+        if (this == obj) {
+            return true;
+        }
+
         if (!(obj instanceof Fraction)) {
             return false;
         }
 
         Fraction other = (Fraction) obj;
 
-        return other.num.equals(this.num) && other.denom.equals(this.denom);
+        // Fractions are always in lowest terms, and only held in BigIntegers when they do not fit in longs.
+        if (isBig() || other.isBig()) {
+            return isBig() && other.isBig() && bigNum.equals(other.bigNum) && bigDenom.equals(other.bigDenom);
+        }
+
+        return other.num == this.num && other.denom == this.denom;
     }
 
     @Override
     public int hashCode() {
-        return toString().hashCode();
+
+        if (isBig()) {
+            return 31 * bigNum.hashCode() + bigDenom.hashCode();
+        }
+
+        return 31 * Long.hashCode(num) + Long.hashCode(denom);
     }
 
     @Override
     public String toString() {
 
-        if (denom.equals(1)) {
-            return num.toString();
+        if (isBig()) {
+            return bigDenom.equals(BigInteger.ONE) ? bigNum.toString() : bigNum + "/" + bigDenom;
+        } else if (denom == 1) {
+            return Long.toString(num);
         } else {
             return num + "/" + denom;
         }
@@ -106,7 +366,29 @@ class Fraction {
      * @return The product of two fractions, simplified.
      */
     Fraction times(final Fraction f) {
-        return new Fraction(Math.multiplyExact(this.num, f.num), Math.multiplyExact(this.denom, f.denom));
+
+        if (f == ONE) {
+            return this;
+        } else if (this == ONE) {
+            return f;
+        }
+
+        if (!isBig() && !f.isBig()) {
+
+            // Cancel common factors first, so that the product is already in lowest terms.
+            long g1 = gcd(Math.abs(this.num), f.denom);
+            long g2 = gcd(Math.abs(f.num), this.denom);
+            long n1 = this.num / g1;
+            long n2 = f.num / g2;
+            long d1 = this.denom / g2;
+            long d2 = f.denom / g1;
+
+            if (!multiplyOverflows(n1, n2) && !multiplyOverflows(d1, d2)) {
+                return valueOf(n1 * n2, d1 * d2);
+            }
+        }
+
+        return valueOf(bigNumerator().multiply(f.bigNumerator()), bigDenominator().multiply(f.bigDenominator()));
     }
 
     /**
@@ -115,8 +397,8 @@ class Fraction {
      * @param n Argument to be multiplied with.
      * @return The product of the fraction and integer, simplified.
      */
-    Fraction times(final Integer n) {
-        return new Fraction(Math.multiplyExact(n, this.num), this.denom);
+    Fraction times(final long n) {
+        return times(valueOf(n));
     }
 
     /**
@@ -126,8 +408,33 @@ class Fraction {
      * @return The sum of two fractions, simplified.
      */
     Fraction plus(final Fraction f) {
-        return new Fraction(Math.addExact(Math.multiplyExact(this.num, f.denom), Math.multiplyExact(this.denom, f.num)),
-                Math.multiplyExact(this.denom, f.denom));
+
+        if (f == ZERO) {
+            return this;
+        } else if (this == ZERO) {
+            return f;
+        }
+
+        if (!isBig() && !f.isBig()) {
+
+            if (this.denom == f.denom) {
+                if (!addOverflows(this.num, f.num)) {
+                    return valueOf(this.num + f.num, this.denom);
+                }
+            } else {
+                long g = gcd(this.denom, f.denom);
+                long d1 = this.denom / g;
+                long d2 = f.denom / g;
+
+                if (!multiplyOverflows(this.num, d2) && !multiplyOverflows(f.num, d1)
+                        && !addOverflows(this.num * d2, f.num * d1) && !multiplyOverflows(d1, f.denom)) {
+                    return valueOf(this.num * d2 + f.num * d1, d1 * f.denom);
+                }
+            }
+        }
+
+        return valueOf(bigNumerator().multiply(f.bigDenominator()).add(f.bigNumerator().multiply(bigDenominator())),
+                bigDenominator().multiply(f.bigDenominator()));
     }
 
     /**
@@ -136,7 +443,7 @@ class Fraction {
      * @param n Argument to be added with.
      * @return The sum of the fraction and integer, simplified.
      */
-    Fraction plus(final Integer n) {
-        return new Fraction(Math.addExact(this.num, Math.multiplyExact(this.denom, n)), this.denom);
+    Fraction plus(final long n) {
+        return plus(valueOf(n));
     }
 }
@@ -44,9 +44,4 @@ public final class GammaRay extends SpecialNuclear {
         GammaRay p = (GammaRay) o;
         return p.getAtomicNumber().equals(getAtomicNumber()) && p.getMassNumber().equals(getMassNumber());
     }
-
-    @Override
-    public int hashCode() {
-        return toString().hashCode();
-    }
 }
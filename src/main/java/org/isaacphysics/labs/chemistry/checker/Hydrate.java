@@ -16,7 +16,7 @@
 
 package org.isaacphysics.labs.chemistry.checker;
 
-import java.util.HashMap;
+import java.util.Objects;
 
 /**
  * Class for storing water of crystallization.
@@ -27,17 +27,23 @@ public final class Hydrate extends Formula {
     /**
      * Formula of the dehydrated salt.
      */
-    private Compound compound;
+    private final Compound compound;
 
     /**
      * Number of water molecules per formula.
      */
-    private Integer waterCount;
+    private final Integer waterCount;
 
     /**
-     * Saved atom count.
+     * Saved atom count, or null if not yet worked out. Atom counts never change, so threads racing to fill this in
+     * just save equal values, and the field is read once per call so a value seen is never lost.
      */
-    private HashMap<String, Fraction> savedAtomCount = null;
+    private AtomVector savedAtomVector = null;
+
+    /**
+     * Hash code, computed once the compound has been fully parsed.
+     */
+    private final int hash;
 
     /**
      * Constructor function for hydrate.
@@ -47,34 +53,29 @@ public final class Hydrate extends Formula {
     public Hydrate(final Compound compound, final Integer count) {
         this.compound = compound;
         this.waterCount = count;
+        this.hash = 31 * compound.hashCode() + Objects.hashCode(count);
     }
 
     @Override
     public Fraction getCharge() {
-        return new Fraction(0, 1);
+        return Fraction.ZERO;
     }
 
     @Override
-    public HashMap<String, Fraction> getAtomCount() {
+    public AtomVector getAtomVector() {
+
+        AtomVector atoms = savedAtomVector;
 
-        if (savedAtomCount == null) {
-            savedAtomCount = compound.getAtomCount();
+        if (atoms == null) {
 
             // Put water atoms...
-            if (savedAtomCount.containsKey("H")) {
-                savedAtomCount.put("H", savedAtomCount.get("H").plus(2 * waterCount));
-            } else {
-                savedAtomCount.put("H", new Fraction(2 * waterCount, 1));
-            }
-
-            if (savedAtomCount.containsKey("O")) {
-                savedAtomCount.put("O", savedAtomCount.get("O").plus(waterCount));
-            } else {
-                savedAtomCount.put("O", new Fraction(waterCount, 1));
-            }
+            atoms = compound.getAtomVector()
+                    .plus(AtomVector.of("H", 2L * waterCount))
+                    .plus(AtomVector.of("O", waterCount));
+            savedAtomVector = atoms;
         }
 
-        return savedAtomCount;
+        return atoms;
     }
 
     @Override
@@ -86,7 +87,7 @@ public final class Hydrate extends Formula {
 
         Hydrate other = (Hydrate) o;
 
-        return compound.equals(other.compound) && waterCount.equals(other.waterCount);
+        return hash == other.hash && compound.equals(other.compound) && waterCount.equals(other.waterCount);
     }
 
     @Override
@@ -101,23 +102,23 @@ public final class Hydrate extends Formula {
     }
 
     @Override
-    public String getDotId() {
-        return "hydrate_" + getdotId();
+    public String getDotId(final DotIds ids) {
+        return "hydrate_" + ids.of(this);
     }
 
     @Override
-    public String getDotCode() {
+    public String getDotCode(final DotIds ids) {
 
-        return "\t" + getDotId()
+        return "\t" + getDotId(ids)
 
                 + " [label=\"{&zwj;&zwj;&zwj;&zwj;Hydrate&zwnj;|\\n"
 
                 + getDotString()
                 + "\\n\\n|&zwj;&zwj;&zwj;water per formula&zwnj;: " + waterCount + "}\",color=\"#614126\"];\n"
 
-                + "\t" + getDotId() + ":s -> " + compound.getDotId() + ":n;\n"
+                + "\t" + getDotId(ids) + ":s -> " + compound.getDotId(ids) + ":n;\n"
 
-                + compound.getDotCode();
+                + compound.getDotCode(ids);
 
     }
 
@@ -132,8 +133,13 @@ public final class Hydrate extends Formula {
 
     }
 
+    @Override
+    void flatten(final FlatStatement.Builder builder) {
+        builder.node(FlatStatement.HYDRATE, waterCount, 0, compound);
+    }
+
     @Override
     public int hashCode() {
-        return toString().hashCode();
+        return hash;
     }
 }
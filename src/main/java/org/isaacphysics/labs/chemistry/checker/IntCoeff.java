@@ -23,8 +23,8 @@ package org.isaacphysics.labs.chemistry.checker;
  */
 class IntCoeff extends Coefficient {
 
-    private Integer coefficient;
-    private Fraction fractionForm;
+    private final Integer coefficient;
+    private final Fraction fractionForm;
 
     /**
      * Constructor method of IntCoeff.
@@ -33,7 +33,7 @@ class IntCoeff extends Coefficient {
      */
     IntCoeff(final Integer n) {
         coefficient = n;
-        fractionForm = new Fraction(n, 1);
+        fractionForm = Fraction.valueOf(n);
     }
 
     @Override
@@ -51,7 +51,7 @@ class IntCoeff extends Coefficient {
 
     @Override
     public int hashCode() {
-        return toString().hashCode();
+        return coefficient.hashCode();
     }
 
     @Override
@@ -16,7 +16,7 @@
 
 package org.isaacphysics.labs.chemistry.checker;
 
-import java.util.HashMap;
+import java.util.Objects;
 
 /**
  * Created by Ryan on 15/06/2016.
@@ -28,17 +28,17 @@ public final class Ion extends Formula {
     /**
      * Molecule involved for this particular ion.
      */
-    private Molecule molecule;
+    private final Molecule molecule;
 
     /**
      * Charge of the ion.
      */
-    private Integer charge;
+    private final Integer charge;
 
     /**
-     * Saved atom count.
+     * Hash code, computed once the molecule has been fully parsed.
      */
-    private HashMap<String, Fraction> savedAtomicCount = null;
+    private final int hash;
 
     /**
      * Constructor function of Ion.
@@ -51,25 +51,23 @@ public final class Ion extends Formula {
 
         molecule = m;
         charge = c;
+        hash = 31 * molecule.hashCode() + Objects.hashCode(charge);
     }
 
     @Override
     public Fraction getCharge() {
-        return new Fraction(charge, 1);
+        return Fraction.valueOf(charge);
     }
 
     @Override
-    public HashMap<String, Fraction> getAtomCount() {
-        if (savedAtomicCount == null) {
-            savedAtomicCount = molecule.getAtomCount();
-        }
-        return savedAtomicCount;
+    public AtomVector getAtomVector() {
+        return molecule.getAtomVector();
     }
 
     @Override
-    public String getDotCode() {
+    public String getDotCode(final DotIds ids) {
 
-        return "\t" + getDotId() + " [label=\"{&zwj;&zwj;&zwj;&zwj;Ion&zwnj;|\\n"
+        return "\t" + getDotId(ids) + " [label=\"{&zwj;&zwj;&zwj;&zwj;Ion&zwnj;|\\n"
 
                 + getDotString()
 
@@ -77,15 +75,15 @@ public final class Ion extends Formula {
 
                 + "}\",color=\"#614126\"];\n"
 
-                + "\t" + getDotId() + ":s -> " + molecule.getDotId() + ":n;\n"
+                + "\t" + getDotId(ids) + ":s -> " + molecule.getDotId(ids) + ":n;\n"
 
-                + molecule.getDotCode();
+                + molecule.getDotCode(ids);
 
     }
 
     @Override
-    public String getDotId() {
-        return "ion_" + getdotId();
+    public String getDotId(final DotIds ids) {
+        return "ion_" + ids.of(this);
     }
 
     @Override
@@ -115,7 +113,8 @@ public final class Ion extends Formula {
         if (o instanceof Ion) {
 
             Ion other = (Ion) o;
-            return this.charge.equals(other.charge) && this.molecule.equals(other.molecule);
+            return this.hash == other.hash
+                    && this.charge.equals(other.charge) && this.molecule.equals(other.molecule);
 
         }
 
@@ -159,8 +158,13 @@ public final class Ion extends Formula {
         return molecule;
     }
 
+    @Override
+    void flatten(final FlatStatement.Builder builder) {
+        builder.node(FlatStatement.ION, 0, charge, molecule);
+    }
+
     @Override
     public int hashCode() {
-        return toString().hashCode();
+        return hash;
     }
 }
@@ -15,12 +15,18 @@ public final class IonChain extends Formula {
     /**
      * The array of formulae stored in ion chain.
      */
-    private ArrayList<Formula> formulas;
+    private final ArrayList<Formula> formulas;
 
     /**
-     * Saved atom count.
+     * Saved atom count, or null if not yet worked out. Read once per call, as in {@link Hydrate}.
      */
-    private HashMap<String, Fraction> savedAtomCount = null;
+    private AtomVector savedAtomVector = null;
+
+    /**
+     * Saved hash code, or 0 if not yet computed.
+     * Ion chains are built up while parsing, so this is reset whenever the chain changes.
+     */
+    private int savedHash = 0;
 
     /**
      * Constructor function of IonChain.
@@ -40,6 +46,8 @@ public final class IonChain extends Formula {
      */
     void add(final Formula f) {
         formulas.add(f);
+        savedHash = 0;
+        savedAtomVector = null;
     }
 
     /**
@@ -47,12 +55,14 @@ public final class IonChain extends Formula {
      */
     void reverse() {
         Collections.reverse(formulas);
+        savedHash = 0;
+        savedAtomVector = null;
     }
 
     @Override
     public Fraction getCharge() {
 
-        Fraction totalCharge = new Fraction(0, 1);
+        Fraction totalCharge = Fraction.ZERO;
 
         for (Formula f: formulas) {
             totalCharge = totalCharge.plus(f.getCharge());
@@ -62,24 +72,22 @@ public final class IonChain extends Formula {
     }
 
     @Override
-    public HashMap<String, Fraction> getAtomCount() {
+    public AtomVector getAtomVector() {
+
+        AtomVector atoms = savedAtomVector;
 
-        if (savedAtomCount == null) {
-            savedAtomCount = new HashMap<>();
+        if (atoms == null) {
+
+            atoms = AtomVector.EMPTY;
 
             for (Formula f : formulas) {
-                for (String e : f.getAtomCount().keySet()) {
-
-                    if (!savedAtomCount.containsKey(e)) {
-                        savedAtomCount.put(e, f.getAtomCount().get(e));
-                    } else {
-                        savedAtomCount.put(e, savedAtomCount.get(e).plus(f.getAtomCount().get(e)));
-                    }
-                }
+                atoms = atoms.plus(f.getAtomVector());
             }
+
+            savedAtomVector = atoms;
         }
 
-        return savedAtomCount;
+        return atoms;
     }
 
     @Override
@@ -88,7 +96,7 @@ public final class IonChain extends Formula {
         if (o instanceof IonChain) {
             IonChain other = (IonChain) o;
 
-            return formulas.equals(other.formulas);
+            return this.hashCode() == other.hashCode() && formulas.equals(other.formulas);
         }
 
         return false;
@@ -108,27 +116,27 @@ public final class IonChain extends Formula {
     }
 
     @Override
-    public String getDotId() {
-        return "ion_chain_" + getdotId();
+    public String getDotId(final DotIds ids) {
+        return "ion_chain_" + ids.of(this);
     }
 
     @Override
-    public String getDotCode() {
+    public String getDotCode(final DotIds ids) {
 
         StringBuilder result = new StringBuilder();
         result.append("\t");
-        result.append(getDotId());
+        result.append(getDotId(ids));
         result.append(" [label=\"{&zwj;&zwj;&zwj;&zwj;IonChain&zwnj;|\\n");
         result.append(getDotString());
         result.append("\\n\\n|<terms>&zwj;&zwj;&zwj;formulas&zwnj;}\",color=\"#fea100\"];\n");
 
         for (Formula f : formulas) {
             result.append("\t");
-            result.append(getDotId());
+            result.append(getDotId(ids));
             result.append(":terms -> ");
-            result.append(f.getDotId());
+            result.append(f.getDotId(ids));
             result.append(":n;\n");
-            result.append(f.getDotCode());
+            result.append(f.getDotCode(ids));
         }
 
         return result.toString();
@@ -145,8 +153,21 @@ public final class IonChain extends Formula {
         return toReturn;
     }
 
+    @Override
+    void flatten(final FlatStatement.Builder builder) {
+        builder.node(FlatStatement.ION_CHAIN, 0, formulas);
+    }
+
     @Override
     public int hashCode() {
-        return toString().hashCode();
+
+        int h = savedHash;
+
+        if (h == 0) {
+            h = formulas.hashCode();
+            savedHash = h;
+        }
+
+        return h;
     }
 }
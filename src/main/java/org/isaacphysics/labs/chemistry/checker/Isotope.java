@@ -16,7 +16,7 @@
 
 package org.isaacphysics.labs.chemistry.checker;
 
-import java.util.HashMap;
+import java.util.Objects;
 
 /**
  * Class for regular isotopes, i.e. single atom with subscripted and superscripted numbers on the left.
@@ -24,39 +24,10 @@ import java.util.HashMap;
  */
 public final class Isotope extends Nuclear {
 
-    /**
-     * Maps elements to their corresponding atomic number.
-     */
-    private static HashMap<String, Integer> periodicTable;
-
-    /**
-     * Saved atom count.
-     */
-    private HashMap<String, Fraction> savedAtomCount;
-
-    static {
-
-        periodicTable = new HashMap<>();
-
-        String[] elemList =
-            {"H", "He", "Li", "Be", "B", "C", "N", "O", "F", "Ne", "Na", "Mg", "Al", "Si", "P", "S", "Cl",
-                "Ar", "K", "Ca", "Sc", "Ti", "V", "Cr", "Mn", "Fe", "Co", "Ni", "Cu", "Zn", "Ga", "Ge", "As",
-                "Se", "Br", "Kr", "Rb", "Sr", "Y", "Zr", "Nb", "Mo", "Tc", "Ru", "Rh", "Pd", "Ag", "Cd", "In",
-                "Sn", "Sb", "Te", "I", "Xe", "Cs", "Ba", "La", "Ce", "Pr", "Nd", "Pm", "Sm", "Eu", "Gd", "Tb",
-                "Dy", "Ho", "Er", "Tm", "Yb", "Lu", "Hf", "Ta", "W", "Re", "Os", "Ir", "Pt", "Au", "Hg", "Tl",
-                "Pb", "Bi", "Po", "At", "Rn", "Fr", "Ra", "Ac", "Th", "Pa", "U", "Np", "Pu", "Am", "Cm", "Bk",
-                "Cf", "Es", "Fm", "Md", "No", "Lr", "Rf", "Db", "Sg", "Bh", "Hs", "Mt", "Ds", "Rg", "Cn", "Uut",
-                "Fl", "Uup", "Lv", "Uus", "Uuo"};
-
-        for (int i = 0; i < elemList.length; i++) {
-            periodicTable.put(elemList[i], i + 1);
-        }
-    }
-
     /**
      * Mass number of isotope.
      */
-    private Integer mass,
+    private final Integer mass,
 
     /**
      * Atomic number of isotope.
@@ -66,7 +37,12 @@ public final class Isotope extends Nuclear {
     /**
      * Atom/charged atom associated with isotope.
      */
-    private Formula formula;
+    private final Formula formula;
+
+    /**
+     * Hash code, computed once the formula has been fully parsed.
+     */
+    private final int hash;
 
     /**
      * Constructor method of Isotope.
@@ -80,6 +56,10 @@ public final class Isotope extends Nuclear {
         this.mass = mass;
         this.atom = atom;
         this.formula = f;
+
+        int h = Objects.hashCode(mass);
+        h = 31 * h + Objects.hashCode(atom);
+        this.hash = 31 * h + f.hashCode();
     }
 
     @Override
@@ -98,11 +78,8 @@ public final class Isotope extends Nuclear {
     }
 
     @Override
-    public HashMap<String, Fraction> getAtomCount() {
-        if (savedAtomCount == null) {
-            savedAtomCount = formula.getAtomCount();
-        }
-        return savedAtomCount;
+    public AtomVector getAtomVector() {
+        return formula.getAtomVector();
     }
 
     @Override
@@ -111,7 +88,8 @@ public final class Isotope extends Nuclear {
         if (o instanceof Isotope) {
             Isotope i = (Isotope) o;
 
-            return (this.mass.equals(i.mass))
+            return (this.hash == i.hash)
+                    && (this.mass.equals(i.mass))
                     && (this.atom.equals(i.atom))
                     && (this.formula.equals(i.formula));
         }
@@ -125,14 +103,14 @@ public final class Isotope extends Nuclear {
     }
 
     @Override
-    public String getDotId() {
-        return "isotope_" + getdotId();
+    public String getDotId(final DotIds ids) {
+        return "isotope_" + ids.of(this);
     }
 
     @Override
-    public String getDotCode() {
+    public String getDotCode(final DotIds ids) {
 
-        return "\t" + getDotId() + " [label=\"{&zwj;&zwj;&zwj;&zwj;Isotope&zwnj;|\\n"
+        return "\t" + getDotId(ids) + " [label=\"{&zwj;&zwj;&zwj;&zwj;Isotope&zwnj;|\\n"
 
                 + getDotString()
 
@@ -142,9 +120,9 @@ public final class Isotope extends Nuclear {
 
                 + "\\n|&zwj;&zwj;&zwj;related atom&zwnj;}\",color=\"#944cbe\"];\n"
 
-                + "\t" + getDotId() + ":s -> " + formula.getDotId() + ":n;\n"
+                + "\t" + getDotId(ids) + ":s -> " + formula.getDotId(ids) + ":n;\n"
 
-                + formula.getDotCode();
+                + formula.getDotCode(ids);
 
     }
 
@@ -157,9 +135,14 @@ public final class Isotope extends Nuclear {
 
     }
 
+    @Override
+    void flatten(final FlatStatement.Builder builder) {
+        builder.node(FlatStatement.ISOTOPE, mass, atom, formula);
+    }
+
     @Override
     public int hashCode() {
-        return toString().hashCode();
+        return hash;
     }
 
     @Override
@@ -173,7 +156,8 @@ public final class Isotope extends Nuclear {
             at = (Element) formula;
         }
 
-        return periodicTable.containsKey(at.toString())
-                && periodicTable.get(at.toString()).equals(atom) && (mass >= atom);
+        int z = PeriodicTable.atomicNumber(at.toString());
+
+        return z != 0 && atom.equals(z) && (mass >= atom);
     }
 }
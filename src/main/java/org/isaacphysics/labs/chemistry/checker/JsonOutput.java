@@ -0,0 +1,156 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SegmentedStringWriter;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Writes JSON results, either to a servlet response or to a string.
+ * <p>
+ *     All output goes through one shared, pre-configured factory. Factories are thread-safe and recycle their
+ *     buffers per thread, so opening a generator for each response is cheap. Output is compact unless pretty printing
+ *     is asked for, e.g. with a <code>pretty</code> request parameter.
+ */
+final class JsonOutput {
+
+    /**
+     * Shared factory for every generator. Generators leave the stream they write to open, as it belongs to the caller.
+     */
+    private static final JsonFactory FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    /**
+     * Constructor method of JsonOutput.
+     * Set to private, because we don't want people to instantiate an utility class.
+     */
+    private JsonOutput() {
+        // Nothing here.
+    }
+
+    /**
+     * Opens a generator writing straight to a servlet response, and sets the response's content type.
+     * The response is pretty printed if the request has a <code>pretty</code> parameter.
+     *
+     * @param request The request being answered.
+     * @param response The response to be written to.
+     * @return Generator writing UTF-8 to the response body. Must be closed once done.
+     * @throws IOException Response body cannot be opened.
+     */
+    static JsonGenerator open(final HttpServletRequest request, final HttpServletResponse response)
+            throws IOException {
+
+        setContentType(response);
+
+        return configure(FACTORY.createGenerator(response.getOutputStream(), JsonEncoding.UTF8),
+                request.getParameter("pretty") != null);
+    }
+
+    /**
+     * Sets the content type of a response to UTF-8 JSON.
+     *
+     * @param response The response.
+     */
+    static void setContentType(final HttpServletResponse response) {
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+    }
+
+    /**
+     * Writes a single result as the whole body of a servlet response.
+     *
+     * @param request The request being answered.
+     * @param response The response to be written to.
+     * @param result Result to be written.
+     * @throws IOException Response cannot be written.
+     */
+    static void write(final HttpServletRequest request, final HttpServletResponse response, final JsonResult result)
+            throws IOException {
+        long start = System.nanoTime();
+
+        try (JsonGenerator g = open(request, response)) {
+            result.writeTo(g);
+        }
+
+        Metrics.Phase.RENDER.recordSince(start);
+    }
+
+    /**
+     * Writes a result to a string, for callers that are not servlets.
+     *
+     * @param result Result to be written.
+     * @param pretty Whether to indent the output.
+     * @return The result as JSON text.
+     * @throws IOException Result cannot be written.
+     */
+    static String toString(final JsonResult result, final boolean pretty) throws IOException {
+
+        long start = System.nanoTime();
+        SegmentedStringWriter out = new SegmentedStringWriter(FACTORY._getBufferRecycler());
+
+        try (JsonGenerator g = configure(FACTORY.createGenerator(out), pretty)) {
+            result.writeTo(g);
+        }
+
+        String json = out.getAndClear();
+        Metrics.Phase.RENDER.recordSince(start);
+
+        return json;
+    }
+
+    /**
+     * Writes a result to UTF-8 bytes, for responses sent without blocking.
+     *
+     * @param result Result to be written.
+     * @param pretty Whether to indent the output.
+     * @return The result as UTF-8 JSON.
+     * @throws IOException Result cannot be written.
+     */
+    static byte[] toBytes(final JsonResult result, final boolean pretty) throws IOException {
+
+        long start = System.nanoTime();
+        ByteArrayBuilder out = new ByteArrayBuilder(FACTORY._getBufferRecycler());
+
+        try (JsonGenerator g = configure(FACTORY.createGenerator(out, JsonEncoding.UTF8), pretty)) {
+            result.writeTo(g);
+        }
+
+        byte[] json = out.toByteArray();
+        out.release();
+        Metrics.Phase.RENDER.recordSince(start);
+
+        return json;
+    }
+
+    /**
+     * Turns on pretty printing if asked for.
+     *
+     * @param g Newly opened generator.
+     * @param pretty Whether to indent the output.
+     * @return The same generator.
+     */
+    private static JsonGenerator configure(final JsonGenerator g, final boolean pretty) {
+        return pretty ? g.useDefaultPrettyPrinter() : g;
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+
+/**
+ * A result that can be written out as a single JSON value.
+ * <p>
+ *     Results write themselves straight to a generator, so nothing is built up in memory before being sent.
+ */
+@FunctionalInterface
+interface JsonResult {
+
+    /**
+     * Writes this result as one JSON value.
+     *
+     * @param g Generator to be written to.
+     * @throws IOException Generator failed to write.
+     */
+    void writeTo(JsonGenerator g) throws IOException;
+
+    /**
+     * Gives the result reported when a request or check fails.
+     *
+     * @param message Description of the error.
+     * @return Result writing <code>{"error": message}</code>.
+     */
+    static JsonResult error(final String message) {
+        return new JsonResult() {
+
+            @Override
+            public void writeTo(final JsonGenerator g) throws IOException {
+                g.writeStartObject();
+                g.writeStringField("error", message);
+                g.writeEndObject();
+            }
+
+            @Override
+            public String toString() {
+                return "error=" + RequestLog.quote(message);
+            }
+        };
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies, with bucket bounds at powers of two microseconds, from 1 microsecond to about
+ * 33 seconds.
+ * <p>
+ *     Recording a value is a bucket lookup and two {@link LongAdder} increments, so it never allocates or blocks and
+ *     can be left on in production. Totals read while values are being recorded may be very slightly out of step.
+ */
+final class LatencyHistogram {
+
+    /**
+     * Number of finite buckets. The last finite bucket ends at 2^(BUCKETS - 1) microseconds.
+     */
+    private static final int BUCKETS = 26;
+
+    /**
+     * Upper bound of each bucket in seconds, as written in Prometheus <code>le</code> labels.
+     */
+    private static final String[] UPPER_BOUNDS = new String[BUCKETS + 1];
+
+    static {
+        for (int i = 0; i < BUCKETS; i++) {
+            UPPER_BOUNDS[i] = new BigDecimal(1L << i).movePointLeft(6).toPlainString();
+        }
+        UPPER_BOUNDS[BUCKETS] = "+Inf";
+    }
+
+    /**
+     * Number of values in each bucket, the last one counting values beyond every finite bound.
+     */
+    private final LongAdder[] counts = new LongAdder[BUCKETS + 1];
+
+    /**
+     * Sum of all values recorded, in nanoseconds.
+     */
+    private final LongAdder sumNanos = new LongAdder();
+
+    /**
+     * Constructor method of LatencyHistogram.
+     */
+    LatencyHistogram() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records one latency.
+     *
+     * @param nanos Latency in nanoseconds.
+     */
+    void record(final long nanos) {
+
+        // A clock that steps back can give a negative time, which is counted as zero in the buckets and the sum alike.
+        long clamped = Math.max(nanos, 0);
+
+        // Round up, so that a value only lands in a bucket whose bound it does not exceed.
+        long micros = (clamped + 999) / 1000;
+
+        // Smallest i with micros <= 2^i, i.e. the ceiling of log2(micros).
+        int bucket = micros <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(micros - 1);
+
+        counts[Math.min(bucket, BUCKETS)].increment();
+        sumNanos.add(clamped);
+    }
+
+    /**
+     * Records the time since a start time, taken with {@link System#nanoTime()}.
+     *
+     * @param startNanos The start time.
+     */
+    void recordSince(final long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Writes the histogram in the Prometheus text format, without its HELP and TYPE lines.
+     *
+     * @param out Buffer to be written to.
+     * @param name Name of the metric, e.g. <code>chemistry_phase_seconds</code>.
+     * @param labels Labels identifying this histogram, e.g. <code>phase="lex"</code>, or empty.
+     */
+    void writeTo(final StringBuilder out, final String name, final String labels) {
+
+        String sep = labels.isEmpty() ? "" : ",";
+        long cumulative = 0;
+
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i].sum();
+            out.append(name).append("_bucket{").append(labels).append(sep)
+                    .append("le=\"").append(UPPER_BOUNDS[i]).append("\"} ").append(cumulative).append('\n');
+        }
+
+        String braces = labels.isEmpty() ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(braces).append(' ').append(sumNanos.sum() / 1e9).append('\n');
+        out.append(name).append("_count").append(braces).append(' ').append(cumulative).append('\n');
+    }
+}
@@ -0,0 +1,228 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.webapp.Configuration;
+import org.eclipse.jetty.webapp.WebAppContext;
+import org.eclipse.jetty.webapp.WebXmlConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+
+/**
+ * Runs the checker in embedded Jetty, serving the servlets listed in <code>WEB-INF/web.xml</code>.
+ * <p>
+ *     Settings are system properties:
+ *     <ul>
+ *         <li><code>chemistry.port</code>: port to listen on (default 5000).</li>
+ *         <li><code>chemistry.http.minThreads</code>, <code>chemistry.http.maxThreads</code>: size of Jetty's
+ *         thread pool (default 8 to 200).</li>
+ *         <li><code>chemistry.http.acceptors</code>, <code>chemistry.http.selectors</code>: number of acceptor
+ *         and selector threads (default: chosen by Jetty from the number of processors).</li>
+ *         <li><code>chemistry.http.idleTimeout</code>: milliseconds before an idle connection is closed
+ *         (default 30000).</li>
+ *     </ul>
+ * <p>
+ *     With the argument <code>--warm-up</code> the server starts on a free port, answers a few requests of each kind,
+ *     and stops. Run like that with <code>-XX:ArchiveClassesAtExit=...</code>, it records a class data sharing archive
+ *     of everything needed to serve, which later starts can map in with <code>-XX:SharedArchiveFile=...</code>.
+ * <p>
+ *     With the arguments <code>--compile-bank targets.txt bank.bin</code> it compiles the target strings listed one to
+ *     a line in the first file into a {@link QuestionBank}, and stops without serving.
+ */
+public final class Launcher {
+
+    /**
+     * Logger for start up and shut down.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(Launcher.class);
+
+    /**
+     * Default port, the same as <code>mvn jetty:run</code>.
+     */
+    private static final int DEFAULT_PORT = 5000;
+
+    /**
+     * Default smallest number of threads in Jetty's pool.
+     */
+    private static final int DEFAULT_MIN_THREADS = 8;
+
+    /**
+     * Default largest number of threads in Jetty's pool.
+     */
+    private static final int DEFAULT_MAX_THREADS = 200;
+
+    /**
+     * Default milliseconds before an idle connection or thread is dropped.
+     */
+    private static final int DEFAULT_IDLE_TIMEOUT = 30000;
+
+    /**
+     * Milliseconds given to requests in progress to finish when shutting down.
+     */
+    private static final long STOP_TIMEOUT = 5000;
+
+    /**
+     * Requests made by <code>--warm-up</code>: path, content type and body.
+     */
+    private static final String[][] WARM_UP = {
+        {"/check", "application/json", "{\"test\": \"2H2 + O2 -> 2H2O\", \"target\": \"2H2 + O2 -> 2H2O\"}"},
+        {"/check", "application/json", "{\"test\": \"Na^{+}(aq) + Cl^{-}(aq)\", \"target\": \"NaCl(s)\"}"},
+        {"/check", "application/json", "{\"test\": \"H2O +\", \"target\": \"H2O\"}"},
+        {"/check", "application/json", "{\"test\": \"H2O\"}"},
+        {"/parse", "application/json", "{\"test\": \"CH4 + 2O2 -> CO2 + 2H2O\"}"},
+        {"/parse", "application/json", "{\"test\": \"^{14}_{6}C -> ^{14}_{7}N + ^{0}_{-1}e\"}"},
+        {"/check/batch", "application/json", "{\"target\": \"H2O\", \"tests\": [\"H2O\", \"HO2\"]}"},
+        {"/parse_form", "application/x-www-form-urlencoded", "test=H2O%20%2B%20CO2"},
+        {"/metrics", null, null},
+        {"/", null, null},
+    };
+
+    /**
+     * Constructor method of Launcher.
+     * Set to private, because we don't want people to instantiate an utility class.
+     */
+    private Launcher() {
+        // Nothing here.
+    }
+
+    /**
+     * Starts the server.
+     *
+     * @param args Either nothing, <code>--warm-up</code> to start, answer a few requests, and stop, or
+     *             <code>--compile-bank</code> with a file of targets and a question bank to write.
+     * @throws Exception Server cannot be started.
+     */
+    public static void main(final String[] args) throws Exception {
+
+        if (args.length == 3 && "--compile-bank".equals(args[0])) {
+            QuestionBank.compile(Paths.get(args[1]), Paths.get(args[2]));
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean warmUp = args.length > 0 && "--warm-up".equals(args[0]);
+
+        Server server = createServer(warmUp ? 0 : Integer.getInteger("chemistry.port", DEFAULT_PORT));
+        server.start();
+
+        int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+        LOG.info("Serving on port {} after {} ms, with {} targets precompiled", port,
+                (System.nanoTime() - start) / 1000000, TargetCache.bankSize());
+
+        if (warmUp) {
+            try {
+                warmUp(port);
+            } finally {
+                server.stop();
+            }
+        } else {
+            server.join();
+        }
+    }
+
+    /**
+     * Sets up the server, without starting it.
+     *
+     * @param port Port to listen on, or 0 for any free port.
+     * @return The server.
+     */
+    static Server createServer(final int port) {
+
+        int idleTimeout = Integer.getInteger("chemistry.http.idleTimeout", DEFAULT_IDLE_TIMEOUT);
+
+        QueuedThreadPool threads = new QueuedThreadPool(
+                Integer.getInteger("chemistry.http.maxThreads", DEFAULT_MAX_THREADS),
+                Integer.getInteger("chemistry.http.minThreads", DEFAULT_MIN_THREADS),
+                idleTimeout);
+        threads.setName("http");
+
+        Server server = new Server(threads);
+
+        ServerConnector connector = new ServerConnector(server,
+                Integer.getInteger("chemistry.http.acceptors", -1),
+                Integer.getInteger("chemistry.http.selectors", -1));
+        connector.setPort(port);
+        connector.setIdleTimeout(idleTimeout);
+        server.addConnector(connector);
+
+        // Only web.xml is read: there are no sessions, annotations, JSPs or static files to look for, and skipping
+        // them all keeps start up quick. Classes come straight from the launcher's own class path.
+        WebAppContext context = new WebAppContext(null, "/", null, null, null, null, 0);
+        context.setResourceBase(Launcher.class.getResource("/WEB-INF/web.xml").toExternalForm()
+                .replaceFirst("WEB-INF/web\\.xml$", ""));
+        context.setConfigurations(new Configuration[] {new WebXmlConfiguration()});
+        context.setDefaultsDescriptor(null);
+        context.setParentLoaderPriority(true);
+        context.setThrowUnavailableOnStartupException(true);
+        server.setHandler(context);
+
+        server.setStopAtShutdown(true);
+        server.setStopTimeout(STOP_TIMEOUT);
+
+        return server;
+    }
+
+    /**
+     * Makes each of the warm-up requests.
+     *
+     * @param port Port the server is listening on.
+     * @throws IOException A request fails.
+     */
+    private static void warmUp(final int port) throws IOException {
+
+        for (String[] request : WARM_UP) {
+
+            HttpURLConnection connection =
+                    (HttpURLConnection) new URL("http", "localhost", port, request[0]).openConnection();
+
+            if (request[2] != null) {
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", request[1]);
+
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(request[2].getBytes(StandardCharsets.UTF_8));
+                }
+            }
+
+            int status = connection.getResponseCode();
+            InputStream body = status < HttpURLConnection.HTTP_BAD_REQUEST
+                    ? connection.getInputStream() : connection.getErrorStream();
+
+            if (body != null) {
+                try (InputStream in = body) {
+                    byte[] buffer = new byte[4096];
+                    while (in.read(buffer) != -1) {
+                        // Only reading to the end matters.
+                    }
+                }
+            }
+
+            LOG.info("Warm-up {} gave {}", request[0], status);
+        }
+    }
+}
@@ -0,0 +1,341 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms for the checker, served in the Prometheus text format by {@link MetricsServlet}.
+ * <p>
+ *     Every metric is a {@link LongAdder} or a {@link LatencyHistogram}, fixed when the class is loaded, so recording
+ *     is lock-free and allocation-free. The only exception is the first time an exception class is seen.
+ */
+final class Metrics {
+
+    /**
+     * Phases of handling a request, each timed separately.
+     */
+    enum Phase {
+
+        /**
+         * Reading and decoding the request body.
+         */
+        BODY_READ("body_read"),
+
+        /**
+         * Waiting for a checking thread.
+         */
+        QUEUE("queue"),
+
+        /**
+         * Splitting a statement into tokens.
+         */
+        LEX("lex"),
+
+        /**
+         * Building the syntax tree from tokens.
+         */
+        PARSE("parse"),
+
+        /**
+         * Working out the counts reported for a single statement by /parse.
+         */
+        ANALYSE("analyse"),
+
+        /**
+         * Comparing user input with its target.
+         */
+        COMPARE("compare"),
+
+        /**
+         * Writing the JSON response.
+         */
+        RENDER("render");
+
+        /**
+         * Value of the <code>phase</code> label.
+         */
+        private final String label;
+
+        /**
+         * Time spent in this phase.
+         */
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        /**
+         * Constructor method of Phase.
+         *
+         * @param label Value of the <code>phase</code> label.
+         */
+        Phase(final String label) {
+            this.label = label;
+        }
+
+        /**
+         * Records the time spent in this phase since a start time.
+         *
+         * @param startNanos Start of the phase, from {@link System#nanoTime()}.
+         */
+        void recordSince(final long startNanos) {
+            latency.recordSince(startNanos);
+        }
+    }
+
+    /**
+     * Servlet endpoints, each counted separately.
+     */
+    enum Endpoint {
+
+        /**
+         * {@link CheckerServlet}.
+         */
+        CHECK("/check"),
+
+        /**
+         * {@link BatchCheckerServlet}.
+         */
+        CHECK_BATCH("/check/batch"),
+
+        /**
+         * {@link ParserServlet}.
+         */
+        PARSE("/parse"),
+
+        /**
+         * {@link FormParserServlet}.
+         */
+        PARSE_FORM("/parse_form");
+
+        /**
+         * Value of the <code>endpoint</code> label.
+         */
+        private final String label;
+
+        /**
+         * Requests started.
+         */
+        private final LongAdder requests = new LongAdder();
+
+        /**
+         * Requests answered with an error.
+         */
+        private final LongAdder errors = new LongAdder();
+
+        /**
+         * Requests started but not yet finished.
+         */
+        private final LongAdder inFlight = new LongAdder();
+
+        /**
+         * Time taken to handle each request.
+         */
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        /**
+         * Constructor method of Endpoint.
+         *
+         * @param label Value of the <code>endpoint</code> label.
+         */
+        Endpoint(final String label) {
+            this.label = label;
+        }
+
+        /**
+         * Counts the start of a request.
+         *
+         * @return Start time of the request, to be passed to {@link #finish(long, boolean)}.
+         */
+        long start() {
+            requests.increment();
+            inFlight.increment();
+            return System.nanoTime();
+        }
+
+        /**
+         * Counts the end of a request.
+         *
+         * @param startNanos Start time returned by {@link #start()}.
+         * @param error Whether the request was answered with an error.
+         */
+        void finish(final long startNanos, final boolean error) {
+
+            latency.recordSince(startNanos);
+            inFlight.decrement();
+
+            if (error) {
+                errors.increment();
+            }
+        }
+    }
+
+    /**
+     * Exceptions caught while handling requests, by class name.
+     */
+    private static final ConcurrentHashMap<String, LongAdder> EXCEPTIONS = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor method of Metrics.
+     * Set to private, because we don't want people to instantiate an utility class.
+     */
+    private Metrics() {
+        // Nothing here.
+    }
+
+    /**
+     * Counts an exception caught while handling a request.
+     *
+     * @param e The exception.
+     */
+    static void exception(final Throwable e) {
+
+        String name = e.getClass().getName();
+        LongAdder count = EXCEPTIONS.get(name);
+
+        if (count == null) {
+            count = EXCEPTIONS.computeIfAbsent(name, k -> new LongAdder());
+        }
+
+        count.increment();
+    }
+
+    /**
+     * Writes every metric in the Prometheus text exposition format, version 0.0.4.
+     *
+     * @return The metrics, one sample per line.
+     */
+    static String render() {
+
+        StringBuilder out = new StringBuilder(16384);
+
+        header(out, "chemistry_requests_total", "counter", "Requests received, by endpoint.");
+        for (Endpoint e : Endpoint.values()) {
+            sample(out, "chemistry_requests_total", "endpoint", e.label, e.requests.sum());
+        }
+
+        header(out, "chemistry_request_errors_total", "counter", "Requests answered with an error, by endpoint.");
+        for (Endpoint e : Endpoint.values()) {
+            sample(out, "chemistry_request_errors_total", "endpoint", e.label, e.errors.sum());
+        }
+
+        header(out, "chemistry_requests_in_flight", "gauge", "Requests being handled, by endpoint.");
+        for (Endpoint e : Endpoint.values()) {
+            sample(out, "chemistry_requests_in_flight", "endpoint", e.label, e.inFlight.sum());
+        }
+
+        header(out, "chemistry_request_seconds", "histogram", "Time taken to handle a request, by endpoint.");
+        for (Endpoint e : Endpoint.values()) {
+            e.latency.writeTo(out, "chemistry_request_seconds", "endpoint=\"" + e.label + "\"");
+        }
+
+        header(out, "chemistry_phase_seconds", "histogram", "Time spent in each phase of handling a request.");
+        for (Phase p : Phase.values()) {
+            p.latency.writeTo(out, "chemistry_phase_seconds", "phase=\"" + p.label + "\"");
+        }
+
+        header(out, "chemistry_exceptions_total", "counter", "Exceptions caught while handling requests, by class.");
+        for (Map.Entry<String, LongAdder> entry : EXCEPTIONS.entrySet()) {
+            sample(out, "chemistry_exceptions_total", "class", entry.getKey(), entry.getValue().sum());
+        }
+
+        header(out, "chemistry_workers_active", "gauge", "Checking threads running a task.");
+        sample(out, "chemistry_workers_active", null, null, CheckingPool.active());
+
+        header(out, "chemistry_workers_queued", "gauge", "Tasks waiting for a checking thread.");
+        sample(out, "chemistry_workers_queued", null, null, CheckingPool.queued());
+
+        header(out, "chemistry_target_cache_size", "gauge", "Compiled targets held in the target cache.");
+        sample(out, "chemistry_target_cache_size", null, null, TargetCache.size());
+
+        header(out, "chemistry_target_cache_hits_total", "counter", "Target lookups served from the cache.");
+        sample(out, "chemistry_target_cache_hits_total", null, null, TargetCache.hitCount());
+
+        header(out, "chemistry_target_cache_misses_total", "counter", "Target lookups that had to parse the target.");
+        sample(out, "chemistry_target_cache_misses_total", null, null, TargetCache.missCount());
+
+        header(out, "chemistry_target_cache_evictions_total", "counter", "Targets dropped from the cache.");
+        sample(out, "chemistry_target_cache_evictions_total", null, null, TargetCache.evictionCount());
+
+        header(out, "chemistry_question_bank_size", "gauge", "Targets in the mapped question bank.");
+        sample(out, "chemistry_question_bank_size", null, null, TargetCache.bankSize());
+
+        header(out, "chemistry_question_bank_hits_total", "counter", "Targets read from the question bank.");
+        sample(out, "chemistry_question_bank_hits_total", null, null, TargetCache.bankHitCount());
+
+        header(out, "chemistry_formula_pool_size", "gauge", "Formulas shared between cached targets.");
+        sample(out, "chemistry_formula_pool_size", null, null, FlatStatement.poolSize());
+
+        header(out, "chemistry_formula_pool_hits_total", "counter", "Target formulas found in the formula pool.");
+        sample(out, "chemistry_formula_pool_hits_total", null, null, FlatStatement.poolHitCount());
+
+        header(out, "chemistry_formula_pool_misses_total", "counter", "Target formulas added to the formula pool.");
+        sample(out, "chemistry_formula_pool_misses_total", null, null, FlatStatement.poolMissCount());
+
+        header(out, "chemistry_check_cache_size", "gauge", "Check results held in the check cache.");
+        sample(out, "chemistry_check_cache_size", null, null, CheckCache.size());
+
+        header(out, "chemistry_check_cache_hits_total", "counter", "Checks answered from the cache.");
+        sample(out, "chemistry_check_cache_hits_total", null, null, CheckCache.hitCount());
+
+        header(out, "chemistry_check_cache_misses_total", "counter", "Checks not found in the cache.");
+        sample(out, "chemistry_check_cache_misses_total", null, null, CheckCache.missCount());
+
+        header(out, "chemistry_check_cache_coalesced_total", "counter",
+                "Checks that waited for the same check already running.");
+        sample(out, "chemistry_check_cache_coalesced_total", null, null, CheckCache.coalescedCount());
+
+        header(out, "chemistry_check_cache_evictions_total", "counter", "Check results dropped from the cache.");
+        sample(out, "chemistry_check_cache_evictions_total", null, null, CheckCache.evictionCount());
+
+        return out.toString();
+    }
+
+    /**
+     * Writes the HELP and TYPE lines of a metric.
+     *
+     * @param out Buffer to be written to.
+     * @param name Name of the metric.
+     * @param type Prometheus type of the metric.
+     * @param help Description of the metric.
+     */
+    private static void header(final StringBuilder out, final String name, final String type, final String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    /**
+     * Writes a single sample.
+     *
+     * @param out Buffer to be written to.
+     * @param name Name of the metric.
+     * @param label Name of the only label, or null for none.
+     * @param value Value of the label.
+     * @param sample The sample.
+     */
+    private static void sample(final StringBuilder out, final String name, final String label, final String value,
+                               final long sample) {
+
+        out.append(name);
+
+        if (label != null) {
+            out.append('{').append(label).append("=\"").append(value).append("\"}");
+        }
+
+        out.append(' ').append(sample).append('\n');
+    }
+}
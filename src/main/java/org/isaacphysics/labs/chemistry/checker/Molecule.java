@@ -31,7 +31,7 @@ public abstract class Molecule extends Formula {
 
     @Override
     public Fraction getCharge() {
-        return new Fraction(0, 1);
+        return Fraction.ZERO;
     }
 
     /**
@@ -53,9 +53,4 @@ public abstract class Molecule extends Formula {
     public Integer getAtomicNumber() throws NuclearException {
         throw new NuclearException("Atomic number undefined for Molecule.");
     }
-
-    @Override
-    public int hashCode() {
-        return toString().hashCode();
-    }
 }
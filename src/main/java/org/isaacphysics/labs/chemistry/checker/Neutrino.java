@@ -44,9 +44,4 @@ public final class Neutrino extends SpecialNuclear {
         Neutrino p = (Neutrino) o;
         return p.getAtomicNumber().equals(getAtomicNumber()) && p.getMassNumber().equals(getMassNumber());
     }
-    @Override
-    public int hashCode() {
-        return toString().hashCode();
-    }
-
 }
@@ -44,9 +44,4 @@ public final class Neutron extends SpecialNuclear {
         Neutron p = (Neutron) o;
         return p.getAtomicNumber().equals(getAtomicNumber()) && p.getMassNumber().equals(getMassNumber());
     }
-
-    @Override
-    public int hashCode() {
-        return toString().hashCode();
-    }
 }
@@ -24,33 +24,6 @@ package org.isaacphysics.labs.chemistry.checker;
  */
 public abstract class Nuclear extends Formula {
 
-    /**
-     * Helper static variable for issuing unique IDs.
-     */
-    private static int dotIdTracker = 0;
-
-    /**
-     * Stores unique ID for every Expression.
-     */
-    private int dotId;
-
-    /**
-     * Constructor method for Nuclear. Assigns an unique ID to the nuclear term.
-     */
-    public Nuclear() {
-        dotId = dotIdTracker;
-        dotIdTracker++;
-    }
-
-    /**
-     * Getter method. Used in subclasses for getting unique IDs.
-     *
-     * @return Unique ID.
-     */
-    public int getdotId() {
-        return dotId;
-    }
-
     /**
      * Getter method. Returns mass number of given particle.
      *
@@ -30,12 +30,12 @@ public final class NuclearEquationStatement extends Statement {
     /**
      * The left expression of a equation.
      */
-    private Expression left;
+    private final Expression left;
 
     /**
      * The right expression of a equation.
      */
-    private Expression right;
+    private final Expression right;
 
     /**
      * Constructor method of NuclearEquationStatement.
@@ -95,16 +95,9 @@ public final class NuclearEquationStatement extends Statement {
      */
     boolean isBalancedMass() {
 
-        try {
-
-            return !containsError() && left.getMassCount().equals(right.getMassCount());
-
-        } catch (NuclearException e) {
-
-            return false;
-
-        }
+        Fraction mass = left.getSummary().getMassCount();
 
+        return !containsError() && mass != null && mass.equals(right.getSummary().getMassCount());
     }
 
     /**
@@ -114,15 +107,9 @@ public final class NuclearEquationStatement extends Statement {
      */
     boolean isBalancedAtom() {
 
-        try {
+        Fraction atomic = left.getSummary().getAtomicCount();
 
-            return !containsError() && left.getAtomicCount().equals(right.getAtomicCount());
-
-        } catch (NuclearException e) {
-
-            return false;
-
-        }
+        return !containsError() && atomic != null && atomic.equals(right.getSummary().getAtomicCount());
     }
 
     /**
@@ -140,12 +127,14 @@ public final class NuclearEquationStatement extends Statement {
      * @return True if all isotopes have valid atomic numbers.
      */
     boolean isValid() {
-        return left.isValidAtomicNumber() && right.isValidAtomicNumber();
+        return left.getSummary().isValidAtomicNumber() && right.getSummary().isValidAtomicNumber();
     }
 
     @Override
     String getDotCode() {
 
+        DotIds ids = new DotIds();
+
         return  "digraph chemical_syntax_tree {\n"
                 + "\tnode [shape=record,penwidth=2,splines=ortho];\n\n"
                 + "\tequation [label=\"{&zwj;&zwj;&zwj;&zwj;Nuclear Equation&zwnj;|\\n"
@@ -154,11 +143,11 @@ public final class NuclearEquationStatement extends Statement {
 
                 + "\\n\\n|<left>&zwj;&zwj;&zwj;left&zwnj;|<right>&zwj;&zwj;&zwj;right&zwnj;}\",color=\"#bb2828\"];\n"
 
-                + "\tequation:left:w -> " + left.getDotId() + ";\n"
+                + "\tequation:left:w -> " + left.getDotId(ids) + ";\n"
 
-                + "\tequation:right:e -> " + right.getDotId() + ";\n"
+                + "\tequation:right:e -> " + right.getDotId(ids) + ";\n"
 
-                + left.getDotCode() + right.getDotCode() + "}\n";
+                + left.getDotCode(ids) + right.getDotCode(ids) + "}\n";
 
     }
 
@@ -259,6 +248,6 @@ public final class NuclearEquationStatement extends Statement {
 
     @Override
     public int hashCode() {
-        return toString().hashCode();
+        return 31 * left.hashCode() + right.hashCode();
     }
 }
@@ -17,7 +17,6 @@
 package org.isaacphysics.labs.chemistry.checker;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 
 /**
  * Statement containing nuclear expressions.
@@ -28,12 +27,7 @@ public final class NuclearExpressionStatement extends Statement implements Count
     /**
      * Expression involved in statement.
      */
-    private Expression expr;
-
-    /**
-     * Saved atom count.
-     */
-    private HashMap<String, Fraction> savedAtomCount = null;
+    private final Expression expr;
 
     /**
      * Constructor method of ExpressionStatement.
@@ -49,7 +43,7 @@ public final class NuclearExpressionStatement extends Statement implements Count
     }
 
     @Override
-    public String getDotId() {
+    public String getDotId(final DotIds ids) {
         return null;
     }
 
@@ -72,12 +66,8 @@ public final class NuclearExpressionStatement extends Statement implements Count
     }
 
     @Override
-    public HashMap<String, Fraction> getAtomCount() {
-        if (savedAtomCount == null) {
-            savedAtomCount = expr.getAtomCount();
-        }
-
-        return savedAtomCount;
+    public AtomVector getAtomVector() {
+        return expr.getAtomVector();
     }
 
     @Override
@@ -95,10 +85,15 @@ public final class NuclearExpressionStatement extends Statement implements Count
 
     @Override
     public String getDotCode() {
+        return getDotCode(new DotIds());
+    }
+
+    @Override
+    public String getDotCode(final DotIds ids) {
 
         return "digraph chemical_syntax_tree {\n"
                 + "\tnode [shape=record,penwidth=2,splines=ortho];\n\n"
-                + expr.getDotCode()
+                + expr.getDotCode(ids)
                 + "}\n";
 
     }
@@ -126,7 +121,7 @@ public final class NuclearExpressionStatement extends Statement implements Count
      * @return True if all terms in expression are valid.
      */
     boolean isValid() {
-        return expr.isValidAtomicNumber();
+        return expr.getSummary().isValidAtomicNumber();
     }
 
     /**
@@ -200,6 +195,6 @@ public final class NuclearExpressionStatement extends Statement implements Count
 
     @Override
     public int hashCode() {
-        return toString().hashCode();
+        return expr.hashCode();
     }
 }
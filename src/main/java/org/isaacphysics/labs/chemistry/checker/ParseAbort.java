@@ -0,0 +1,40 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.isaacphysics.labs.chemistry.checker;
+
+/**
+ * Signal thrown from inside the lexer or parser to stop parsing input that cannot be parsed.
+ * <p>
+ *     It is caught by {@link StatementParser}, which reads where and why parsing stopped from the lexer and parser
+ *     themselves. As it carries no details and no stack trace, one shared instance is thrown every time, so that
+ *     bad input costs no more to turn away than good input costs to parse.
+ */
+final class ParseAbort extends RuntimeException {
+
+    /**
+     * The only instance.
+     */
+    static final ParseAbort INSTANCE = new ParseAbort();
+
+    /**
+     * Constructor method of ParseAbort.
+     */
+    private ParseAbort() {
+        super("Parsing stopped.", null, false, false);
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.isaacphysics.labs.chemistry.checker;
+
+/**
+ * Thrown when a string cannot be parsed at all, by the parsing methods that throw rather than give a
+ * {@link ParseResult}.
+ * <p>
+ *     Students' typos are common, so no stack trace is filled in; the syntax error says all there is to say.
+ */
+class ParseException extends Exception {
+
+    /**
+     * Where and why parsing failed.
+     */
+    private final SyntaxError syntaxError;
+
+    /**
+     * Constructor method of ParseException.
+     *
+     * @param syntaxError Where and why parsing failed.
+     */
+    ParseException(final SyntaxError syntaxError) {
+        super(syntaxError.getMessage() + " At position " + syntaxError.getPosition() + ".", null, false, false);
+        this.syntaxError = syntaxError;
+    }
+
+    /**
+     * @return Where and why parsing failed.
+     */
+    SyntaxError getSyntaxError() {
+        return syntaxError;
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Limits on the work done to parse a string, so that pasted essays or deeply bracketed formulas are turned away
+ * early instead of holding up a checking thread.
+ * <p>
+ *     Each limit can be set with a system property:
+ *     <ul>
+ *         <li><code>chemistry.parse.maxLength</code>: characters in a string (default 2000).</li>
+ *         <li><code>chemistry.parse.maxTokens</code>: tokens in a string (default 1000).</li>
+ *         <li><code>chemistry.parse.maxDepth</code>: brackets nested inside each other (default 10).</li>
+ *         <li><code>chemistry.parse.maxNumber</code>: value of any number, such as a coefficient (default 1000000).
+ *         </li>
+ *         <li><code>chemistry.parse.maxMillis</code>: CPU time spent lexing and parsing one string, in
+ *         milliseconds (default 50).</li>
+ *     </ul>
+ */
+final class ParseLimits {
+
+    /**
+     * Default maximum number of characters in a string.
+     */
+    private static final int DEFAULT_MAX_LENGTH = 2000;
+
+    /**
+     * Default maximum number of tokens in a string.
+     */
+    private static final int DEFAULT_MAX_TOKENS = 1000;
+
+    /**
+     * Default maximum depth of nested brackets.
+     */
+    private static final int DEFAULT_MAX_DEPTH = 10;
+
+    /**
+     * Default maximum value of a number.
+     */
+    private static final int DEFAULT_MAX_NUMBER = 1000000;
+
+    /**
+     * Default maximum CPU time spent on one string, in milliseconds.
+     */
+    private static final long DEFAULT_MAX_MILLIS = 50;
+
+    /**
+     * Maximum number of characters in a string.
+     */
+    static final int MAX_LENGTH = Integer.getInteger("chemistry.parse.maxLength", DEFAULT_MAX_LENGTH);
+
+    /**
+     * Maximum number of tokens in a string.
+     */
+    static final int MAX_TOKENS = Integer.getInteger("chemistry.parse.maxTokens", DEFAULT_MAX_TOKENS);
+
+    /**
+     * Maximum depth of nested brackets.
+     */
+    static final int MAX_DEPTH = Integer.getInteger("chemistry.parse.maxDepth", DEFAULT_MAX_DEPTH);
+
+    /**
+     * Maximum value of a number.
+     */
+    static final int MAX_NUMBER = Integer.getInteger("chemistry.parse.maxNumber", DEFAULT_MAX_NUMBER);
+
+    /**
+     * Maximum CPU time spent on one string, in nanoseconds.
+     */
+    static final long MAX_NANOS = Long.getLong("chemistry.parse.maxMillis", DEFAULT_MAX_MILLIS) * 1000000L;
+
+    /**
+     * Deadline of input that is not held to the limits.
+     */
+    static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    /**
+     * Number of tokens handled between looks at the clock. Reading the CPU clock costs a few hundred nanoseconds, so
+     * it is not read for every token.
+     */
+    static final int CLOCK_INTERVAL = 64;
+
+    /**
+     * Source of per-thread CPU times.
+     */
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /**
+     * Whether CPU time can be measured for the current thread. If not, elapsed time is used instead.
+     */
+    private static final boolean CPU_TIME =
+            THREADS.isCurrentThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled();
+
+    /**
+     * Constructor method of ParseLimits.
+     * Set to private, because we don't want people to instantiate an utility class.
+     */
+    private ParseLimits() {
+        // Nothing here.
+    }
+
+    /**
+     * @return CPU time used by the current thread so far, in nanoseconds, or elapsed time if that is not available.
+     */
+    static long cpuTime() {
+        return CPU_TIME ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * Starts the clock on a string that is about to be lexed and parsed.
+     *
+     * @return CPU time of the current thread by which the work on the string should be done.
+     */
+    static long deadline() {
+
+        long now = cpuTime();
+        long deadline = now + MAX_NANOS;
+
+        // A budget too large to add is no budget at all.
+        return deadline < now ? NO_DEADLINE : deadline;
+    }
+
+    /**
+     * Checks whether the work on a string has run out of time.
+     *
+     * @param deadline Deadline given by {@link #deadline()}, or {@link #NO_DEADLINE}.
+     * @return True if the current thread's CPU time has reached the deadline.
+     */
+    static boolean isPast(final long deadline) {
+        return deadline != NO_DEADLINE && cpuTime() >= deadline;
+    }
+}
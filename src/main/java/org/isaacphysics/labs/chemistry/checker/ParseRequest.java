@@ -0,0 +1,65 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Body of a request to {@link ParserServlet}: <code>{"test": ..., "description": ...}</code>.
+ * Any other properties are ignored.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+final class ParseRequest {
+
+    /**
+     * Statement to be parsed, or null if missing.
+     */
+    private final String test;
+
+    /**
+     * Free text describing the request, only used for logging.
+     */
+    private final String description;
+
+    /**
+     * Constructor method of ParseRequest, used by Jackson.
+     *
+     * @param test Statement to be parsed.
+     * @param description Free text describing the request.
+     */
+    @JsonCreator
+    ParseRequest(@JsonProperty("test") final String test, @JsonProperty("description") final String description) {
+        this.test = test;
+        this.description = description;
+    }
+
+    /**
+     * @return Statement to be parsed, or null if missing.
+     */
+    String getTest() {
+        return test;
+    }
+
+    /**
+     * @return Free text describing the request, or null if missing.
+     */
+    String getDescription() {
+        return description;
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import java.util.ArrayList;
+
+/**
+ * Outcome of parsing a string: either the statements in it, or the syntax error that stopped the parse.
+ * <p>
+ *     Most syntax errors are recovered from, giving statements that hold error terms; the first such error is kept
+ *     alongside the statements. Only input the parser cannot recover from, or with numbers too large to hold,
+ *     fails outright.
+ */
+final class ParseResult {
+
+    /**
+     * Statements parsed, or null if parsing failed.
+     */
+    private final ArrayList<Statement> statements;
+
+    /**
+     * First syntax error found, or null if there was none.
+     */
+    private final SyntaxError syntaxError;
+
+    /**
+     * Constructor method of ParseResult.
+     *
+     * @param statements Statements parsed, or null if parsing failed.
+     * @param syntaxError First syntax error found, or null if there was none.
+     */
+    private ParseResult(final ArrayList<Statement> statements, final SyntaxError syntaxError) {
+        this.statements = statements;
+        this.syntaxError = syntaxError;
+    }
+
+    /**
+     * Gives the result of a parse that finished.
+     *
+     * @param statements Statements parsed.
+     * @param syntaxError First syntax error recovered from, or null if there was none.
+     * @return The result.
+     */
+    static ParseResult success(final ArrayList<Statement> statements, final SyntaxError syntaxError) {
+        return new ParseResult(statements, syntaxError);
+    }
+
+    /**
+     * Gives the result of a parse that could not finish.
+     *
+     * @param syntaxError The syntax error that stopped the parse.
+     * @return The result.
+     */
+    static ParseResult failure(final SyntaxError syntaxError) {
+        return new ParseResult(null, syntaxError);
+    }
+
+    /**
+     * @return True if the input could not be parsed at all.
+     */
+    boolean isFailure() {
+        return statements == null;
+    }
+
+    /**
+     * @return Statements parsed, or null if parsing failed.
+     */
+    ArrayList<Statement> getStatements() {
+        return statements;
+    }
+
+    /**
+     * @return First syntax error found, or null if there was none. Never null if parsing failed.
+     */
+    SyntaxError getSyntaxError() {
+        return syntaxError;
+    }
+
+    /**
+     * Gives the statements parsed, for callers that treat failure as exceptional.
+     *
+     * @return Statements parsed.
+     * @throws ParseException The input could not be parsed at all.
+     */
+    ArrayList<Statement> orThrow() throws ParseException {
+
+        if (statements == null) {
+            throw new ParseException(syntaxError);
+        }
+
+        return statements;
+    }
+}
@@ -16,87 +16,89 @@
 
 package org.isaacphysics.labs.chemistry.checker;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import javax.servlet.http.HttpServlet;
-import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.util.HashMap;
 
 /**
  * This servlet receives JSON objects that contain one mhchem expression, parses it, and give extreme detailed info
- * about that expression.
+ * about that expression. Requests are handled asynchronously, see {@link AsyncJsonServlet}.
  *
  * Created by hhrl2 on 26/07/2016.
  */
-public class ParserServlet extends HttpServlet {
+public class ParserServlet extends AsyncJsonServlet<ParseRequest> {
+
+    /**
+     * Logger for failed requests.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ParserServlet.class);
+
+    /**
+     * Constructor method of ParserServlet.
+     */
+    public ParserServlet() {
+        super(Metrics.Endpoint.PARSE, "parse", ParseRequest.class);
+    }
 
+    /**
+     * Parses the statement in a request.
+     *
+     * @param req The request body.
+     * @param deadline Time, as given by {@link System#nanoTime()}, after which the request is abandoned.
+     * @param trace Whether to log a trace line for the request.
+     * @return The description of the statement, or the error reported instead.
+     */
     @Override
-    protected void doPost(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
-
-        System.out.println("==================================================");
+    Reply answer(final ParseRequest req, final long deadline, final boolean trace) {
 
-        BufferedReader requestStringReader = request.getReader();
-        String requestString = "";
-        String line;
+        if (req.getTest() == null) {
 
-        // Read the JSON object
-        while ((line = requestStringReader.readLine()) != null) {
-
-            requestString += line;
+            if (trace) {
+                RequestLog.TRACE.info("parse error=\"No input!\"");
+            }
 
+            return Reply.error(HttpServletResponse.SC_BAD_REQUEST, JsonResult.error("No input!"));
         }
 
-        ObjectMapper mapper = new ObjectMapper();
-        String testMhchemExpression = null;
-
         try {
-            @SuppressWarnings("unchecked")
-            HashMap<String, String> req = mapper.readValue(requestString, HashMap.class);
-
-            if (req.containsKey("description")) {
-                System.out.println(req.get("description"));
-                System.out.println("==================================================");
-            }
-
-            if (req.containsKey("test")) {
-                // Get mhchem expressions from JSON object
-                testMhchemExpression = req.get("test");
 
-                // Debug print
-                System.out.println("Input string: " + testMhchemExpression);
+            StatementReport result = StatementReport.of(req.getTest());
 
-                String result = RunParser.parseFromString(testMhchemExpression);
-
-                // Return
-                response.getWriter().println(result);
-
-                if (result.contains("ERROR")) {
-                    System.out.println("Parse success, but input contained errors.");
-                } else {
-                    System.out.println("Parse success!");
-                }
-
-            } else {
-                response.getWriter().println("{\"error\" : \"No input!\"}");
-                response.setStatus(400);
-                System.out.println("ERROR: No input!");
+            if (trace) {
+                RequestLog.TRACE.info("parse {} description={}", result, RequestLog.quote(req.getDescription()));
             }
-            response.setContentType("application/json");
+
+            return Reply.answer(result);
 
         } catch (Exception e) {
 
+            Metrics.exception(e);
+
             // Got an exception when checking expressions.
-            response.getWriter().println("{\"error\" : \"Can't parse input!\", "
-                    + "\"input\": \"" + testMhchemExpression + "\"}");
-            
-            System.out.println("ERROR: Parser cannot parse input!");
+            LOG.warn("Cannot parse request {}", RequestLog.quote(req.getTest()), e);
 
+            return Reply.error(HttpServletResponse.SC_OK, cannotParse(req.getTest()));
         }
+    }
 
-        System.out.println("==================================================\n");
+    @Override
+    JsonResult unreadable(final Exception e) {
+        return cannotParse(null);
     }
 
+    /**
+     * Gives the result sent back when a request cannot be parsed.
+     *
+     * @param input The input that could not be parsed, or null if not known.
+     * @return JSON object describing the error.
+     */
+    private static JsonResult cannotParse(final String input) {
+        return g -> {
+            g.writeStartObject();
+            g.writeStringField("error", "Can't parse input!");
+            g.writeStringField("input", input);
+            g.writeEndObject();
+        };
+    }
 }
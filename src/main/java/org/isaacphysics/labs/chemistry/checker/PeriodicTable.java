@@ -0,0 +1,144 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+/**
+ * Maps element symbols to atomic numbers and back.
+ * The lexer only accepts symbols listed here, so every parsed element has an atomic number.
+ * <p>
+ *     Symbols are looked up in a collision-free table indexed directly by their letters, so the lexer can find an
+ *     element from the characters it matched, without building a string or hashing one.
+ */
+final class PeriodicTable {
+
+    /**
+     * Element symbols, in order of atomic number starting from hydrogen.
+     */
+    private static final String[] SYMBOLS =
+        {"H", "He", "Li", "Be", "B", "C", "N", "O", "F", "Ne", "Na", "Mg", "Al", "Si", "P", "S", "Cl",
+            "Ar", "K", "Ca", "Sc", "Ti", "V", "Cr", "Mn", "Fe", "Co", "Ni", "Cu", "Zn", "Ga", "Ge", "As",
+            "Se", "Br", "Kr", "Rb", "Sr", "Y", "Zr", "Nb", "Mo", "Tc", "Ru", "Rh", "Pd", "Ag", "Cd", "In",
+            "Sn", "Sb", "Te", "I", "Xe", "Cs", "Ba", "La", "Ce", "Pr", "Nd", "Pm", "Sm", "Eu", "Gd", "Tb",
+            "Dy", "Ho", "Er", "Tm", "Yb", "Lu", "Hf", "Ta", "W", "Re", "Os", "Ir", "Pt", "Au", "Hg", "Tl",
+            "Pb", "Bi", "Po", "At", "Rn", "Fr", "Ra", "Ac", "Th", "Pa", "U", "Np", "Pu", "Am", "Cm", "Bk",
+            "Cf", "Es", "Fm", "Md", "No", "Lr", "Rf", "Db", "Sg", "Bh", "Hs", "Mt", "Ds", "Rg", "Cn", "Uut",
+            "Fl", "Uup", "Lv", "Uus", "Uuo"};
+
+    /**
+     * Number of slots for symbols of one or two letters: an upper case letter, then nothing or a lower case letter.
+     */
+    private static final int TWO_LETTER_SLOTS = 26 * 27;
+
+    /**
+     * Atomic numbers, by slot, or 0 for a slot no element uses. Three letter symbols all start with "Uu", so they
+     * take a slot for their last letter after the others.
+     */
+    private static final byte[] ATOMIC_NUMBERS = new byte[TWO_LETTER_SLOTS + 26];
+
+    static {
+
+        for (int i = 0; i < SYMBOLS.length; i++) {
+
+            String s = SYMBOLS[i];
+            int slot = slot(s.charAt(0), s.length() > 1 ? s.charAt(1) : 0, s.length() > 2 ? s.charAt(2) : 0);
+
+            if (ATOMIC_NUMBERS[slot] != 0) {
+                throw new IllegalStateException("Symbols " + s + " and " + SYMBOLS[ATOMIC_NUMBERS[slot] - 1]
+                        + " share a slot.");
+            }
+
+            ATOMIC_NUMBERS[slot] = (byte) (i + 1);
+        }
+    }
+
+    /**
+     * Constructor method of PeriodicTable.
+     * Set to private, because we don't want people to instantiate an utility class.
+     */
+    private PeriodicTable() {
+        // Nothing here.
+    }
+
+    /**
+     * Gives the atomic number of an element.
+     *
+     * @param symbol Symbol of the element, e.g. "Na".
+     * @return Atomic number of the element, or 0 if the symbol is not a known element.
+     */
+    static int atomicNumber(final String symbol) {
+
+        int length = symbol.length();
+
+        if (length == 0 || length > 3) {
+            return 0;
+        }
+
+        return atomicNumber(symbol.charAt(0), length > 1 ? symbol.charAt(1) : 0, length > 2 ? symbol.charAt(2) : 0);
+    }
+
+    /**
+     * Gives the atomic number of an element from the letters of its symbol.
+     *
+     * @param first First letter of the symbol.
+     * @param second Second letter of the symbol, or 0 if it has only one.
+     * @param third Third letter of the symbol, or 0 if it has fewer.
+     * @return Atomic number of the element, or 0 if the letters are not a known symbol.
+     */
+    static int atomicNumber(final char first, final char second, final char third) {
+
+        if (first < 'A' || first > 'Z' || (second != 0 && (second < 'a' || second > 'z'))
+                || (third != 0 && (second == 0 || third < 'a' || third > 'z'))) {
+            return 0;
+        }
+
+        int z = ATOMIC_NUMBERS[slot(first, second, third)];
+
+        // Slots of three letter symbols ignore the first two letters, so check them against the symbol found.
+        if (z != 0 && third != 0 && (SYMBOLS[z - 1].charAt(0) != first || SYMBOLS[z - 1].charAt(1) != second)) {
+            return 0;
+        }
+
+        return z;
+    }
+
+    /**
+     * Gives the slot of a symbol in {@link #ATOMIC_NUMBERS}. The letters must be in range.
+     *
+     * @param first First letter of the symbol, upper case.
+     * @param second Second letter of the symbol, lower case, or 0 if it has only one.
+     * @param third Third letter of the symbol, lower case, or 0 if it has fewer.
+     * @return Index into the table.
+     */
+    private static int slot(final char first, final char second, final char third) {
+
+        if (third != 0) {
+            return TWO_LETTER_SLOTS + (third - 'a');
+        }
+
+        return (first - 'A') * 27 + (second == 0 ? 0 : second - 'a' + 1);
+    }
+
+    /**
+     * Gives the symbol of an element.
+     *
+     * @param atomicNumber Atomic number of the element, from 1 upwards.
+     * @return Symbol of the element, e.g. "Na".
+     */
+    static String symbol(final int atomicNumber) {
+        return SYMBOLS[atomicNumber - 1];
+    }
+}
@@ -42,9 +42,4 @@ public final class PhysicalElectron extends SpecialNuclear {
         PhysicalElectron p = (PhysicalElectron) o;
         return p.getAtomicNumber().equals(getAtomicNumber()) && p.getMassNumber().equals(getMassNumber());
     }
-
-    @Override
-    public int hashCode() {
-        return toString().hashCode();
-    }
 }
@@ -44,9 +44,4 @@ public final class Positron extends SpecialNuclear {
         Positron p = (Positron) o;
         return p.getAtomicNumber().equals(getAtomicNumber()) && p.getMassNumber().equals(getMassNumber());
     }
-
-    @Override
-    public int hashCode() {
-        return toString().hashCode();
-    }
 }
@@ -44,9 +44,4 @@ public final class Proton extends SpecialNuclear {
         Proton p = (Proton) o;
         return p.getAtomicNumber().equals(getAtomicNumber()) && p.getMassNumber().equals(getMassNumber());
     }
-
-    @Override
-    public int hashCode() {
-        return toString().hashCode();
-    }
 }
@@ -0,0 +1,348 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A file of target answers compiled ahead of time, so that a freshly started checker does not parse them again.
+ * <p>
+ *     The file is written offline by {@link #compile(Path, Path)} from a list of target strings, and memory mapped by
+ *     {@link #open(Path)}. A lookup hashes the target string, finds its entry in an open-addressed table at the start
+ *     of the file, and reads only that entry, so the file is never read as a whole and every checker on a host shares
+ *     the same pages of it.
+ * <p>
+ *     All numbers in the file are big-endian. It holds:
+ *     <ul>
+ *         <li>A header: {@link #MAGIC}, {@link #VERSION}, the number of entries, and the number of slots in the
+ *         table, a power of two.</li>
+ *         <li>The table: for each slot, the hash of a target string and the offset of its entry, or 0 if the slot is
+ *         empty.</li>
+ *         <li>The entries, each as written by {@link CompiledTarget#writeTo(DataOutput)}, starting with the target
+ *         string.</li>
+ *     </ul>
+ *     Files of any other version are refused, so {@link #VERSION} must change whenever the layout of the file or of
+ *     its entries does.
+ */
+final class QuestionBank {
+
+    /**
+     * Logger for question banks being opened and compiled.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(QuestionBank.class);
+
+    /**
+     * First four bytes of every question bank, "CHQB".
+     */
+    static final int MAGIC = 0x43485142;
+
+    /**
+     * Version of the file layout.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * Bytes in the header.
+     */
+    private static final int HEADER_BYTES = 16;
+
+    /**
+     * Bytes in each slot of the table.
+     */
+    private static final int SLOT_BYTES = 8;
+
+    /**
+     * The mapped file.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Number of entries in the file.
+     */
+    private final int size;
+
+    /**
+     * Number of slots in the table, a power of two.
+     */
+    private final int slots;
+
+    /**
+     * Constructor method of QuestionBank.
+     *
+     * @param buffer The mapped file, with its header checked.
+     */
+    private QuestionBank(final ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.size = buffer.getInt(8);
+        this.slots = buffer.getInt(12);
+    }
+
+    /**
+     * Maps a question bank into memory.
+     *
+     * @param file The question bank.
+     * @return The question bank, ready for lookups.
+     * @throws IOException The file cannot be read, or is not a question bank of this version.
+     */
+    static QuestionBank open(final Path file) throws IOException {
+
+        ByteBuffer buffer;
+
+        // The mapping stays valid once the channel is closed.
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a question bank.");
+        } else if (buffer.getInt(4) != VERSION) {
+            throw new IOException(file + " is a question bank of version " + buffer.getInt(4) + ", not " + VERSION
+                    + ".");
+        }
+
+        int slots = buffer.getInt(12);
+
+        if (slots <= 0 || (slots & (slots - 1)) != 0 || HEADER_BYTES + (long) slots * SLOT_BYTES > buffer.capacity()) {
+            throw new IOException(file + " has a damaged table.");
+        }
+
+        return new QuestionBank(buffer);
+    }
+
+    /**
+     * Maps the question bank named by the system property <code>chemistry.questionBank</code>, if any.
+     *
+     * @return The question bank, or null if none is named or it cannot be opened.
+     */
+    static QuestionBank openConfigured() {
+
+        String name = System.getProperty("chemistry.questionBank");
+
+        if (name == null || name.isEmpty()) {
+            return null;
+        }
+
+        try {
+            QuestionBank bank = open(Paths.get(name));
+            LOG.info("Mapped question bank {} with {} targets", name, bank.size());
+            return bank;
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Cannot open question bank {}, so targets will be parsed on first use", name, e);
+            return null;
+        }
+    }
+
+    /**
+     * Looks up a target string.
+     *
+     * @param targetString A single mhchem statement in string form.
+     * @return The compiled target, or null if it is not in the bank.
+     */
+    CompiledTarget get(final String targetString) {
+
+        byte[] key = targetString.getBytes(StandardCharsets.UTF_8);
+        int hash = targetString.hashCode();
+
+        // Each lookup reads through its own view, so lookups on different threads do not disturb each other.
+        ByteBuffer in = buffer.duplicate();
+
+        int slot = slotOf(hash, slots);
+
+        for (int probes = 0; probes < slots; probes++) {
+
+            int offset = in.getInt(HEADER_BYTES + slot * SLOT_BYTES + 4);
+
+            if (offset == 0) {
+                return null;
+            } else if (in.getInt(HEADER_BYTES + slot * SLOT_BYTES) == hash && sameString(in, offset, key)) {
+                in.position(offset);
+                return CompiledTarget.readFrom(in);
+            }
+
+            slot = (slot + 1) & (slots - 1);
+        }
+
+        return null;
+    }
+
+    /**
+     * @return Number of targets in the bank.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Compiles a list of target strings into a question bank. Targets that cannot be compiled are left out, to be
+     * parsed on first use as usual. The file is replaced in one step, so checkers that already have it mapped keep
+     * the old one.
+     *
+     * @param targets File of target strings, one to a line.
+     * @param file Question bank to write.
+     * @return Number of targets written.
+     * @throws IOException A file cannot be read or written.
+     */
+    static int compile(final Path targets, final Path file) throws IOException {
+
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+
+        for (String target : Files.readAllLines(targets, StandardCharsets.UTF_8)) {
+
+            if (target.isEmpty() || entries.containsKey(target)) {
+                continue;
+            }
+
+            try {
+                ByteArrayOutputStream entry = new ByteArrayOutputStream();
+                CompiledTarget.compile(target).writeTo(new DataOutputStream(entry));
+                entries.put(target, entry.toByteArray());
+            } catch (Exception e) {
+                LOG.warn("Leaving out target={}: {}", RequestLog.quote(target), e.toString());
+            }
+        }
+
+        // At most half the slots are used, which keeps probes short and means every probe reaches an empty slot.
+        int slots = 2;
+
+        while (slots < 2 * entries.size()) {
+            slots <<= 1;
+        }
+
+        int[] hashes = new int[slots];
+        int[] offsets = new int[slots];
+        long offset = HEADER_BYTES + (long) slots * SLOT_BYTES;
+
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+
+            if (offset + entry.getValue().length > Integer.MAX_VALUE) {
+                throw new IOException("Question bank would be larger than 2GB.");
+            }
+
+            int hash = entry.getKey().hashCode();
+            int slot = slotOf(hash, slots);
+
+            while (offsets[slot] != 0) {
+                slot = (slot + 1) & (slots - 1);
+            }
+
+            hashes[slot] = hash;
+            offsets[slot] = (int) offset;
+            offset += entry.getValue().length;
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            out.writeInt(slots);
+
+            for (int slot = 0; slot < slots; slot++) {
+                out.writeInt(hashes[slot]);
+                out.writeInt(offsets[slot]);
+            }
+
+            for (byte[] entry : entries.values()) {
+                out.write(entry);
+            }
+        }
+
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LOG.info("Compiled {} targets into {}", entries.size(), file);
+
+        return entries.size();
+    }
+
+    /**
+     * Gives the first slot to look in for a hash.
+     *
+     * @param hash Hash of a target string.
+     * @param slots Number of slots in the table, a power of two.
+     * @return Index of the slot.
+     */
+    private static int slotOf(final int hash, final int slots) {
+        // String hashes differ mostly in their low bits, so mix in the high ones as well.
+        return (hash ^ (hash >>> 16)) & (slots - 1);
+    }
+
+    /**
+     * Checks whether the string at an offset has the given bytes.
+     *
+     * @param in The mapped file.
+     * @param offset Offset of a string written by {@link #writeString(DataOutput, String)}.
+     * @param key UTF-8 bytes to compare with.
+     * @return True if the string has exactly those bytes.
+     */
+    private static boolean sameString(final ByteBuffer in, final int offset, final byte[] key) {
+
+        if (in.getInt(offset) != key.length) {
+            return false;
+        }
+
+        for (int i = 0; i < key.length; i++) {
+            if (in.get(offset + 4 + i) != key[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Writes a string as its length in bytes then its UTF-8 bytes.
+     *
+     * @param out Output to write to.
+     * @param s The string.
+     * @throws IOException The output cannot be written.
+     */
+    static void writeString(final DataOutput out, final String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads back a string written by {@link #writeString(DataOutput, String)}.
+     *
+     * @param in Buffer positioned at the string, which is moved past it.
+     * @return The string.
+     */
+    static String readString(final ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads JSON request bodies in a single pass, straight from the request's input stream.
+ * <p>
+ *     Bodies are limited in size. A request that declares a larger Content-Length is refused before anything is read,
+ *     and one that sends more than it may, e.g. when chunked, is cut off as soon as it passes the limit. The default
+ *     limit of 64K can be changed with the system property <code>chemistry.request.maxBytes</code>.
+ */
+final class RequestBody {
+
+    /**
+     * Largest body accepted by default, in bytes.
+     */
+    static final int MAX_BYTES = Integer.getInteger("chemistry.request.maxBytes", 64 * 1024);
+
+    /**
+     * Constructor method of RequestBody.
+     * Set to private, because we don't want people to instantiate an utility class.
+     */
+    private RequestBody() {
+        // Nothing here.
+    }
+
+    /**
+     * Checks the declared size of a request body.
+     *
+     * @param request The request.
+     * @param maxBytes Largest body allowed, in bytes.
+     * @throws RequestTooLargeException The request declares a body larger than allowed.
+     */
+    private static void checkLength(final HttpServletRequest request, final long maxBytes)
+            throws RequestTooLargeException {
+        if (request.getContentLength() > maxBytes) {
+            throw new RequestTooLargeException(maxBytes);
+        }
+    }
+
+    /**
+     * Reads a request body as JSON.
+     *
+     * @param request The request.
+     * @param reader Shared reader for the type of body expected.
+     * @param maxBytes Largest body allowed, in bytes.
+     * @param <T> Type of body expected.
+     * @return The body.
+     * @throws RequestTooLargeException The body is larger than allowed.
+     * @throws IOException The body cannot be read, or is not valid JSON for the type expected.
+     */
+    static <T> T read(final HttpServletRequest request, final ObjectReader reader, final long maxBytes)
+            throws IOException {
+
+        checkLength(request, maxBytes);
+
+        return reader.readValue(new LimitedInputStream(request.getInputStream(), maxBytes));
+    }
+
+    /**
+     * Input stream that fails once more than a given number of bytes have been read.
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+
+        /**
+         * Largest number of bytes that may be read.
+         */
+        private final long maxBytes;
+
+        /**
+         * Number of bytes read so far.
+         */
+        private long count;
+
+        /**
+         * Constructor method of LimitedInputStream.
+         *
+         * @param in Stream to be read.
+         * @param maxBytes Largest number of bytes that may be read.
+         */
+        LimitedInputStream(final InputStream in, final long maxBytes) {
+            super(in);
+            this.maxBytes = maxBytes;
+        }
+
+        /**
+         * Counts bytes read, failing if there have been too many.
+         *
+         * @param n Number of bytes just read, or -1 at the end of the stream.
+         * @return The same number.
+         * @throws RequestTooLargeException More bytes have been read than allowed.
+         */
+        private int counted(final int n) throws RequestTooLargeException {
+
+            if (n > 0) {
+                count += n;
+
+                if (count > maxBytes) {
+                    throw new RequestTooLargeException(maxBytes);
+                }
+            }
+
+            return n;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            counted(b < 0 ? -1 : 1);
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            return counted(super.read(b, off, len));
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            long skipped = super.skip(n);
+            counted((int) Math.min(skipped, Integer.MAX_VALUE));
+            return skipped;
+        }
+    }
+}
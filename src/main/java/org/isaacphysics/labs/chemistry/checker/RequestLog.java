@@ -0,0 +1,100 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Per-request trace of what the servlets received and worked out, as <code>key=value</code> log lines.
+ * <p>
+ *     Tracing is off by default. Setting this logger to DEBUG traces every request, and the system property
+ *     <code>chemistry.trace.sampleEvery</code> traces about one request in that many, for use in production.
+ *     Servlets decide once per request whether to trace it, and only then build any log messages.
+ */
+final class RequestLog {
+
+    /**
+     * Logger the trace is written to.
+     */
+    static final Logger TRACE = LoggerFactory.getLogger(RequestLog.class);
+
+    /**
+     * Trace about one request in this many, or none if zero.
+     */
+    private static final int SAMPLE_EVERY = Integer.getInteger("chemistry.trace.sampleEvery", 0);
+
+    /**
+     * Constructor method of RequestLog.
+     * Set to private, because we don't want people to instantiate an utility class.
+     */
+    private RequestLog() {
+        // Nothing here.
+    }
+
+    /**
+     * Decides whether the current request should be traced.
+     *
+     * @return True if the request is to be traced.
+     */
+    static boolean sampled() {
+
+        if (TRACE.isDebugEnabled()) {
+            return true;
+        }
+
+        // A thread-local random number is used, so that sampling never contends on shared state.
+        return SAMPLE_EVERY > 0 && TRACE.isInfoEnabled()
+                && ThreadLocalRandom.current().nextInt(SAMPLE_EVERY) == 0;
+    }
+
+    /**
+     * Quotes a string for a trace line, escaping anything that could break the line up or fake another field.
+     *
+     * @param s String to be quoted, possibly null.
+     * @return The quoted string, or <code>null</code>.
+     */
+    static String quote(final String s) {
+
+        if (s == null) {
+            return "null";
+        }
+
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+
+        for (int i = 0; i < s.length(); i++) {
+
+            char c = s.charAt(i);
+
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else if (c == '\r') {
+                sb.append("\\r");
+            } else if (c < ' ') {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request body is bigger than allowed. Servlets answer it with 413 Payload Too Large.
+ */
+class RequestTooLargeException extends IOException {
+
+    /**
+     * Constructor method of RequestTooLargeException.
+     *
+     * @param maxBytes Largest body allowed, in bytes.
+     */
+    RequestTooLargeException(final long maxBytes) {
+        super("Request body is larger than " + maxBytes + " bytes.");
+    }
+}
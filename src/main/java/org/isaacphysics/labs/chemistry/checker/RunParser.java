@@ -17,22 +17,26 @@
 package org.isaacphysics.labs.chemistry.checker;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import java_cup.runtime.DefaultSymbolFactory;
 
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.StringReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Set;
 
 /**
  * The (original) main class. The class is mainly for testing purposes.
  */
 public final class RunParser {
 
+    /**
+     * Shared JSON mapper for reading requests. Safe for concurrent use once configured.
+     */
+    static final ObjectMapper MAPPER = new ObjectMapper();
+
     /**
      * Constructor method of RunParser.
      * Set to private, because we don't want people to instantiate an utility class.
@@ -48,12 +52,8 @@ public final class RunParser {
      * @return A list of statement parsed from argument.
      * @throws Exception Parser has trouble parsing a few terms.
      */
-    @SuppressWarnings({"deprecation", "unchecked"})
     private static ArrayList<Statement> stringParser(final String s) throws Exception {
-        Object output = new ChemistryParser(new ChemistryLexer(new StringReader(s)),
-                new DefaultSymbolFactory()).parse().value;
-
-        return (ArrayList<Statement>) output;
+        return StatementParser.parseAll(s);
     }
 
     /**
@@ -63,10 +63,11 @@ public final class RunParser {
      * @throws Exception Parser has trouble parsing a few terms.
      */
     public static void main(final String[] args) throws Exception {
-        //noinspection deprecation (We know DefaultSymbolFactory is depracated!)
-        @SuppressWarnings("unchecked")
-        ArrayList<Statement> statements = (ArrayList<Statement>) new ChemistryParser(new ChemistryLexer(
-            new InputStreamReader(new FileInputStream("src/test.txt")))).parse().value;
+        ArrayList<Statement> statements;
+
+        try (Reader reader = new InputStreamReader(new FileInputStream("src/test.txt"))) {
+            statements = StatementParser.parseAll(reader);
+        }
         System.err.flush();
         System.out.flush();
         System.out.println();
@@ -145,119 +146,10 @@ public final class RunParser {
      */
     static String parseFromString(final String statementString) {
         try {
-            @SuppressWarnings("unchecked, deprecation")
-            ArrayList<Statement> statements = (ArrayList<Statement>) new ChemistryParser(
-                    new ChemistryLexer(new StringReader(statementString))).parse().value;
-
-            Statement statement = statements.get(0);
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.enable(SerializationFeature.INDENT_OUTPUT);
-            ObjectNode node = mapper.createObjectNode();
-
-            if (statement instanceof ExpressionStatement) {
-
-                ExpressionStatement exprStatement = (ExpressionStatement) statement;
-                node.put("type", "expression");
-                node.put("input", statementString);
-                node.put("result", exprStatement.toString());
-                node.put("containsError", exprStatement.containsError());
-                node.put("charge", exprStatement.getCharge().toString());
-                HashMap<String, Fraction> atomCount = exprStatement.getAtomCount();
-                ObjectNode atomCountNode = node.putObject("atom_count");
-
-                for (String element : atomCount.keySet()) {
-                    atomCountNode.put(element, atomCount.get(element).toString());
-                }
-
-            } else if (statement instanceof EquationStatement) {
-
-                EquationStatement eqnStatement = (EquationStatement) statement;
-                node.put("type", "equation");
-                node.put("input", statementString);
-                node.put("result", eqnStatement.toString());
-                node.put("containsError", eqnStatement.containsError());
-                node.put("balanced", eqnStatement.isBalanced());
-                node.put("balancedAtoms", eqnStatement.isBalancedAtoms());
-                node.put("balancedCharge", eqnStatement.isBalancedCharge());
-
-                ObjectNode leftHandSide = node.putObject("left");
-                Expression left = eqnStatement.getLeftExpression();
-                leftHandSide.put("containsError", left.containsError());
-                leftHandSide.put("charge", left.getCharge().toString());
-                HashMap<String, Fraction> atomCountLeft = left.getAtomCount();
-                ObjectNode atomCountLeftNode = leftHandSide.putObject("atom_count");
-
-                for (String element : atomCountLeft.keySet()) {
-                    atomCountLeftNode.put(element, atomCountLeft.get(element).toString());
-                }
-
-                ObjectNode rightHandSide = node.putObject("right");
-                Expression right = eqnStatement.getRightExpression();
-                rightHandSide.put("containsError", right.containsError());
-                rightHandSide.put("charge", right.getCharge().toString());
-                HashMap<String, Fraction> atomCountRight = right.getAtomCount();
-                ObjectNode atomCountRightNode = rightHandSide.putObject("atom_count");
-
-                for (String element : atomCountRight.keySet()) {
-                    atomCountRightNode.put(element, atomCountRight.get(element).toString());
-                }
-
-            } else if (statement instanceof NuclearExpressionStatement) {
-
-                NuclearExpressionStatement exprStatement = (NuclearExpressionStatement) statement;
-                node.put("type", "nuclearexpression");
-                node.put("input", statementString);
-                node.put("result", exprStatement.toString());
-                node.put("containsError", exprStatement.containsError());
-                node.put("massCount", exprStatement.getMassCount().toString());
-                node.put("atomCount", exprStatement.getAtomicCount().toString());
-
-                HashMap<String, Fraction> atomCount = exprStatement.getAtomCount();
-                ObjectNode atomCountNode = node.putObject("atom_count");
-
-                for (String element : atomCount.keySet()) {
-                    atomCountNode.put(element, atomCount.get(element).toString());
-                }
-
-            } else {
-
-                // Statement is an instance of NuclearEquationStatement
-                NuclearEquationStatement eqnStatement = (NuclearEquationStatement) statement;
-                node.put("type", "nuclearequation");
-                node.put("input", statementString);
-                node.put("result", eqnStatement.toString());
-                node.put("containsError", eqnStatement.containsError());
-                node.put("balanced", eqnStatement.isBalanced());
-                node.put("balancedAtom", eqnStatement.isBalancedAtom());
-                node.put("balancedMass", eqnStatement.isBalancedMass());
-
-                ObjectNode leftHandSide = node.putObject("left");
-                Expression left = eqnStatement.getLeftExpression();
-                leftHandSide.put("containsError", left.containsError());
-                leftHandSide.put("massCount", left.getMassCount().toString());
-                leftHandSide.put("atomCount", left.getAtomicCount().toString());
-                HashMap<String, Fraction> atomCountLeft = left.getAtomCount();
-                ObjectNode atomCountLeftNode = leftHandSide.putObject("atom_count");
-
-                for (String element : atomCountLeft.keySet()) {
-                    atomCountLeftNode.put(element, atomCountLeft.get(element).toString());
-                }
-
-                ObjectNode rightHandSide = node.putObject("right");
-                Expression right = eqnStatement.getRightExpression();
-                rightHandSide.put("containsError", right.containsError());
-                rightHandSide.put("massCount", right.getMassCount().toString());
-                rightHandSide.put("atomCount", right.getAtomicCount().toString());
-                HashMap<String, Fraction> atomCountRight = right.getAtomCount();
-                ObjectNode atomCountRightNode = rightHandSide.putObject("atom_count");
-
-                for (String element : atomCountRight.keySet()) {
-                    atomCountRightNode.put(element, atomCountRight.get(element).toString());
-                }
-            }
-            return mapper.writeValueAsString(node);
-        } catch (Exception e) {
-            return "{\"input\" : \"" + statementString + "\", \"error\" : true}";
+            return JsonOutput.toString(StatementReport.of(statementString), false);
+        } catch (IOException e) {
+            // Writing to a string does not do any I/O.
+            throw new UncheckedIOException(e);
         }
     }
 
@@ -302,98 +194,153 @@ public final class RunParser {
      */
     public static String check(final String testString, final String targetString) throws Exception {
 
-        System.out.println("Parse Expressions");
-        @SuppressWarnings("unchecked, deprecation")
-            ArrayList<Statement> testStatements = (ArrayList<Statement>) new ChemistryParser(
-                    new ChemistryLexer(new StringReader(testString))).parse().value;
-
-        @SuppressWarnings("unchecked, deprecation")
-            ArrayList<Statement> targetStatements = (ArrayList<Statement>) new ChemistryParser(
-                    new ChemistryLexer(new StringReader(targetString))).parse().value;
-
-        Statement testStatement = testStatements.get(0);
-        Statement targetStatement = targetStatements.get(0);
-
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.enable(SerializationFeature.INDENT_OUTPUT);
-        ObjectNode node = mapper.createObjectNode();
-        node.put("testString", testString);
-        node.put("targetString", targetString);
-        node.put("test", testStatement.toString());
-        node.put("target", targetStatement.toString());
-        System.out.println("Parsed target: '" + targetStatement.toString() + "'");
-        System.out.println("Parsed test: '" + testStatement.toString() + "'");
-
-        if (targetStatement.containsError()) {
-            System.out.println("ERROR: Trusted string contains error!");
-            System.out.println("\t\"" + targetString + "\"");
-            System.out.println("\t\"" + targetStatement.toString() + "\"");
+        // Targets come from a small, trusted question bank, so are parsed once and cached.
+        CompiledTarget target = TargetCache.get(targetString);
+
+        return JsonOutput.toString(CheckCache.get(testString, target, CheckResult.Field.ALL), false);
+    }
+
+    /**
+     * Checks user input against an already compiled target, giving the result described in
+     * {@link #check(String, String)}.
+     *
+     * @param testString User-inputted string
+     * @param compiledTarget Target to be matched with.
+     * @return Result of the matching, ready to be written out.
+     * @throws Exception Parser having trouble reading the user input.
+     */
+    static CheckResult checkResult(final String testString, final CompiledTarget compiledTarget) throws Exception {
+        return checkResult(testString, compiledTarget, CheckResult.Field.ALL);
+    }
+
+    /**
+     * Checks user input against an already compiled target, working out only the fields asked for.
+     * <p>
+     *     Strict equality is checked first, as it fails fast on the hash of each expression. When it holds, every
+     *     weaker flag follows from it, and balance is read off the target. Otherwise the answer is only matched
+     *     against the target's terms if a field needs it.
+     *
+     * @param testString User-inputted string
+     * @param compiledTarget Target to be matched with.
+     * @param fields Fields to work out. The strings checked and their types are always given.
+     * @return Result of the matching, ready to be written out.
+     * @throws Exception Parser having trouble reading the user input.
+     */
+    static CheckResult checkResult(final String testString, final CompiledTarget compiledTarget,
+                                   final Set<CheckResult.Field> fields) throws Exception {
+
+        Statement testStatement = StatementParser.parse(testString);
+
+        long start = System.nanoTime();
+        String targetString = compiledTarget.getSource();
+        FlatStatement targetFlat = compiledTarget.getFlat();
+        FlatStatement testFlat = FlatStatement.of(testStatement);
+        byte targetType = targetFlat.getType();
+
+        CheckResult.Builder result = new CheckResult.Builder(testString, targetString, testStatement.toString(),
+                compiledTarget.getCanonical());
+
+        result.setContainsError(testStatement.containsError());
+        result.setTypeMismatch(targetType != testFlat.getType());
+        result.setExpectedType(compiledTarget.getType());
+        result.setReceivedType(CompiledTarget.typeOf(testStatement));
+
+        boolean equal = targetFlat.equals(testFlat);
+        TargetMatcher.Match match = null;
+
+        if (!equal && needsMatch(fields)) {
+            match = compiledTarget.getMatcher().match(testStatement, testFlat);
         }
-        node.put("containsError", testStatement.containsError());
-        node.put("equal", targetStatement.equals(testStatement));
-        node.put("typeMismatch", !targetStatement.getClass().equals(testStatement.getClass()));
-        node.put("expectedType", targetStatement.getClass().getSimpleName().replace("Statement", "").toLowerCase());
-        node.put("receivedType", testStatement.getClass().getSimpleName().replace("Statement", "").toLowerCase());
-        node.put("weaklyEquivalent", targetStatement.weaklyEquivalent(testStatement));
-        System.out.println("Equality:");
-        System.out.println("\tEqual: " + node.get("equal"));
-        System.out.println("\tWeakly equivalent: " + node.get("weaklyEquivalent"));
-        System.out.println("\tContains Error: " + node.get("containsError"));
 
-        if (targetStatement instanceof ExpressionStatement) {
+        if (fields.contains(CheckResult.Field.EQUAL)) {
+            result.setEqual(equal);
+        }
 
-            ExpressionStatement target = (ExpressionStatement) targetStatement;
+        if (fields.contains(CheckResult.Field.WEAKLY_EQUIVALENT)) {
+            result.setWeaklyEquivalent(equal || match.isWeaklyEquivalent());
+        }
 
-            node.put("sameCoefficient", target.sameCoefficients(testStatement));
-            node.put("sameState", target.sameStateSymbols(testStatement));
+        if (targetType == FlatStatement.EXPRESSION || targetType == FlatStatement.EQUATION) {
 
-        } else if (targetStatement instanceof EquationStatement) {
+            if (fields.contains(CheckResult.Field.SAME_COEFFICIENT)) {
+                result.setSameCoefficient(equal || match.hasSameCoefficients());
+            }
 
-            EquationStatement target = (EquationStatement) targetStatement;
+            if (fields.contains(CheckResult.Field.SAME_STATE)) {
+                result.setSameState(equal || match.hasSameStates());
+            }
+        }
 
-            node.put("sameCoefficient", target.sameCoefficients(testStatement));
-            node.put("sameState", target.sameStateSymbols(testStatement));
+        if (targetType == FlatStatement.EQUATION && testStatement instanceof EquationStatement) {
 
-            if (testStatement instanceof EquationStatement) {
+            EquationStatement test = (EquationStatement) testStatement;
 
-                EquationStatement test = (EquationStatement) testStatement;
+            // Equal equations have the same sides, so are balanced exactly when the target is.
+            if (fields.contains(CheckResult.Field.SAME_ARROW)) {
+                result.setSameArrow(equal || targetFlat.getArrow() == testFlat.getArrow());
+            }
 
-                node.put("sameArrow", target.getArrow().equals(test.getArrow()));
-                node.put("isBalanced", test.isBalanced());
-                node.put("balancedAtoms", test.isBalancedAtoms());
-                node.put("balancedCharge", test.isBalancedCharge());
+            if (fields.contains(CheckResult.Field.IS_BALANCED)) {
+                result.setBalanced(equal ? compiledTarget.isBalanced() : test.isBalanced());
             }
 
-        } else if (targetStatement instanceof NuclearExpressionStatement) {
+            if (fields.contains(CheckResult.Field.BALANCED_ATOMS)) {
+                result.setBalancedAtoms(equal ? compiledTarget.isBalancedAtoms() : test.isBalancedAtoms());
+            }
 
-            if (testStatement instanceof NuclearExpressionStatement) {
-                NuclearExpressionStatement test = (NuclearExpressionStatement) testStatement;
+            if (fields.contains(CheckResult.Field.BALANCED_CHARGE)) {
+                result.setBalancedCharge(equal ? compiledTarget.isBalancedCharge() : test.isBalancedCharge());
+            }
+
+        } else if (targetType == FlatStatement.NUCLEAR_EXPRESSION
+                && testStatement instanceof NuclearExpressionStatement) {
 
-                node.put("validAtomicNumber", test.isValid());
+            if (fields.contains(CheckResult.Field.VALID_ATOMIC_NUMBER)) {
+                result.setValidAtomicNumber(((NuclearExpressionStatement) testStatement).isValid());
             }
-        } else {
 
-            // instanceof NuclearEquationStatement
-            if (testStatement instanceof NuclearEquationStatement) {
+        } else if (targetType == FlatStatement.NUCLEAR_EQUATION
+                && testStatement instanceof NuclearEquationStatement) {
 
-                NuclearEquationStatement test = (NuclearEquationStatement) testStatement;
+            NuclearEquationStatement test = (NuclearEquationStatement) testStatement;
 
-                node.put("isBalanced", test.isBalanced());
-                node.put("balancedAtomic", test.isBalancedAtom());
-                node.put("balancedMass", test.isBalancedMass());
-                node.put("validAtomicNumber", test.isValid());
+            if (fields.contains(CheckResult.Field.IS_BALANCED)) {
+                result.setBalanced(test.isBalanced());
+            }
+
+            if (fields.contains(CheckResult.Field.BALANCED_ATOMIC)) {
+                result.setBalancedAtomic(test.isBalancedAtom());
+            }
+
+            if (fields.contains(CheckResult.Field.BALANCED_MASS)) {
+                result.setBalancedMass(test.isBalancedMass());
             }
-        }
 
-        ArrayNode array = mapper.createArrayNode();
+            if (fields.contains(CheckResult.Field.VALID_ATOMIC_NUMBER)) {
+                result.setValidAtomicNumber(test.isValid());
+            }
+        }
 
-        for (Term t: targetStatement.getWrongTerms(testStatement)) {
-            array.add(t.toString());
+        if (fields.contains(CheckResult.Field.WRONG_TERMS)) {
+            result.setWrongTerms(equal ? Collections.<Term>emptyList() : match.getWrongTerms());
         }
 
-        node.putArray("wrongTerms").addAll(array);
+        Metrics.Phase.COMPARE.recordSince(start);
+
+        return result.build();
+    }
 
-        return mapper.writeValueAsString(node);
+    /**
+     * Checks whether any of the fields asked for needs the answer matched term by term against the target.
+     *
+     * @param fields Fields to work out.
+     * @return True if the terms must be matched, unless the answer is strictly equal to the target.
+     */
+    private static boolean needsMatch(final Set<CheckResult.Field> fields) {
+        return fields.contains(CheckResult.Field.WEAKLY_EQUIVALENT)
+                || fields.contains(CheckResult.Field.SAME_COEFFICIENT)
+                || fields.contains(CheckResult.Field.SAME_STATE)
+                || fields.contains(CheckResult.Field.WRONG_TERMS);
     }
 
     /**
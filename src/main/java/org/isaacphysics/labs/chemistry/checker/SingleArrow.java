@@ -26,7 +26,7 @@ final class SingleArrow extends AbstractArrow {
     /**
      * The single class instance for SingleArrow.
      */
-    private static SingleArrow singleton = null;
+    private static final SingleArrow singleton = new SingleArrow();
 
     /**
      * Constructor function for SingleArrow.
@@ -40,11 +40,6 @@ final class SingleArrow extends AbstractArrow {
      * @return Class instance of SingleArrow
      */
     static SingleArrow getSingleArrow() {
-
-        if (singleton == null) {
-            singleton = new SingleArrow();
-        }
-
         return singleton;
     }
 
@@ -16,7 +16,7 @@
 
 package org.isaacphysics.labs.chemistry.checker;
 
-import java.util.HashMap;
+import java.util.Objects;
 
 /**
  * Base class for special types of nuclear particles, such as electrons, gamma rays.
@@ -28,47 +28,47 @@ public abstract class SpecialNuclear extends Nuclear {
     /**
      * Mass number (correct answer).
      */
-    private Integer mass;
+    private final Integer mass;
 
     /**
      * Atomic number (correct answer).
      */
-    private Integer atom;
+    private final Integer atom;
 
     /**
      * Actual atomic number (user input).
      */
-    private Integer actualAtom;
+    private final Integer actualAtom;
 
     /**
      * Actual mass number (user input).
      */
-    private Integer actualMass;
+    private final Integer actualMass;
 
     /**
      * Name of subparticle.
      */
-    private String name;
+    private final String name;
 
     /**
      * Syntax of subparticle.
      */
-    private String syntax;
+    private final String syntax;
 
     /**
      * Abbreviation of subparticle.
      */
-    private String abbr;
+    private final String abbr;
 
     /**
      * Fraction form of charge.
      */
-    private Fraction chargeFrac;
+    private final Fraction chargeFrac;
 
     /**
-     * Saved atom count.
+     * Hash code, computed once as particles never change.
      */
-    private static HashMap<String, Fraction> atomCount = new HashMap<>();
+    private final int hash;
 
     /**
      * Constructor method of SpecialNuclear.
@@ -90,7 +90,11 @@ public abstract class SpecialNuclear extends Nuclear {
         this.name = name;
         this.syntax = syntax;
         this.abbr = abbr;
-        this.chargeFrac = new Fraction(charge, 1);
+        this.chargeFrac = Fraction.valueOf(charge);
+
+        int h = syntax.hashCode();
+        h = 31 * h + Objects.hashCode(actualMass);
+        this.hash = 31 * h + Objects.hashCode(actualAtom);
     }
 
     @Override
@@ -109,8 +113,8 @@ public abstract class SpecialNuclear extends Nuclear {
     }
 
     @Override
-    public HashMap<String, Fraction> getAtomCount() {
-        return atomCount;
+    public AtomVector getAtomVector() {
+        return AtomVector.EMPTY;
     }
 
     @Override
@@ -122,14 +126,14 @@ public abstract class SpecialNuclear extends Nuclear {
     }
 
     @Override
-    public String getDotId() {
-        return syntax + "_" + getdotId();
+    public String getDotId(final DotIds ids) {
+        return syntax + "_" + ids.of(this);
     }
 
     @Override
-    public String getDotCode() {
+    public String getDotCode(final DotIds ids) {
         return "\t"
-                + getDotId()
+                + getDotId(ids)
                 + " [label=\"{&zwj;&zwj;&zwj;&zwj;" + name + "&zwnj;|\\n"
                 + getDotString()
                 + "\\n\\n|&zwj;&zwj;&zwj;atomic #&zwnj;: " + actualAtom
@@ -147,8 +151,13 @@ public abstract class SpecialNuclear extends Nuclear {
         return actualAtom.equals(atom) && actualMass.equals(mass);
     }
 
+    @Override
+    void flatten(final FlatStatement.Builder builder) {
+        builder.particle(syntax, actualMass, actualAtom);
+    }
+
     @Override
     public int hashCode() {
-        return toString().hashCode();
+        return hash;
     }
 }
@@ -68,7 +68,5 @@ abstract class Statement {
     public abstract ArrayList<Term> getWrongTerms(Statement e);
 
     @Override
-    public int hashCode() {
-        return toString().hashCode();
-    }
+    public abstract int hashCode();
 }
\ No newline at end of file
@@ -0,0 +1,411 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import java_cup.runtime.Scanner;
+import java_cup.runtime.Symbol;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Single entry point for turning mhchem strings into statements.
+ * <p>
+ *     Every thread keeps one lexer, one parser and one reader, and resets them for each new string rather than
+ *     building new ones. The lexer's 16K character buffer and the parser's stack are allocated once per thread, so in
+ *     steady state a parse only allocates the tokens and the syntax tree itself.
+ * <p>
+ *     Input that cannot be parsed gives a failed {@link ParseResult}, holding the position of the first syntax error
+ *     and the tokens expected there. Nothing is thrown, and no stack trace is filled in, on the way.
+ * <p>
+ *     Strings are held to the {@link ParseLimits} on length, tokens, bracket depth and CPU time, and each limit
+ *     broken gives its own syntax error. The CPU time limit only covers lexing and parsing, and the clock starts
+ *     once this thread's parser is ready. Input read from a reader is trusted, and only its numbers are limited.
+ * <p>
+ *     The whole input is split into tokens before parsing starts, so that lexing and parsing can be timed
+ *     separately in {@link Metrics}.
+ */
+final class StatementParser {
+
+    /**
+     * Parser instance owned by each thread.
+     */
+    private static final ThreadLocal<StatementParser> PER_THREAD = ThreadLocal.withInitial(StatementParser::new);
+
+    /**
+     * Statements parsed once when the class is loaded, using every kind of term the grammar has.
+     */
+    private static final String WARM_UP = "2CuSO4.5H2O(s) + \\frac{1}{2}O2(g) -> [Cu(NH3)4]^{2+}(aq) + e^{-} + ERROR;"
+            + "^{238}_{92}U -> ^{234}_{90}Th + ^{4}_{2}\\alphaparticle + ^{0}_{-1}\\electron";
+
+    static {
+        // A new JVM spends far longer loading and initialising the lexer, parser and syntax tree classes than any
+        // string takes to parse. Doing it here, before any string is timed, keeps that out of the CPU budget.
+        try {
+            new StatementParser().run(new StringReader(WARM_UP), null, ParseLimits.NO_DEADLINE);
+        } catch (Exception e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Reader pointed at each new string in turn.
+     */
+    private final StringSource source = new StringSource();
+
+    /**
+     * Lexer, reset onto the source for every parse.
+     */
+    private final ChemistryLexer lexer = new ChemistryLexer(source);
+
+    /**
+     * Tokens of the input being parsed.
+     */
+    private final TokenBuffer tokens = new TokenBuffer();
+
+    /**
+     * Parser reading tokens from the buffer.
+     */
+    @SuppressWarnings("deprecation")
+    private final ChemistryParser parser = new ChemistryParser(tokens);
+
+    /**
+     * Whether this instance is in the middle of a parse. Guards against a parse started from inside another one on
+     * the same thread, which then gets its own instance instead of clobbering the outer one.
+     */
+    private boolean busy;
+
+    /**
+     * Constructor method of StatementParser. Instances are only made per thread, or for a nested parse.
+     */
+    private StatementParser() {
+        // Nothing here.
+    }
+
+    /**
+     * Parses a string, giving either the statements in it or the syntax error that stopped the parse. Bad input
+     * gives a failed result rather than an exception.
+     *
+     * @param s The string to be parsed, statements separated by semicolons.
+     * @return The statements parsed from the string, or why they could not be.
+     * @throws Exception Parser failed for some reason other than bad input.
+     */
+    static ParseResult tryParseAll(final String s) throws Exception {
+
+        if (s.length() > ParseLimits.MAX_LENGTH) {
+            return ParseResult.failure(new SyntaxError("Input too long.", ParseLimits.MAX_LENGTH, null, -1));
+        }
+
+        StatementParser p = instance();
+
+        p.source.reset(s);
+        return p.run(p.source, s, ParseLimits.deadline());
+    }
+
+    /**
+     * Parses a string, and returns the statements in it.
+     *
+     * @param s The string to be parsed, statements separated by semicolons.
+     * @return A list of statements parsed from the string.
+     * @throws Exception Parser has trouble parsing the string, e.g. a {@link ParseException}.
+     */
+    static ArrayList<Statement> parseAll(final String s) throws Exception {
+        return tryParseAll(s).orThrow();
+    }
+
+    /**
+     * Parses everything a reader supplies, and returns the statements in it.
+     *
+     * @param reader Reader supplying statements separated by semicolons. It is not closed.
+     * @return A list of statements parsed from the reader.
+     * @throws Exception Parser has trouble parsing the input, e.g. a {@link ParseException}.
+     */
+    static ArrayList<Statement> parseAll(final Reader reader) throws Exception {
+        return instance().run(reader, null, ParseLimits.NO_DEADLINE).orThrow();
+    }
+
+    /**
+     * Parses a string holding a single statement.
+     *
+     * @param s The string to be parsed.
+     * @return The first statement parsed from the string.
+     * @throws Exception Parser has trouble parsing the string, e.g. a {@link ParseException}.
+     */
+    static Statement parse(final String s) throws Exception {
+        return parseAll(s).get(0);
+    }
+
+    /**
+     * @return This thread's instance, or a new one if this thread's instance is already in the middle of a parse.
+     */
+    private static StatementParser instance() {
+
+        StatementParser p = PER_THREAD.get();
+
+        return p.busy ? new StatementParser() : p;
+    }
+
+    /**
+     * Resets the lexer onto a reader and runs the parser over it.
+     *
+     * @param reader Reader supplying the input.
+     * @param input The input as a string, to quote tokens in error from, or null if the input is read from a file
+     *              and so not held to the limits on parsing work.
+     * @param deadline CPU time by which the parse must be done, if the input is held to the limits.
+     * @return The statements parsed from the reader, or why they could not be.
+     * @throws Exception Parser failed for some reason other than bad input.
+     */
+    @SuppressWarnings("unchecked")
+    private ParseResult run(final Reader reader, final String input, final long deadline) throws Exception {
+
+        busy = true;
+
+        try {
+            // yyreset clears all lexer state, and parse() clears the parser's stack, so nothing leaks between calls.
+            long start = System.nanoTime();
+            lexer.yyreset(reader);
+            parser.clearErrors();
+
+            try {
+                SyntaxError limit = tokens.fill(lexer, input != null, deadline);
+
+                if (limit != null) {
+                    return ParseResult.failure(limit);
+                }
+            } catch (ParseAbort e) {
+                // The lexer only stops on a number too large, which is then its current token.
+                SyntaxError error = new SyntaxError("Number too large.", lexer.tokenStart(), lexer.yytext(), -1);
+                return ParseResult.failure(error);
+            } finally {
+                Metrics.Phase.LEX.recordSince(start);
+            }
+
+            start = System.nanoTime();
+
+            try {
+                ArrayList<Statement> statements = (ArrayList<Statement>) parser.parse().value;
+                return ParseResult.success(statements, firstError(input));
+            } catch (ParseAbort e) {
+                // Either the token buffer ran out of time, or the parser could not recover from a syntax error.
+                SyntaxError limit = tokens.getLimitBroken();
+                return ParseResult.failure(limit != null ? limit : firstError(input));
+            } finally {
+                Metrics.Phase.PARSE.recordSince(start);
+            }
+        } finally {
+            busy = false;
+            source.reset("");
+            tokens.clear();
+        }
+    }
+
+    /**
+     * Describes the first syntax error the parser found.
+     *
+     * @param input The input as a string, to quote the token in error from, or null if not known.
+     * @return The syntax error, or null if there was none.
+     */
+    private SyntaxError firstError(final String input) {
+
+        Symbol token = parser.getFirstErrorToken();
+
+        if (token == null) {
+            return null;
+        } else if (token.sym == sym.EOF) {
+            return new SyntaxError("Unexpected end of input.", token.left, null, parser.getFirstErrorState());
+        }
+
+        String text = input == null ? null : input.substring(token.left, token.right);
+        return new SyntaxError("Unexpected token.", token.left, text, parser.getFirstErrorState());
+    }
+
+    /**
+     * Scanner replaying tokens read ahead from the lexer. The array grows to fit the longest input seen, and is
+     * reused afterwards.
+     */
+    private static final class TokenBuffer implements Scanner {
+
+        /**
+         * Tokens read, the last one being the end of input.
+         */
+        private Symbol[] symbols = new Symbol[64];
+
+        /**
+         * Number of tokens read.
+         */
+        private int size;
+
+        /**
+         * Index of the next token to be handed to the parser.
+         */
+        private int pos;
+
+        /**
+         * Whether the input is held to the {@link ParseLimits}.
+         */
+        private boolean bounded;
+
+        /**
+         * CPU time by which the input must be parsed.
+         */
+        private long deadline;
+
+        /**
+         * The limit that stopped the parser, or null if none did.
+         */
+        private SyntaxError limitBroken;
+
+        /**
+         * Reads every token from a lexer, up to and including the end of input, unless a limit is broken first.
+         *
+         * @param lexer Lexer reset onto the input.
+         * @param limited Whether the input is held to the {@link ParseLimits}.
+         * @param until CPU time by which the input must be parsed, if it is held to the limits.
+         * @return The limit broken, or null if all the tokens were read.
+         * @throws IOException Lexer failed to read the input.
+         */
+        SyntaxError fill(final ChemistryLexer lexer, final boolean limited, final long until) throws IOException {
+
+            size = 0;
+            pos = 0;
+            bounded = limited;
+            deadline = until;
+            limitBroken = null;
+
+            int depth = 0;
+            Symbol token;
+
+            do {
+                token = lexer.next_token();
+                token.left = lexer.tokenStart();
+                token.right = lexer.tokenEnd();
+
+                if (bounded) {
+
+                    if (token.sym == sym.LPAREN || token.sym == sym.LSQUARE) {
+                        depth++;
+                    } else if ((token.sym == sym.RPAREN || token.sym == sym.RSQUARE) && depth > 0) {
+                        depth--;
+                    }
+
+                    if (depth > ParseLimits.MAX_DEPTH) {
+                        return new SyntaxError("Brackets nested too deeply.", token.left, lexer.yytext(), -1);
+                    } else if (size == ParseLimits.MAX_TOKENS && token.sym != sym.EOF) {
+                        return new SyntaxError("Too many tokens.", token.left, lexer.yytext(), -1);
+                    } else if (size % ParseLimits.CLOCK_INTERVAL == 0 && size > 0
+                            && ParseLimits.isPast(deadline)) {
+                        return new SyntaxError("Took too long to parse.", token.left, lexer.yytext(), -1);
+                    }
+                }
+
+                if (size == symbols.length) {
+                    symbols = Arrays.copyOf(symbols, size * 2);
+                }
+
+                symbols[size++] = token;
+            } while (token.sym != sym.EOF);
+
+            return null;
+        }
+
+        /**
+         * @return The limit that stopped the parser, or null if none did.
+         */
+        SyntaxError getLimitBroken() {
+            return limitBroken;
+        }
+
+        /**
+         * Drops the tokens, so that they can be garbage collected.
+         */
+        void clear() {
+            Arrays.fill(symbols, 0, size, null);
+            size = 0;
+            pos = 0;
+        }
+
+        @Override
+        public Symbol next_token() {
+
+            if (pos < size) {
+
+                if (bounded && pos % ParseLimits.CLOCK_INTERVAL == 0 && pos > 0
+                        && ParseLimits.isPast(deadline)) {
+                    limitBroken = new SyntaxError("Took too long to parse.", symbols[pos].left, null, -1);
+                    throw ParseAbort.INSTANCE;
+                }
+
+                return symbols[pos++];
+            }
+
+            // The parser may ask again after the end of input. Like the lexer, give a new end symbol each time, as
+            // CUP rejects a symbol it has already seen.
+            Symbol end = symbols[size - 1];
+            return new Symbol(sym.EOF, end.left, end.right);
+        }
+    }
+
+    /**
+     * Reader over a string that can be pointed at a new string, so that one instance serves every parse.
+     */
+    private static final class StringSource extends Reader {
+
+        /**
+         * String being read.
+         */
+        private String s = "";
+
+        /**
+         * Index of the next character to be read.
+         */
+        private int pos;
+
+        /**
+         * Starts reading a new string from its beginning.
+         *
+         * @param str The string to be read.
+         */
+        void reset(final String str) {
+            s = str;
+            pos = 0;
+        }
+
+        @Override
+        public int read(final char[] cbuf, final int off, final int len) {
+
+            if (len == 0) {
+                return 0;
+            } else if (pos >= s.length()) {
+                return -1;
+            }
+
+            int n = Math.min(len, s.length() - pos);
+            s.getChars(pos, pos + n, cbuf, off);
+            pos += n;
+
+            return n;
+        }
+
+        @Override
+        public void close() {
+            // Nothing to release; the source is reused.
+        }
+    }
+}
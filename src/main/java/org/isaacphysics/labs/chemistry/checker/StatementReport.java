@@ -0,0 +1,370 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Detailed description of a single parsed statement, as given by {@link RunParser#parseFromString(String)}.
+ * <p>
+ *     Everything that might fail is worked out when the report is made, so that writing it out never stops half way.
+ *     A statement that cannot be parsed or analysed gives a report of just the input and an error flag. Either way,
+ *     the first syntax error in the input is reported too, if there is one.
+ */
+final class StatementReport implements JsonResult {
+
+    /**
+     * The string that was parsed.
+     */
+    private final String input;
+
+    /**
+     * Type of statement, e.g. "equation", or null if the input could not be handled.
+     */
+    private final String type;
+
+    /**
+     * Parsed statement, in mhchem format.
+     */
+    private final String result;
+
+    /**
+     * Whether the statement contains error terms.
+     */
+    private final boolean containsError;
+
+    /**
+     * Balance flags of an equation, by name, in the order they are written. Empty for expressions.
+     */
+    private final Map<String, Boolean> balance;
+
+    /**
+     * Counts of a whole expression, or null for an equation.
+     */
+    private final Part whole;
+
+    /**
+     * Counts of the left hand side of an equation, or null for an expression.
+     */
+    private final Part left;
+
+    /**
+     * Counts of the right hand side of an equation, or null for an expression.
+     */
+    private final Part right;
+
+    /**
+     * First syntax error in the input, or null if there was none.
+     */
+    private final SyntaxError syntaxError;
+
+    /**
+     * Constructor method of StatementReport.
+     *
+     * @param input The string that was parsed.
+     * @param type Type of statement, or null if the input could not be handled.
+     * @param result Parsed statement, in mhchem format.
+     * @param containsError Whether the statement contains error terms.
+     * @param balance Balance flags of an equation.
+     * @param whole Counts of a whole expression.
+     * @param left Counts of the left hand side of an equation.
+     * @param right Counts of the right hand side of an equation.
+     * @param syntaxError First syntax error in the input, or null if there was none.
+     */
+    private StatementReport(final String input, final String type, final String result, final boolean containsError,
+                            final Map<String, Boolean> balance, final Part whole, final Part left, final Part right,
+                            final SyntaxError syntaxError) {
+        this.input = input;
+        this.type = type;
+        this.result = result;
+        this.containsError = containsError;
+        this.balance = balance;
+        this.whole = whole;
+        this.left = left;
+        this.right = right;
+        this.syntaxError = syntaxError;
+    }
+
+    /**
+     * Parses a mhchem statement and describes it.
+     *
+     * @param statementString A single mhchem statement in string form.
+     * @return Report on the statement. Never null, and never throws.
+     */
+    static StatementReport of(final String statementString) {
+
+        SyntaxError syntaxError = null;
+
+        try {
+            ParseResult parsed = StatementParser.tryParseAll(statementString);
+            syntaxError = parsed.getSyntaxError();
+
+            if (parsed.isFailure()) {
+                return failure(statementString, syntaxError);
+            }
+
+            long start = System.nanoTime();
+            StatementReport report = of(statementString, parsed.getStatements().get(0), syntaxError);
+            Metrics.Phase.ANALYSE.recordSince(start);
+
+            return report;
+        } catch (Exception e) {
+            return failure(statementString, syntaxError);
+        }
+    }
+
+    /**
+     * Gives the report on a statement that cannot be parsed or analysed.
+     *
+     * @param input The string that was parsed.
+     * @param syntaxError First syntax error in the input, or null if there was none.
+     * @return Report of just the input and an error flag.
+     */
+    private static StatementReport failure(final String input, final SyntaxError syntaxError) {
+        return new StatementReport(input, null, null, true, null, null, null, null, syntaxError);
+    }
+
+    /**
+     * Describes an already parsed statement.
+     *
+     * @param input The string that was parsed.
+     * @param statement The statement parsed from it.
+     * @param syntaxError First syntax error in the input, or null if there was none.
+     * @return Report on the statement.
+     * @throws NuclearException A nuclear statement contains terms that are not nuclear.
+     */
+    private static StatementReport of(final String input, final Statement statement, final SyntaxError syntaxError)
+            throws NuclearException {
+
+        String type = CompiledTarget.typeOf(statement);
+        Map<String, Boolean> balance = new LinkedHashMap<>();
+
+        if (statement instanceof ExpressionStatement) {
+
+            ExpressionStatement s = (ExpressionStatement) statement;
+
+            return new StatementReport(input, type, s.toString(), s.containsError(), balance,
+                    Part.chemical(false, s.getExpression().getSummary()), null, null, syntaxError);
+
+        } else if (statement instanceof EquationStatement) {
+
+            EquationStatement s = (EquationStatement) statement;
+            balance.put("balanced", s.isBalanced());
+            balance.put("balancedAtoms", s.isBalancedAtoms());
+            balance.put("balancedCharge", s.isBalancedCharge());
+
+            return new StatementReport(input, type, s.toString(), s.containsError(), balance, null,
+                    Part.chemical(true, s.getLeftExpression().getSummary()),
+                    Part.chemical(true, s.getRightExpression().getSummary()), syntaxError);
+
+        } else if (statement instanceof NuclearExpressionStatement) {
+
+            NuclearExpressionStatement s = (NuclearExpressionStatement) statement;
+
+            return new StatementReport(input, type, s.toString(), s.containsError(), balance,
+                    Part.nuclear(false, s.getExpression().getSummary()), null, null, syntaxError);
+
+        } else {
+
+            // Statement is an instance of NuclearEquationStatement
+            NuclearEquationStatement s = (NuclearEquationStatement) statement;
+            balance.put("balanced", s.isBalanced());
+            balance.put("balancedAtom", s.isBalancedAtom());
+            balance.put("balancedMass", s.isBalancedMass());
+
+            return new StatementReport(input, type, s.toString(), s.containsError(), balance, null,
+                    Part.nuclear(true, s.getLeftExpression().getSummary()),
+                    Part.nuclear(true, s.getRightExpression().getSummary()), syntaxError);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "input=" + RequestLog.quote(input) + " type=" + type + " result=" + RequestLog.quote(result)
+                + " containsError=" + containsError;
+    }
+
+    @Override
+    public void writeTo(final JsonGenerator g) throws IOException {
+
+        g.writeStartObject();
+
+        if (type == null) {
+            g.writeStringField("input", input);
+            g.writeBooleanField("error", true);
+            writeSyntaxError(g);
+            g.writeEndObject();
+            return;
+        }
+
+        g.writeStringField("type", type);
+        g.writeStringField("input", input);
+        g.writeStringField("result", result);
+        g.writeBooleanField("containsError", containsError);
+
+        for (Map.Entry<String, Boolean> flag : balance.entrySet()) {
+            g.writeBooleanField(flag.getKey(), flag.getValue());
+        }
+
+        if (whole != null) {
+            whole.writeFields(g);
+        } else {
+            g.writeObjectFieldStart("left");
+            left.writeFields(g);
+            g.writeEndObject();
+
+            g.writeObjectFieldStart("right");
+            right.writeFields(g);
+            g.writeEndObject();
+        }
+
+        writeSyntaxError(g);
+        g.writeEndObject();
+    }
+
+    /**
+     * Writes the first syntax error in the input as a field, if there is one.
+     *
+     * @param g Generator to be written to.
+     * @throws IOException Generator failed to write.
+     */
+    private void writeSyntaxError(final JsonGenerator g) throws IOException {
+        if (syntaxError != null) {
+            g.writeFieldName("syntaxError");
+            syntaxError.writeTo(g);
+        }
+    }
+
+    /**
+     * Counts describing an expression, or one side of an equation.
+     */
+    private static final class Part {
+
+        /**
+         * Whether to write an error flag, as is done for each side of an equation.
+         */
+        private final boolean withError;
+
+        /**
+         * Whether the expression contains error terms.
+         */
+        private final boolean containsError;
+
+        /**
+         * Total charge, or null for nuclear expressions.
+         */
+        private final Fraction charge;
+
+        /**
+         * Total mass number, or null for chemical expressions.
+         */
+        private final Fraction massCount;
+
+        /**
+         * Total atomic number, or null for chemical expressions.
+         */
+        private final Fraction atomicCount;
+
+        /**
+         * Number of each kind of atom.
+         */
+        private final HashMap<String, Fraction> atomCount;
+
+        /**
+         * Constructor method of Part.
+         *
+         * @param withError Whether to write an error flag.
+         * @param containsError Whether the expression contains error terms.
+         * @param charge Total charge, or null for nuclear expressions.
+         * @param massCount Total mass number, or null for chemical expressions.
+         * @param atomicCount Total atomic number, or null for chemical expressions.
+         * @param atomCount Number of each kind of atom.
+         */
+        Part(final boolean withError, final boolean containsError, final Fraction charge,
+                     final Fraction massCount, final Fraction atomicCount, final HashMap<String, Fraction> atomCount) {
+            this.withError = withError;
+            this.containsError = containsError;
+            this.charge = charge;
+            this.massCount = massCount;
+            this.atomicCount = atomicCount;
+            this.atomCount = atomCount;
+        }
+
+        /**
+         * Describes a chemical expression, or one side of a chemical equation.
+         *
+         * @param withError Whether to write an error flag, as is done for each side of an equation.
+         * @param summary Summary of the expression.
+         * @return Counts of the expression.
+         */
+        static Part chemical(final boolean withError, final Summary summary) {
+            return new Part(withError, summary.containsError(), summary.getCharge(), null, null,
+                    summary.getAtoms().toMap());
+        }
+
+        /**
+         * Describes a nuclear expression, or one side of a nuclear equation.
+         *
+         * @param withError Whether to write an error flag, as is done for each side of an equation.
+         * @param summary Summary of the expression.
+         * @return Counts of the expression.
+         * @throws NuclearException The expression contains terms that are not nuclear.
+         */
+        static Part nuclear(final boolean withError, final Summary summary) throws NuclearException {
+
+            if (summary.getMassCount() == null) {
+                throw new NuclearException("Nuclear expression contains terms that are not nuclear.");
+            }
+
+            return new Part(withError, summary.containsError(), null, summary.getMassCount(),
+                    summary.getAtomicCount(), summary.getAtoms().toMap());
+        }
+
+        /**
+         * Writes the counts as fields of the enclosing object.
+         *
+         * @param g Generator to be written to.
+         * @throws IOException Generator failed to write.
+         */
+        void writeFields(final JsonGenerator g) throws IOException {
+
+            if (withError) {
+                g.writeBooleanField("containsError", containsError);
+            }
+
+            if (charge != null) {
+                g.writeStringField("charge", charge.toString());
+            } else {
+                g.writeStringField("massCount", massCount.toString());
+                g.writeStringField("atomCount", atomicCount.toString());
+            }
+
+            g.writeObjectFieldStart("atom_count");
+
+            for (Map.Entry<String, Fraction> entry : atomCount.entrySet()) {
+                g.writeStringField(entry.getKey(), entry.getValue().toString());
+            }
+
+            g.writeEndObject();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.isaacphysics.labs.chemistry.checker;
+
+/**
+ * Everything derived from the counts in a node of a parsed expression, found in a single pass by {@link Analyser}.
+ * <p>
+ *     Immutable, so a summary can be saved on its node and shared by every thread reading the node.
+ */
+final class Summary {
+
+    /**
+     * Summary of a term that could not be parsed.
+     */
+    static final Summary ERROR = new Summary(AtomVector.EMPTY, Fraction.ZERO, null, null, true, false);
+
+    /**
+     * Number of each kind of atom.
+     */
+    private final AtomVector atoms;
+
+    /**
+     * Total charge.
+     */
+    private final Fraction charge;
+
+    /**
+     * Total mass number, or null if the node is not wholly nuclear.
+     */
+    private final Fraction massCount;
+
+    /**
+     * Total atomic number, or null if the node is not wholly nuclear.
+     */
+    private final Fraction atomicCount;
+
+    /**
+     * Whether the node contains error terms.
+     */
+    private final boolean containsError;
+
+    /**
+     * Whether every isotope in the node has an atomic number matching its element.
+     */
+    private final boolean validAtomicNumber;
+
+    /**
+     * Constructor method of Summary.
+     *
+     * @param atoms Number of each kind of atom.
+     * @param charge Total charge.
+     * @param massCount Total mass number, or null if the node is not wholly nuclear.
+     * @param atomicCount Total atomic number, or null if the node is not wholly nuclear.
+     * @param containsError Whether the node contains error terms.
+     * @param validAtomicNumber Whether every isotope in the node has a valid atomic number.
+     */
+    Summary(final AtomVector atoms, final Fraction charge, final Fraction massCount, final Fraction atomicCount,
+            final boolean containsError, final boolean validAtomicNumber) {
+        this.atoms = atoms;
+        this.charge = charge;
+        this.massCount = massCount;
+        this.atomicCount = atomicCount;
+        this.containsError = containsError;
+        this.validAtomicNumber = validAtomicNumber;
+    }
+
+    /**
+     * Scales every count, as a coefficient does.
+     *
+     * @param factor Number to multiply by.
+     * @return Summary of the scaled node.
+     */
+    Summary times(final Fraction factor) {
+        return new Summary(atoms.times(factor), charge.times(factor),
+                massCount == null ? null : massCount.times(factor),
+                atomicCount == null ? null : atomicCount.times(factor), containsError, validAtomicNumber);
+    }
+
+    /**
+     * Adds up the counts of two nodes, as an expression does for its terms.
+     *
+     * @param other Summary of the other node.
+     * @return Summary of both nodes together.
+     */
+    Summary plus(final Summary other) {
+        return new Summary(atoms.plus(other.atoms), charge.plus(other.charge),
+                massCount == null || other.massCount == null ? null : massCount.plus(other.massCount),
+                atomicCount == null || other.atomicCount == null ? null : atomicCount.plus(other.atomicCount),
+                containsError || other.containsError, validAtomicNumber && other.validAtomicNumber);
+    }
+
+    /**
+     * @return Number of each kind of atom.
+     */
+    AtomVector getAtoms() {
+        return atoms;
+    }
+
+    /**
+     * @return Total charge.
+     */
+    Fraction getCharge() {
+        return charge;
+    }
+
+    /**
+     * @return Total mass number, or null if the node is not wholly nuclear.
+     */
+    Fraction getMassCount() {
+        return massCount;
+    }
+
+    /**
+     * @return Total atomic number, or null if the node is not wholly nuclear.
+     */
+    Fraction getAtomicCount() {
+        return atomicCount;
+    }
+
+    /**
+     * @return Whether the node contains error terms.
+     */
+    boolean containsError() {
+        return containsError;
+    }
+
+    /**
+     * @return Whether every isotope in the node has an atomic number matching its element.
+     */
+    boolean isValidAtomicNumber() {
+        return validAtomicNumber;
+    }
+}
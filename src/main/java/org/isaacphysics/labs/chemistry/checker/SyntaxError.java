@@ -0,0 +1,143 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The first syntax error found in a string: where it is, and what the parser expected there.
+ * <p>
+ *     Only offsets and the parser's state are kept when the error is found. The expected tokens are named only when
+ *     asked for, so an error costs next to nothing unless it is reported.
+ */
+final class SyntaxError implements JsonResult {
+
+    /**
+     * Description of the error.
+     */
+    private final String message;
+
+    /**
+     * Offset in the input of the first character of the token in error.
+     */
+    private final int position;
+
+    /**
+     * Text of the token in error, or null at the end of the input.
+     */
+    private final String token;
+
+    /**
+     * State the parser was in when it found the error, or -1 if the lexer found it.
+     */
+    private final int state;
+
+    /**
+     * Constructor method of SyntaxError.
+     *
+     * @param message Description of the error.
+     * @param position Offset in the input of the token in error.
+     * @param token Text of the token in error, or null at the end of the input.
+     * @param state State the parser was in, or -1 if the lexer found the error.
+     */
+    SyntaxError(final String message, final int position, final String token, final int state) {
+        this.message = message;
+        this.position = position;
+        this.token = token;
+        this.state = state;
+    }
+
+    /**
+     * @return Description of the error.
+     */
+    String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return Offset in the input of the first character of the token in error.
+     */
+    int getPosition() {
+        return position;
+    }
+
+    /**
+     * @return Text of the token in error, or null at the end of the input.
+     */
+    String getToken() {
+        return token;
+    }
+
+    /**
+     * @return Names of the tokens the parser expected instead, empty if the lexer found the error.
+     */
+    List<String> getExpected() {
+        return state < 0 ? Collections.emptyList() : ChemistryParser.expectedTokens(state);
+    }
+
+    @Override
+    public void writeTo(final JsonGenerator g) throws IOException {
+
+        g.writeStartObject();
+        g.writeStringField("message", message);
+        g.writeNumberField("position", position);
+        g.writeStringField("token", token);
+        g.writeArrayFieldStart("expected");
+
+        for (String name : getExpected()) {
+            g.writeString(name);
+        }
+
+        g.writeEndArray();
+        g.writeEndObject();
+    }
+
+    /**
+     * Gives the result reported when a string cannot be parsed at all.
+     *
+     * @return Result writing <code>{"error": "Can't parse input!", "syntaxError": {...}}</code>.
+     */
+    JsonResult asFailure() {
+        return new JsonResult() {
+
+            @Override
+            public void writeTo(final JsonGenerator g) throws IOException {
+                g.writeStartObject();
+                g.writeStringField("error", "Can't parse input!");
+                g.writeFieldName("syntaxError");
+                SyntaxError.this.writeTo(g);
+                g.writeEndObject();
+            }
+
+            @Override
+            public String toString() {
+                return "error=\"Can't parse input!\" " + SyntaxError.this;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "syntaxError=" + RequestLog.quote(message) + " position=" + position + " token="
+                + RequestLog.quote(token);
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide cache of compiled target answers, keyed by the target string.
+ * <p>
+ *     The size and time-to-live can be set with the system properties
+ *     <code>chemistry.targetCache.maxSize</code> (default 10000 entries) and
+ *     <code>chemistry.targetCache.ttlSeconds</code> (default 3600, 0 to never expire).
+ * <p>
+ *     Targets not in the cache are read from the {@link QuestionBank} named by <code>chemistry.questionBank</code>,
+ *     if there is one and it has them, and are only parsed otherwise.
+ */
+public final class TargetCache {
+
+    /**
+     * Default maximum number of cached targets.
+     */
+    private static final int DEFAULT_MAX_SIZE = 10000;
+
+    /**
+     * Default lifetime of a cached target, in seconds.
+     */
+    private static final long DEFAULT_TTL_SECONDS = 3600;
+
+    /**
+     * Logger for question bank entries that cannot be read.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(TargetCache.class);
+
+    /**
+     * Targets compiled ahead of time, or null if there are none.
+     */
+    private static final QuestionBank BANK = QuestionBank.openConfigured();
+
+    /**
+     * Number of targets read from the question bank.
+     */
+    private static final LongAdder BANK_HITS = new LongAdder();
+
+    /**
+     * The cache itself.
+     */
+    private static final BoundedCache<String, CompiledTarget> CACHE = new BoundedCache<>(
+            Integer.getInteger("chemistry.targetCache.maxSize", DEFAULT_MAX_SIZE),
+            Long.getLong("chemistry.targetCache.ttlSeconds", DEFAULT_TTL_SECONDS),
+            TimeUnit.SECONDS);
+
+    /**
+     * Constructor method of TargetCache.
+     * Set to private, because we don't want people to instantiate an utility class.
+     */
+    private TargetCache() {
+        // Nothing here.
+    }
+
+    /**
+     * Returns the compiled form of a target string, parsing it only if it is not already cached. Waits for a target
+     * that another thread is already parsing for as long as a request may take.
+     *
+     * @param targetString A single mhchem statement in string form.
+     * @return The compiled target.
+     * @throws Exception Parser having trouble reading the string, or another thread taking too long to.
+     */
+    static CompiledTarget get(final String targetString) throws Exception {
+        return get(targetString, AsyncJsonServlet.deadline(System.nanoTime()));
+    }
+
+    /**
+     * Returns the compiled form of a target string, parsing it only if it is not already cached.
+     *
+     * @param targetString A single mhchem statement in string form.
+     * @param deadline Time, as given by {@link System#nanoTime()}, after which another thread's parse of the same
+     *                 target is no longer waited for.
+     * @return The compiled target.
+     * @throws java.util.concurrent.TimeoutException Another thread was parsing the target, and did not finish in time.
+     * @throws Exception Parser having trouble reading the string.
+     */
+    static CompiledTarget get(final String targetString, final long deadline) throws Exception {
+        return CACHE.get(targetString, TargetCache::load, deadline);
+    }
+
+    /**
+     * Reads a target from the question bank, or parses it if it is not there.
+     *
+     * @param targetString A single mhchem statement in string form.
+     * @return The compiled target.
+     * @throws Exception Parser having trouble reading the string.
+     */
+    private static CompiledTarget load(final String targetString) throws Exception {
+
+        if (BANK != null) {
+            try {
+                CompiledTarget target = BANK.get(targetString);
+
+                if (target != null) {
+                    BANK_HITS.increment();
+                    return target;
+                }
+            } catch (RuntimeException e) {
+                LOG.error("Cannot read target={} from the question bank", RequestLog.quote(targetString), e);
+            }
+        }
+
+        return CompiledTarget.compile(targetString);
+    }
+
+    /**
+     * Drops every cached target.
+     */
+    public static void clear() {
+        CACHE.clear();
+    }
+
+    /**
+     * @return Number of targets currently cached.
+     */
+    public static int size() {
+        return CACHE.size();
+    }
+
+    /**
+     * @return Number of target lookups answered from the cache.
+     */
+    public static long hitCount() {
+        return CACHE.hitCount();
+    }
+
+    /**
+     * @return Number of target lookups that had to parse the target.
+     */
+    public static long missCount() {
+        return CACHE.missCount();
+    }
+
+    /**
+     * @return Number of targets in the question bank, or 0 if there is none.
+     */
+    public static int bankSize() {
+        return BANK == null ? 0 : BANK.size();
+    }
+
+    /**
+     * @return Number of targets read from the question bank rather than parsed.
+     */
+    public static long bankHitCount() {
+        return BANK_HITS.sum();
+    }
+
+    /**
+     * @return Number of targets dropped from the cache, either for space or for age.
+     */
+    public static long evictionCount() {
+        return CACHE.evictionCount();
+    }
+}
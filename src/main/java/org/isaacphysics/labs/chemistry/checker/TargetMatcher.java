@@ -0,0 +1,309 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The flat form of a target statement, compared term by term with answers.
+ * <p>
+ *     Every comparison the checker reports (equality, weak equivalence, same coefficients, same state symbols and the
+ *     wrong terms) only ever matches terms with equal formulas. The terms of each expression of a {@link FlatStatement}
+ *     are already sorted by formula, so the answer's flat form is merged with the target's, and only terms in runs
+ *     with the same formula are compared with each other. Those runs are nearly always a single term long, so an
+ *     answer costs one linear merge, with no maps built and no parse tree of the target kept.
+ * <p>
+ *     Matchers never change once built, so one can be shared by every thread checking against the same target.
+ */
+final class TargetMatcher {
+
+    /**
+     * Flat form of the target statement.
+     */
+    private final FlatStatement target;
+
+    /**
+     * Constructor method of TargetMatcher.
+     *
+     * @param target The target statement.
+     */
+    TargetMatcher(final Statement target) {
+        this(FlatStatement.of(target));
+    }
+
+    /**
+     * Constructor method of TargetMatcher.
+     *
+     * @param target Flat form of the target statement.
+     */
+    TargetMatcher(final FlatStatement target) {
+        this.target = target;
+    }
+
+    /**
+     * Compares an answer with the target.
+     *
+     * @param test The parsed answer.
+     * @return Every comparison between the target and the answer.
+     */
+    Match match(final Statement test) {
+        return match(test, FlatStatement.of(test));
+    }
+
+    /**
+     * Compares an answer with the target.
+     *
+     * @param test The parsed answer, whose terms are reported as wrong terms.
+     * @param flat Flat form of the answer.
+     * @return Every comparison between the target and the answer.
+     */
+    Match match(final Statement test, final FlatStatement flat) {
+
+        if (flat.getType() != target.getType()) {
+            return new Match(false, false, false, false, new ArrayList<>());
+        }
+
+        List<Expression> expressions = CompiledTarget.expressionsOf(test);
+        Match match = new Match(flat.getArrow() == target.getArrow(), true, true, true, new ArrayList<>());
+
+        for (int s = 0; s < target.sideCount(); s++) {
+            matchSide(s, flat, expressions.get(s).getTerms(), match);
+        }
+
+        return match;
+    }
+
+    /**
+     * Compares an expression of the answer with the one of the target in the same position, and folds the results
+     * into a match.
+     *
+     * @param side Index of the expression, from left to right.
+     * @param test Flat form of the answer.
+     * @param testTerms Terms of the expression of the answer, as written.
+     * @param match Results so far, updated in place.
+     */
+    private void matchSide(final int side, final FlatStatement test, final List<AbstractTerm> testTerms,
+                           final Match match) {
+
+        int iStop = target.errorStart(side);
+        int jStop = test.errorStart(side);
+
+        // The answer only matches if both sides are free of errors and have the same number of terms.
+        boolean matches = iStop == target.sideEnd(side) && jStop == test.sideEnd(side)
+                && target.sideEnd(side) - target.sideStart(side) == test.sideEnd(side) - test.sideStart(side);
+        boolean equal = matches;
+        boolean weak = matches;
+        boolean coefficients = matches;
+        boolean states = matches;
+
+        int[] wrong = new int[jStop - test.sideStart(side)];
+        int wrongCount = 0;
+
+        int i = target.sideStart(side);
+        int j = test.sideStart(side);
+
+        while (i < iStop || j < jStop) {
+
+            int c = i == iStop ? 1 : (j == jStop ? -1 : FlatStatement.compareFormulas(target, i, test, j));
+            int iEnd = c <= 0 ? runEnd(target, i, iStop) : i;
+            int jEnd = c >= 0 ? runEnd(test, j, jStop) : j;
+
+            if (c != 0 || iEnd - i != jEnd - j) {
+                // Formulas in one expression and not the other, or not as many times.
+                equal = false;
+                weak = false;
+                coefficients = false;
+                states = false;
+            } else {
+                // Within a run, terms are sorted by coefficient, so the coefficients match if they do pairwise.
+                for (int k = 0; k < iEnd - i; k++) {
+                    coefficients &= FlatStatement.sameCoefficient(target, i + k, test, j + k);
+                }
+
+                states &= sameStates(test, i, j, iEnd - i);
+            }
+
+            // Answer terms left over after pairing with equal target terms are wrong.
+            int p = i;
+
+            for (int q = j; q < jEnd; q++) {
+
+                int d = 1;
+
+                while (p < iEnd && (d = FlatStatement.compareTerms(target, p, test, q)) < 0) {
+                    p++;
+                }
+
+                if (d == 0) {
+                    p++;
+                } else {
+                    wrong[wrongCount++] = test.getPosition(q);
+                    equal = false;
+                }
+            }
+
+            i = iEnd;
+            j = jEnd;
+        }
+
+        match.equal &= equal;
+        match.weaklyEquivalent &= weak;
+        match.sameCoefficients &= coefficients;
+        match.sameStates &= states;
+
+        // Wrong terms are reported in the order they were written.
+        Arrays.sort(wrong, 0, wrongCount);
+
+        for (int k = 0; k < wrongCount; k++) {
+            match.wrongTerms.add((Term) testTerms.get(wrong[k]));
+        }
+    }
+
+    /**
+     * Finds the end of a run of terms with the same formula.
+     *
+     * @param flat Statement the terms are in.
+     * @param start Index of the first term of the run.
+     * @param stop Index past which the run cannot go.
+     * @return Index just past the last term of the run.
+     */
+    private static int runEnd(final FlatStatement flat, final int start, final int stop) {
+
+        int end = start + 1;
+
+        while (end < stop && FlatStatement.compareFormulas(flat, start, flat, end) == 0) {
+            end++;
+        }
+
+        return end;
+    }
+
+    /**
+     * Checks if two runs of terms with the same formula have the same states, in any order.
+     *
+     * @param test Flat form of the answer.
+     * @param i Index of the first target term of the run.
+     * @param j Index of the first answer term of the run.
+     * @param length Number of terms in each run.
+     * @return True if the states can be paired up one to one.
+     */
+    private boolean sameStates(final FlatStatement test, final int i, final int j, final int length) {
+
+        if (length == 1) {
+            return target.getState(i) == test.getState(j);
+        }
+
+        byte[] a = new byte[length];
+        byte[] b = new byte[length];
+
+        for (int k = 0; k < length; k++) {
+            a[k] = target.getState(i + k);
+            b[k] = test.getState(j + k);
+        }
+
+        Arrays.sort(a);
+        Arrays.sort(b);
+
+        return Arrays.equals(a, b);
+    }
+
+    /**
+     * Results of comparing an answer with the target.
+     */
+    static final class Match {
+
+        /**
+         * Whether the answer equals the target.
+         */
+        private boolean equal;
+
+        /**
+         * Whether the answer has the same formulas as the target, ignoring coefficients and states.
+         */
+        private boolean weaklyEquivalent;
+
+        /**
+         * Whether the answer has the same formulas with the same coefficients as the target.
+         */
+        private boolean sameCoefficients;
+
+        /**
+         * Whether the answer has the same formulas in the same states as the target.
+         */
+        private boolean sameStates;
+
+        /**
+         * Terms of the answer that are not in the target, in the order they were written.
+         */
+        private final ArrayList<Term> wrongTerms;
+
+        /**
+         * Constructor method of Match.
+         *
+         * @param equal Whether the answer equals the target so far.
+         * @param weaklyEquivalent Whether the answer is weakly equivalent to the target so far.
+         * @param sameCoefficients Whether the answer has the same coefficients as the target so far.
+         * @param sameStates Whether the answer has the same states as the target so far.
+         * @param wrongTerms Terms of the answer found not to be in the target so far.
+         */
+        private Match(final boolean equal, final boolean weaklyEquivalent, final boolean sameCoefficients,
+                      final boolean sameStates, final ArrayList<Term> wrongTerms) {
+            this.equal = equal;
+            this.weaklyEquivalent = weaklyEquivalent;
+            this.sameCoefficients = sameCoefficients;
+            this.sameStates = sameStates;
+            this.wrongTerms = wrongTerms;
+        }
+
+        /**
+         * @return True if the answer equals the target.
+         */
+        boolean isEqual() {
+            return equal;
+        }
+
+        /**
+         * @return True if the answer has the same formulas as the target, ignoring coefficients and states.
+         */
+        boolean isWeaklyEquivalent() {
+            return weaklyEquivalent;
+        }
+
+        /**
+         * @return True if the answer has the same formulas with the same coefficients as the target.
+         */
+        boolean hasSameCoefficients() {
+            return sameCoefficients;
+        }
+
+        /**
+         * @return True if the answer has the same formulas in the same states as the target.
+         */
+        boolean hasSameStates() {
+            return sameStates;
+        }
+
+        /**
+         * @return Terms of the answer that are not in the target, in the order they were written.
+         */
+        ArrayList<Term> getWrongTerms() {
+            return wrongTerms;
+        }
+    }
+}
@@ -16,8 +16,6 @@
 
 package org.isaacphysics.labs.chemistry.checker;
 
-import java.util.HashMap;
-
 /**
  * An instance of a term that contains no syntax error.
  */
@@ -57,22 +55,27 @@ public final class Term extends AbstractTerm {
     /**
      * Chemical formula associated to this term.
      */
-    private Formula formula;
+    private final Formula formula;
 
     /**
      * Coefficient of this term.
      */
-    private Coefficient coefficient;
+    private final Coefficient coefficient;
 
     /**
      * Physical state of this term.
      */
-    private PhysicalState state;
+    private final PhysicalState state;
+
+    /**
+     * Saved summary of the counts in this term, or null if not yet worked out.
+     */
+    private Summary savedSummary = null;
 
     /**
-     * Saved atom count.
+     * Hash code, computed once the formula has been fully parsed.
      */
-    private HashMap<String, Fraction> savedAtomCount = null;
+    private final int hash;
 
     /**
      * Constructor function of Term.
@@ -91,6 +94,10 @@ public final class Term extends AbstractTerm {
         } else {
             this.state = PhysicalState.valueOf(s);
         }
+
+        int h = formula.hashCode();
+        h = 31 * h + coefficient.hashCode();
+        this.hash = 31 * h + (state == null ? 0 : state.ordinal() + 1);
     }
 
     @Override
@@ -126,7 +133,8 @@ public final class Term extends AbstractTerm {
                     this.formula.equals(other.formula),
                     this.coefficient.equals(other.coefficient),
                     this.state == other.state);*/
-            return this.formula.equals(other.formula)
+            return this.hash == other.hash
+                    && this.formula.equals(other.formula)
                     && this.coefficient.equals(other.coefficient)
                     && (this.state == other.state);
         }
@@ -135,32 +143,56 @@ public final class Term extends AbstractTerm {
     }
 
     @Override
-    public Fraction getMassNumber() throws NuclearException {
-        return coefficient.toFraction().times(formula.getMassNumber());
+    <R> R accept(final AstVisitor<R> visitor) {
+        return visitor.visitTerm(this);
     }
 
     @Override
-    public Fraction getAtomicNumber() throws NuclearException {
-        return coefficient.toFraction().times(formula.getAtomicNumber());
+    Summary getSummary() {
+
+        // Summaries never change, so a thread seeing null just works out an equal one again.
+        Summary summary = savedSummary;
+
+        if (summary == null) {
+            summary = accept(Analyser.INSTANCE);
+            savedSummary = summary;
+        }
+
+        return summary;
     }
 
     @Override
-    public HashMap<String, Fraction> getAtomCount() {
+    public Fraction getMassNumber() throws NuclearException {
 
-        if (savedAtomCount == null) {
-            savedAtomCount = new HashMap<>();
+        Fraction mass = getSummary().getMassCount();
 
-            for (String element: formula.getAtomCount().keySet()) {
-                savedAtomCount.put(element, formula.getAtomCount().get(element).times(coefficient.toFraction()));
-            }
+        if (mass == null) {
+            throw new NuclearException("Mass number undefined for non-nuclear term.");
         }
 
-        return savedAtomCount;
+        return mass;
+    }
+
+    @Override
+    public Fraction getAtomicNumber() throws NuclearException {
+
+        Fraction atomic = getSummary().getAtomicCount();
+
+        if (atomic == null) {
+            throw new NuclearException("Atomic number undefined for non-nuclear term.");
+        }
+
+        return atomic;
+    }
+
+    @Override
+    public AtomVector getAtomVector() {
+        return getSummary().getAtoms();
     }
 
     @Override
     public Fraction getCharge() {
-        return formula.getCharge().times(coefficient.toFraction());
+        return getSummary().getCharge();
     }
 
     /**
@@ -188,16 +220,16 @@ public final class Term extends AbstractTerm {
     }
 
     @Override
-    public String getDotId() {
-        return "term_" + getdotId();
+    public String getDotId(final DotIds ids) {
+        return "term_" + ids.of(this);
     }
 
     @Override
-    public String getDotCode() {
+    public String getDotCode(final DotIds ids) {
 
         StringBuilder result = new StringBuilder();
         result.append("\t");
-        result.append(getDotId());
+        result.append(getDotId(ids));
         result.append(" [label=\"{&zwj;&zwj;&zwj;&zwj;Term&zwnj;|\\n");
         result.append(getDotString());
         result.append("\\n\\n|&zwj;&zwj;&zwj;coefficient&zwnj;: ");
@@ -213,12 +245,12 @@ public final class Term extends AbstractTerm {
         result.append("|&zwj;&zwj;&zwj;formula&zwnj;}\",color=\"#49902a\"];\n");
 
         result.append("\t");
-        result.append(getDotId());
+        result.append(getDotId(ids));
         result.append(":s -> ");
-        result.append(formula.getDotId());
+        result.append(formula.getDotId(ids));
         result.append(":n;\n");
 
-        result.append(formula.getDotCode());
+        result.append(formula.getDotCode(ids));
         result.append("\n");
         return result.toString();
     }
@@ -242,11 +274,11 @@ public final class Term extends AbstractTerm {
 
     @Override
     public boolean isValidAtomicNumber() {
-        return formula.isValidAtomicNumber();
+        return getSummary().isValidAtomicNumber();
     }
 
     @Override
     public int hashCode() {
-        return toString().hashCode();
+        return hash;
     }
 }
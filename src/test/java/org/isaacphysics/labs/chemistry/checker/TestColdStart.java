@@ -0,0 +1,57 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A test suite for the first strings parsed by a new JVM, which must not be charged for loading the parser.
+ * These tests run in a JVM of their own, in which nothing has been parsed before (see pom.xml).
+ */
+public class TestColdStart
+{
+    /**
+     * Simple formulae, and one long enough for the parser to look at the clock, should parse and check in full the
+     * first time, under the default CPU time limit.
+     * @throws Exception
+     */
+    @Test
+    public void testFirstParse() throws Exception
+    {
+        StringBuilder longEquation = new StringBuilder("C6H12O6 + 6O2 -> 6CO2 + 6H2O");
+
+        while (longEquation.length() < 4 * ParseLimits.CLOCK_INTERVAL) {
+            longEquation.append(" + 6CO2");
+        }
+
+        String[] inputs = {"H2O", "NaCl", "2H2 + O2 -> 2H2O", "CuSO4.5H2O(s)", "Fe^{3+}(aq)",
+                           "^{238}_{92}U -> ^{234}_{90}Th + ^{4}_{2}\\alphaparticle", longEquation.toString()};
+
+        for (String input : inputs) {
+
+            JsonNode report = RunParser.MAPPER.readTree(RunParser.parseFromString(input));
+            assertTrue("Expected " + input + " to parse, got " + report, !report.has("error"));
+
+            JsonNode check = RunParser.MAPPER.readTree(RunParser.check(input, input));
+            assertTrue("Expected " + input + " to check, got " + check,
+                    !check.has("error") && check.get("equal").asBoolean());
+        }
+    }
+}
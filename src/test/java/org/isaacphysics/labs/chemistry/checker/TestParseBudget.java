@@ -0,0 +1,72 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * A test suite for the CPU time limit on parsing.
+ * The limit is read once, so these tests run in their own JVM with chemistry.parse.maxMillis set to 0 (see pom.xml),
+ * and are skipped anywhere else.
+ */
+public class TestParseBudget
+{
+    @Before
+    public void requireNoBudget()
+    {
+        assumeTrue("Needs -Dchemistry.parse.maxMillis=0", ParseLimits.MAX_NANOS == 0);
+    }
+
+    /**
+     * A string longer than one clock interval should run out of time while it is parsed.
+     * @throws Exception
+     */
+    @Test
+    public void testParseOverBudget() throws Exception
+    {
+        StringBuilder input = new StringBuilder("H2O");
+
+        while (input.length() < 4 * ParseLimits.CLOCK_INTERVAL) {
+            input.append(" + H2O");
+        }
+
+        ParseResult result = StatementParser.tryParseAll(input.toString());
+        assertTrue("Expected to run out of time, got " + result.getSyntaxError(), result.isFailure()
+                && result.getSyntaxError().getMessage().equals("Took too long to parse."));
+    }
+
+    /**
+     * Only lexing and parsing are charged, so a string too short for the parser to look at the clock should still be
+     * checked and analysed in full.
+     * @throws Exception
+     */
+    @Test
+    public void testShortStringNotCharged() throws Exception
+    {
+        JsonNode check = RunParser.MAPPER.readTree(RunParser.check("HCl + NaOH -> H2O + NaCl",
+                "NaOH + HCl -> NaCl + H2O"));
+        assertTrue("Expected a full check, got " + check, !check.has("error") && check.get("equal").asBoolean());
+
+        JsonNode report = RunParser.MAPPER.readTree(RunParser.parseFromString("NaOH + HCl -> NaCl + H2O"));
+        assertTrue("Expected a full report, got " + report, !report.has("error") && report.has("balanced"));
+    }
+}
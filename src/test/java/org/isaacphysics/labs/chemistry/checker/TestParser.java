@@ -16,12 +16,33 @@
 
 package org.isaacphysics.labs.chemistry.checker;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import java_cup.runtime.DefaultSymbolFactory;
+import java_cup.runtime.Symbol;
 import org.junit.Test;
 
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -276,6 +297,9 @@ public class TestParser
 
         // Asserts that first statement is equivalent to second one.
         assertTrue("Equations not recognised as being equal!", eqnStatement1.equals(eqnStatement2));
+
+        // Equal statements must also hash the same, whatever order their terms are in.
+        assertTrue("Equal equations have different hash codes!", eqnStatement1.hashCode() == eqnStatement2.hashCode());
     }
 
     /**
@@ -704,4 +728,627 @@ public class TestParser
         assertTrue("Expected parse error of electron with charge != to '-' : " + s2.toString(), s2.containsError());
     }
 
+    /**
+     * Checking answers against the same target twice should only parse the target once,
+     * and give exactly the same result both times.
+     * @throws Exception
+     */
+    @Test
+    public void testTargetCache() throws Exception
+    {
+        String target = "NaOH(aq) + HCl(aq) -> NaCl(aq) + H2O(l)";
+        String test = "HCl(aq) + NaOH(aq) -> H2O(l) + NaCl(aq)";
+
+        TargetCache.clear();
+        long misses = TargetCache.missCount();
+        long hits = TargetCache.hitCount();
+
+        String first = RunParser.check(test, target);
+        String second = RunParser.check(test, target);
+
+        assertTrue("Expected target to be parsed once.", TargetCache.missCount() == misses + 1);
+        assertTrue("Expected second check to use cached target.", TargetCache.hitCount() == hits + 1);
+        assertTrue("Expected cached target to give the same result.", first.equals(second));
+    }
+
+    /**
+     * A compiled target matcher must agree with the statement comparison methods, including on repeated
+     * terms, error terms and mismatched statement types.
+     * @throws Exception
+     */
+    @Test
+    public void testTargetMatcher() throws Exception
+    {
+        String[] inputs = {"H2O", "H2O + H2O", "2H2O", "H2O(l) + H2O(g)", "H2O(g) + H2O(l)", "NaCl + +",
+                           "NaOH(aq) + HCl(aq) -> NaCl(aq) + H2O(l)", "HCl(aq) + NaOH(aq) -> H2O(l) + NaCl(aq)",
+                           "NaOH(aq) + HCl(aq) <=> NaCl(aq) + H2O(l)", "2NaOH + 2HCl -> 2NaCl + 2H2O",
+                           "^{238}_{92}U -> ^{234}_{90}Th + ^{4}_{2}\\alphaparticle"};
+
+        for (String t : inputs) {
+
+            Statement target = StatementParser.parse(t);
+            TargetMatcher matcher = new TargetMatcher(target);
+
+            for (String u : inputs) {
+
+                Statement test = StatementParser.parse(u);
+                TargetMatcher.Match match = matcher.match(test);
+                String pair = t + " / " + u;
+
+                assertTrue("Equality differs for " + pair, match.isEqual() == target.equals(test));
+                assertTrue("Weak equivalence differs for " + pair,
+                        match.isWeaklyEquivalent() == target.weaklyEquivalent(test));
+
+                if (target instanceof ExpressionStatement) {
+                    ExpressionStatement e = (ExpressionStatement) target;
+                    assertTrue("Coefficients differ for " + pair,
+                            match.hasSameCoefficients() == e.sameCoefficients(test));
+                    assertTrue("States differ for " + pair, match.hasSameStates() == e.sameStateSymbols(test));
+                }
+
+                List<String> expected = new ArrayList<>();
+                List<String> actual = new ArrayList<>();
+
+                for (Term w : target.getWrongTerms(test)) {
+                    expected.add(w.toString());
+                }
+                for (Term w : match.getWrongTerms()) {
+                    actual.add(w.toString());
+                }
+
+                Collections.sort(expected);
+                Collections.sort(actual);
+                assertTrue("Wrong terms differ for " + pair + ": " + actual, expected.equals(actual));
+            }
+        }
+    }
+
+    /**
+     * Asking for a single field should give that field exactly as a full check does, and no other flags,
+     * whether the answer is equal to the target or not.
+     * @throws Exception
+     */
+    @Test
+    public void testSelectedFields() throws Exception
+    {
+        String[] targets = {"H2O(l) + H2O(g)", "NaOH(aq) + HCl(aq) -> NaCl(aq) + H2O(l)",
+                            "^{238}_{92}U -> ^{234}_{90}Th + ^{4}_{2}\\alphaparticle"};
+        String[] tests = {"H2O(g) + H2O(l)", "2H2O", "HCl(aq) + NaOH(aq) -> H2O(l) + NaCl(aq)",
+                          "NaOH + HCl <=> NaCl + 2H2O", "^{238}_{92}U -> ^{234}_{90}Th + ^{4}_{2}\\alphaparticle"};
+
+        for (String t : targets) {
+
+            CompiledTarget target = CompiledTarget.compile(t);
+
+            for (String u : tests) {
+
+                JsonNode all = RunParser.MAPPER.readTree(
+                        JsonOutput.toString(RunParser.checkResult(u, target, CheckResult.Field.ALL), false));
+
+                for (CheckResult.Field f : CheckResult.Field.values()) {
+
+                    JsonNode one = RunParser.MAPPER.readTree(
+                            JsonOutput.toString(RunParser.checkResult(u, target, EnumSet.of(f)), false));
+                    String pair = t + " / " + u + " / " + f;
+
+                    for (CheckResult.Field other : CheckResult.Field.values()) {
+                        String key = other.getKey();
+                        JsonNode expected = other == f ? all.get(key) : null;
+                        assertTrue("Field " + key + " differs for " + pair, Objects.equals(expected, one.get(key)));
+                    }
+
+                    assertTrue("Expected types for " + pair, one.get("receivedType").equals(all.get("receivedType")));
+                }
+            }
+        }
+    }
+
+    /**
+     * Input that cannot be parsed should give a failed result pointing at the problem, rather than throw, and the
+     * first recovered syntax error should be kept with the statements parsed.
+     * @throws Exception
+     */
+    @Test
+    public void testParseFailure() throws Exception
+    {
+        ParseResult overflow = StatementParser.tryParseAll("H2O + 99999999999NaCl");
+        assertTrue("Expected too large a number to fail.", overflow.isFailure());
+        assertTrue("Expected error at the number, got " + overflow.getSyntaxError(),
+                overflow.getSyntaxError().getPosition() == 6
+                && "99999999999".equals(overflow.getSyntaxError().getToken()));
+
+        try {
+            StatementParser.parseAll("H2O + 99999999999NaCl");
+            assertTrue("Expected ParseException.", false);
+        } catch (ParseException e) {
+            assertTrue("Expected no stack trace.", e.getStackTrace().length == 0);
+        }
+
+        ParseResult typo = StatementParser.tryParseAll("NaOH + HCl -> ->");
+        SyntaxError error = typo.getSyntaxError();
+        assertFalse("Expected typo to be recovered from.", typo.isFailure());
+        assertTrue("Expected error term.", typo.getStatements().get(0).containsError());
+        assertTrue("Expected error at second arrow, got " + error, error.getPosition() == 14
+                && "->".equals(error.getToken()) && error.getExpected().contains("ELEMENT"));
+
+        assertTrue("Expected no syntax error.", StatementParser.tryParseAll("NaOH + HCl").getSyntaxError() == null);
+    }
+
+    /**
+     * Drawing a statement should give the same Graphviz code every time, and every node drawn should get an ID of its
+     * own, even when it is equal to another node.
+     * @throws Exception
+     */
+    @Test
+    public void testDotIds() throws Exception
+    {
+        String[] inputs = {"H2O + H2O", "2H2O(l) + 2H2O(l) -> 2H2O(l) + 2H2O(l)", "CuSO4.5H2O + CuSO4.5H2O",
+                           "^{4}_{2}\\alphaparticle + ^{4}_{2}\\alphaparticle"};
+        Pattern node = Pattern.compile("^\\t(\\w+) \\[label=", Pattern.MULTILINE);
+
+        for (String input : inputs) {
+
+            Statement statement = StatementParser.parse(input);
+            String dot = statement.getDotCode();
+
+            assertTrue("Expected the same drawing twice for " + input, dot.equals(statement.getDotCode()));
+            assertTrue("Expected the same drawing of a new tree for " + input,
+                    dot.equals(StatementParser.parse(input).getDotCode()));
+
+            Set<String> ids = new HashSet<>();
+            Matcher m = node.matcher(dot);
+
+            while (m.find()) {
+                assertTrue("Expected " + m.group(1) + " to be drawn once in " + input, ids.add(m.group(1)));
+            }
+        }
+
+        Expression water = ((ExpressionStatement) StatementParser.parse("H2O + H2O")).getExpression();
+        AbstractTerm first = water.getTerms().get(0);
+        AbstractTerm second = water.getTerms().get(1);
+        assertTrue("Expected equal but distinct terms.", first.equals(second) && first != second);
+
+        DotIds ids = new DotIds();
+        assertFalse("Expected distinct IDs for equal terms.", first.getDotId(ids).equals(second.getDotId(ids)));
+        assertTrue("Expected a stable ID.", first.getDotId(ids).equals(first.getDotId(ids)));
+    }
+
+    /**
+     * Gives every token the lexer reads from a string.
+     * @param s String to be lexed
+     * @return Tokens read, without the end of input.
+     * @throws Exception
+     */
+    private List<Symbol> lex(String s) throws Exception
+    {
+        ChemistryLexer lexer = new ChemistryLexer(new StringReader(s));
+        List<Symbol> tokens = new ArrayList<>();
+
+        for (Symbol token = lexer.next_token(); token.sym != sym.EOF; token = lexer.next_token()) {
+            tokens.add(token);
+        }
+
+        return tokens;
+    }
+
+    /**
+     * Every element symbol should lex to one ELEMENT token holding its shared symbol, and numbers should be read
+     * exactly up to the largest allowed, without leading zeros, and refused beyond it.
+     * @throws Exception
+     */
+    @Test
+    public void testLexer() throws Exception
+    {
+        String[] elements = {"H", "He", "Li", "Be", "B", "C", "N", "O", "F", "Ne", "Na", "Mg", "Al", "Si", "P", "S",
+                             "Cl", "Ar", "K", "Ca", "Sc", "Ti", "V", "Cr", "Mn", "Fe", "Co", "Ni", "Cu", "Zn", "Ga",
+                             "Ge", "As", "Se", "Br", "Kr", "Rb", "Sr", "Y", "Zr", "Nb", "Mo", "Tc", "Ru", "Rh", "Pd",
+                             "Ag", "Cd", "In", "Sn", "Sb", "Te", "I", "Xe", "Cs", "Ba", "La", "Ce", "Pr", "Nd", "Pm",
+                             "Sm", "Eu", "Gd", "Tb", "Dy", "Ho", "Er", "Tm", "Yb", "Lu", "Hf", "Ta", "W", "Re", "Os",
+                             "Ir", "Pt", "Au", "Hg", "Tl", "Pb", "Bi", "Po", "At", "Rn", "Fr", "Ra", "Ac", "Th", "Pa",
+                             "U", "Np", "Pu", "Am", "Cm", "Bk", "Cf", "Es", "Fm", "Md", "No", "Lr", "Rf", "Db", "Sg",
+                             "Bh", "Hs", "Mt", "Ds", "Rg", "Cn", "Uut", "Fl", "Uup", "Lv", "Uus", "Uuo"};
+        assertTrue("Expected 118 elements, got " + elements.length, elements.length == 118);
+
+        for (int i = 0; i < elements.length; i++) {
+
+            List<Symbol> tokens = lex(elements[i]);
+            assertTrue("Expected one ELEMENT token for " + elements[i] + ", got " + tokens,
+                    tokens.size() == 1 && tokens.get(0).sym == sym.ELEMENT);
+            assertTrue("Expected " + elements[i] + ", got " + tokens.get(0).value,
+                    elements[i].equals(tokens.get(0).value) && tokens.get(0).value == PeriodicTable.symbol(i + 1));
+            assertTrue("Expected atomic number " + (i + 1) + " for " + elements[i],
+                    PeriodicTable.atomicNumber(elements[i]) == i + 1);
+        }
+
+        // Numbers have no leading zeros, so each zero is a token of its own.
+        List<Symbol> zeros = lex("007");
+        assertTrue("Expected two zeros and 7, got " + zeros, zeros.size() == 3
+                && zeros.get(0).sym == sym.ERROR && "0".equals(zeros.get(0).value)
+                && zeros.get(1).sym == sym.ERROR && zeros.get(2).sym == sym.NUMBER
+                && (Integer) zeros.get(2).value == 7);
+        assertTrue("Expected _{0}.", (Integer) lex("_{0}").get(0).value == 0);
+
+        String max = Integer.toString(ParseLimits.MAX_NUMBER);
+        assertTrue("Expected " + max + " as a number.", (Integer) lex(max).get(0).value == ParseLimits.MAX_NUMBER);
+        assertTrue("Expected " + max + " as a charge.", (Integer) lex("^{" + max + "-}").get(0).value
+                == -ParseLimits.MAX_NUMBER);
+        FracCoeff fraction = (FracCoeff) lex("\\frac{" + max + "}{" + max + "}").get(0).value;
+        assertTrue("Expected " + max + " as a fraction.", fraction.getNumerator() == ParseLimits.MAX_NUMBER);
+        assertFalse("Expected " + max + "H2O to parse.", StatementParser.tryParseAll(max + "H2O").isFailure());
+
+        String tooLarge = Long.toString(ParseLimits.MAX_NUMBER + 1L);
+        String[] overflows = {tooLarge, "^{" + tooLarge + "}", "_{-" + tooLarge + "}",
+                              "\\frac{1}{" + tooLarge + "}", "99999999999999999999999999999999"};
+
+        for (String overflow : overflows) {
+
+            try {
+                lex(overflow);
+                assertTrue("Expected " + overflow + " to be refused.", false);
+            } catch (ParseAbort e) {
+                // Refused as it should be.
+            }
+
+            SyntaxError error = StatementParser.tryParseAll("H2O + " + overflow + "NaCl").getSyntaxError();
+            assertTrue("Expected number too large at " + overflow + ", got " + error,
+                    "Number too large.".equals(error.getMessage()) && error.getPosition() == 6
+                    && overflow.equals(error.getToken()));
+        }
+    }
+
+    /**
+     * A single analysis pass should give every count of an expression, with no nuclear counts for chemical terms.
+     * @throws Exception
+     */
+    @Test
+    public void testSummary() throws Exception
+    {
+        Summary nuclear = ((NuclearEquationStatement) StatementParser.parse(
+                "^{238}_{92}U -> ^{234}_{90}Th + ^{4}_{2}\\alphaparticle")).getRightExpression().getSummary();
+        assertTrue("Expected mass count 238, got " + nuclear.getMassCount(),
+                nuclear.getMassCount().toString().equals("238"));
+        assertTrue("Expected atomic count 92, got " + nuclear.getAtomicCount(),
+                nuclear.getAtomicCount().toString().equals("92"));
+        assertTrue("Expected valid atomic numbers.", nuclear.isValidAtomicNumber() && !nuclear.containsError());
+
+        Summary chemical = ((ExpressionStatement) StatementParser.parse("2Fe^{3+} + ERROR")).getExpression()
+                .getSummary();
+        assertTrue("Expected no nuclear counts.", chemical.getMassCount() == null && chemical.getAtomicCount() == null);
+        assertTrue("Expected charge 6, got " + chemical.getCharge(), chemical.getCharge().toString().equals("6"));
+        assertTrue("Expected error term.", chemical.containsError());
+    }
+
+    /**
+     * Fractions should share small whole numbers, move to BigIntegers and back as results grow and shrink, and
+     * compare and hash the same whichever way they are held.
+     * @throws Exception
+     */
+    @Test
+    public void testFractions() throws Exception
+    {
+        assertTrue("Expected shared small whole numbers.", Fraction.valueOf(10, 2) == Fraction.valueOf(5)
+                && Fraction.valueOf(-128) == Fraction.valueOf(-256, 2) && Fraction.valueOf(0, -7) == Fraction.ZERO);
+        assertTrue("Expected lowest terms with positive denominator.",
+                Fraction.valueOf(6, -4).toString().equals("-3/2"));
+
+        Fraction max = Fraction.valueOf(Long.MAX_VALUE);
+        Fraction overflow = max.plus(1);
+        assertTrue("Expected 2^63, got " + overflow, overflow.isBig()
+                && overflow.toString().equals("9223372036854775808"));
+
+        Fraction back = overflow.plus(-1);
+        assertTrue("Expected " + max + " held in a long, got " + back, !back.isBig() && back.equals(max)
+                && max.equals(back) && back.hashCode() == max.hashCode());
+
+        Fraction product = max.times(max).times(Fraction.valueOf(1, Long.MAX_VALUE));
+        assertTrue("Expected " + max + ", got " + product, !product.isBig() && product.equals(max));
+        assertFalse("Expected big fraction to differ from small one.", overflow.equals(max) || max.equals(overflow));
+
+        // Adding these does not overflow, but the sum is the smallest long, which cannot be negated.
+        Fraction min = Fraction.valueOf(-(1L << 62)).plus(Fraction.valueOf(-(1L << 62)));
+        assertTrue("Expected -2^63, got " + min, min.toString().equals(Long.toString(Long.MIN_VALUE)));
+        assertTrue("Expected sums and values of -2^63 to be equal.", min.equals(Fraction.valueOf(Long.MIN_VALUE))
+                && min.equals(Fraction.valueOf(Long.MIN_VALUE, 1))
+                && min.hashCode() == Fraction.valueOf(Long.MIN_VALUE).hashCode());
+        assertTrue("Expected 2^63, got " + min.times(-1), min.times(-1).equals(overflow));
+        assertTrue("Expected -2^62, got " + Fraction.valueOf(Long.MIN_VALUE, 2),
+                Fraction.valueOf(Long.MIN_VALUE, 2).equals(Fraction.valueOf(-(1L << 62))));
+        assertTrue("Expected -1/2^63, got " + Fraction.valueOf(1, Long.MIN_VALUE),
+                Fraction.valueOf(1, Long.MIN_VALUE).toString().equals("-1/9223372036854775808"));
+        assertTrue("Expected -2, got " + min.times(Fraction.valueOf(1, Long.MIN_VALUE).times(-2)),
+                min.times(Fraction.valueOf(1, Long.MIN_VALUE).times(-2)) == Fraction.valueOf(-2));
+    }
+
+    /**
+     * Atom counts too large for a long should be counted exactly, and checking them should give a normal result.
+     * @throws Exception
+     */
+    @Test
+    public void testAtomCountOverflow() throws Exception
+    {
+        String huge = "((((HO1000000)1000000)1000000)1000000)O";
+
+        Fraction count = ((ExpressionStatement) StatementParser.parse(huge)).getExpression().getSummary().getAtoms()
+                .toMap().get("O");
+        assertTrue("Expected 10^24 + 1 oxygen atoms, got " + count,
+                count.toString().equals("1000000000000000000000001"));
+
+        JsonNode wrong = RunParser.MAPPER.readTree(RunParser.check(huge, "H2"));
+        assertTrue("Expected a normal result, got " + wrong, !wrong.has("error") && !wrong.get("equal").asBoolean());
+
+        JsonNode right = RunParser.MAPPER.readTree(RunParser.check(huge, huge));
+        assertTrue("Expected " + huge + " to equal itself, got " + right, right.get("equal").asBoolean());
+
+        AtomVector back = AtomVector.of("H", Long.MAX_VALUE).plus(AtomVector.of("H", 1)).plus(AtomVector.of("H", -1));
+        assertTrue("Expected count to go back to a long.", back.equals(AtomVector.of("H", Long.MAX_VALUE))
+                && back.hashCode() == AtomVector.of("H", Long.MAX_VALUE).hashCode());
+    }
+
+    /**
+     * Flat statements must be equal exactly when the statements they were built from are.
+     * @throws Exception
+     */
+    @Test
+    public void testFlatStatement() throws Exception
+    {
+        String[] inputs = {"H2O", "H2O(l)", "2H2O", "\\frac{4}{2}H2O", "\\frac{2}{1}H2O", "H", "H_{0}", "(CH3)2",
+                           "[CH3]2", "CH3CH3", "CuSO4.5H2O", "CuSO4.4H2O", "Na^{+}Cl^{-}", "Cl^{-}Na^{+}", "e^{-}",
+                           "NaCl + H2O + CO2 + O2 + N2 + Ar", "Ar + N2 + O2 + CO2 + H2O + NaCl", "NaCl + +",
+                           "NaOH + HCl -> NaCl + H2O", "HCl + NaOH -> H2O + NaCl", "NaOH + HCl <=> NaCl + H2O",
+                           "((((((CH3)2)2)2)2)2)2", "^{238}_{92}U -> ^{234}_{90}Th + ^{4}_{2}\\alphaparticle",
+                           "^{238}_{92}U -> ^{4}_{2}\\alphaparticle + ^{234}_{90}Th",
+                           "^{238}_{92}U -> ^{234}_{90}Th + ^{4}_{2}\\betaparticle", "^{14}_{6}C^{2+}"};
+
+        for (String t : inputs) {
+
+            Statement target = StatementParser.parse(t);
+            FlatStatement flatTarget = FlatStatement.of(target);
+
+            for (String u : inputs) {
+
+                Statement test = StatementParser.parse(u);
+                FlatStatement flatTest = FlatStatement.of(test);
+                String pair = t + " / " + u;
+
+                assertTrue("Equality differs for " + pair, flatTarget.equals(flatTest) == target.equals(test));
+                assertTrue("Hash differs for " + pair,
+                        !flatTarget.equals(flatTest) || flatTarget.hashCode() == flatTest.hashCode());
+            }
+        }
+    }
+
+    /**
+     * Equal formulas in different targets should be one shared instance, while answers should neither be shared nor
+     * added to the pool, and should still match the shared formulas.
+     * @throws Exception
+     */
+    @Test
+    public void testFormulaPool() throws Exception
+    {
+        CompiledTarget liquid = CompiledTarget.compile("H2O(l)");
+        CompiledTarget doubled = CompiledTarget.compile("2H2O");
+        assertTrue("Expected one shared formula for water.",
+                liquid.getFlat().getFormula(0) == doubled.getFlat().getFormula(0));
+
+        int pooled = FlatStatement.poolSize();
+        FlatStatement answer = FlatStatement.of(StatementParser.parse("H2O"));
+        CheckResult check = RunParser.checkResult("Xe7Kr3 + H2O", liquid);
+
+        assertTrue("Expected answers to stay out of the pool.", FlatStatement.poolSize() == pooled
+                && answer.getFormula(0) != liquid.getFlat().getFormula(0));
+        assertTrue("Expected the answer to match the shared formula.",
+                answer.getFormula(0).equals(liquid.getFlat().getFormula(0))
+                && answer.getFormula(0).hashCode() == liquid.getFlat().getFormula(0).hashCode());
+        assertTrue("Expected a normal result, got " + check, check.toString().contains(" equal=false"));
+    }
+
+    /**
+     * Targets read back from a question bank must check answers exactly as freshly parsed targets do.
+     * @throws Exception
+     */
+    @Test
+    public void testQuestionBank() throws Exception
+    {
+        String[] targets = {"NaOH(aq) + HCl(aq) -> NaCl(aq) + H2O(l)", "CuSO4.5H2O(s)", "NaCl + +",
+                            "\\frac{1}{2}O2 + Fe^{2+} <=> Fe^{3+}",
+                            "^{238}_{92}U -> ^{234}_{90}Th + ^{4}_{2}\\alphaparticle"};
+        String[] answers = {"HCl(aq) + NaOH(aq) -> H2O(l) + NaCl(aq)", "NaOH + HCl -> NaCl + H2O", "CuSO4.5H2O",
+                            "NaCl + +", "\\frac{1}{2}O2 + Fe^{2+} -> Fe^{3+}",
+                            "^{238}_{92}U -> ^{4}_{2}\\alphaparticle + ^{234}_{90}Th", "H2O"};
+
+        Path list = Files.createTempFile("targets", ".txt");
+        Path file = Files.createTempFile("bank", ".bin");
+
+        try {
+            Files.write(list, Arrays.asList(targets), StandardCharsets.UTF_8);
+            assertTrue("Expected every target to be compiled.", QuestionBank.compile(list, file) == targets.length);
+
+            QuestionBank bank = QuestionBank.open(file);
+            assertTrue("Expected no entry for a target not in the bank.", bank.get("H2O") == null);
+
+            for (String t : targets) {
+
+                CompiledTarget loaded = bank.get(t);
+                CompiledTarget parsed = CompiledTarget.compile(t);
+
+                assertTrue("Expected an entry for " + t, loaded != null);
+                assertTrue("Atom counts differ for " + t, loaded.getAtomCounts().equals(parsed.getAtomCounts()));
+                assertTrue("Charges differ for " + t, loaded.getCharges().equals(parsed.getCharges()));
+
+                for (String u : answers) {
+                    assertTrue("Result differs for " + t + " / " + u,
+                            JsonOutput.toString(RunParser.checkResult(u, loaded), false).equals(
+                                    JsonOutput.toString(RunParser.checkResult(u, parsed), false)));
+                }
+            }
+        } finally {
+            Files.deleteIfExists(list);
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Strings over the default parsing limits should fail with an error naming the limit.
+     * @throws Exception
+     */
+    @Test
+    public void testParseLimits() throws Exception
+    {
+        StringBuilder nested = new StringBuilder("CH");
+
+        for (int i = 0; i < ParseLimits.MAX_DEPTH; i++) {
+            nested.insert(0, "(").append(")2");
+        }
+
+        Statement deepest = StatementParser.parse(nested.toString());
+        assertTrue("Expected " + nested + ", got " + deepest, deepest.toString().equals(nested.toString()));
+
+        String[] inputs = {"(" + nested + ")2", new String(new char[ParseLimits.MAX_LENGTH + 1]).replace('\0', 'x'),
+                           new String(new char[ParseLimits.MAX_TOKENS + 1]).replace('\0', '+'),
+                           (ParseLimits.MAX_NUMBER + 1) + "H2O"};
+        String[] errors = {"Brackets nested too deeply.", "Input too long.", "Too many tokens.", "Number too large."};
+
+        for (int i = 0; i < inputs.length; i++) {
+            ParseResult result = StatementParser.tryParseAll(inputs[i]);
+            assertTrue("Expected " + errors[i] + " Got " + result.getSyntaxError(),
+                    result.isFailure() && errors[i].equals(result.getSyntaxError().getMessage()));
+        }
+    }
+
+    /**
+     * Latencies should land in the first bucket whose bound is at least the latency, and negative ones count as zero.
+     * @throws Exception
+     */
+    @Test
+    public void testLatencyBuckets() throws Exception
+    {
+        long[] nanos = {-5, 0, 1000, 1001, 1999, 2000, 2001, 2900};
+        int[] buckets = {0, 0, 0, 1, 1, 1, 2, 2};
+        String[] bounds = {"0.000001", "0.000002", "0.000004"};
+
+        for (int i = 0; i < nanos.length; i++) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(nanos[i]);
+
+            StringBuilder out = new StringBuilder();
+            histogram.writeTo(out, "t", "");
+            String text = out.toString();
+
+            // Buckets are cumulative, so the value's bucket is the first to count it.
+            assertTrue("Expected " + nanos[i] + " ns in le=" + bounds[buckets[i]] + ", got\n" + text,
+                    text.contains("t_bucket{le=\"" + bounds[buckets[i]] + "\"} 1\n")
+                    && (buckets[i] == 0 || text.contains("t_bucket{le=\"" + bounds[buckets[i] - 1] + "\"} 0\n")));
+            assertTrue("Expected sum " + Math.max(nanos[i], 0) + " ns, got\n" + text,
+                    text.contains("t_sum " + Math.max(nanos[i], 0) / 1e9 + "\n"));
+        }
+    }
+
+    /**
+     * Threads missing on the same key at once should load it only once, and all get the same value.
+     * @throws Exception
+     */
+    @Test(timeout = 10000)
+    public void testCoalescedLoads() throws Exception
+    {
+        BoundedCache<String, String> cache = new BoundedCache<>(10, 0, TimeUnit.SECONDS);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        int threads = 8;
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<String>> results = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < threads; i++) {
+                results.add(pool.submit(() -> cache.get("H2O", key -> {
+                    loads.incrementAndGet();
+                    release.await();
+                    return RunParser.check(key, key);
+                }, System.nanoTime() + TimeUnit.SECONDS.toNanos(10))));
+            }
+
+            // Let every other thread start waiting before the first load finishes.
+            while (cache.coalescedCount() < threads - 1) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            String first = results.get(0).get();
+
+            for (Future<String> result : results) {
+                assertTrue("Expected every thread to get the same result.", first.equals(result.get()));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertTrue("Expected a single load, got " + loads.get(), loads.get() == 1);
+    }
+
+    /**
+     * A thread waiting for another thread's load of the same key should give up at its deadline, without waiting for
+     * the load to finish, and the load should still be cached once it does.
+     * @throws Exception
+     */
+    @Test(timeout = 10000)
+    public void testCoalescedLoadDeadline() throws Exception
+    {
+        BoundedCache<String, String> cache = new BoundedCache<>(10, 0, TimeUnit.SECONDS);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+
+        try {
+            Future<String> stuck = pool.submit(() -> cache.get("H2O", key -> {
+                started.countDown();
+                release.await();
+                return key;
+            }, System.nanoTime() + TimeUnit.SECONDS.toNanos(10)));
+
+            // Wait for the load to start, so that the lookup below joins it.
+            started.await();
+
+            long start = System.nanoTime();
+
+            try {
+                cache.get("H2O", key -> "loaded again", start + TimeUnit.MILLISECONDS.toNanos(100));
+                assertTrue("Expected a TimeoutException.", false);
+            } catch (TimeoutException e) {
+                long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                assertTrue("Expected to give up after about 100ms, waited " + waited + "ms", waited < 5000);
+            }
+
+            release.countDown();
+            assertTrue("Expected the load to finish.", stuck.get().equals("H2O"));
+            assertTrue("Expected the load to be cached.", "H2O".equals(cache.get("H2O")));
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * The shared per-thread parser must give the same trees as a fresh one,
+     * including straight after a statement with a syntax error.
+     * @throws Exception
+     */
+    @Test
+    public void testReusedParser() throws Exception
+    {
+        String[] inputs = {simpleMolecule, syntaxError, equationStatement1, syntaxError + nestedGroupMolecule,
+                           chargedElectron};
+
+        for (String input : inputs) {
+            ArrayList<Statement> fresh = stringParser(input);
+            ArrayList<Statement> reused = StatementParser.parseAll(input);
+
+            assertTrue("Expected " + fresh.size() + " statements, got " + reused.size(), fresh.size() == reused.size());
+
+            for (int i = 0; i < fresh.size(); i++) {
+                assertTrue("Reused parser gave " + reused.get(i) + " instead of " + fresh.get(i),
+                        fresh.get(i).toString().equals(reused.get(i).toString()));
+            }
+        }
+    }
+
 }
@@ -0,0 +1,434 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * A test suite for the servlets, run against the embedded server on a free port.
+ * Each method defined in class should be annotated with @Test to allow automatic testing.
+ */
+public class TestServer
+{
+    private static Server server;
+    private static int port;
+
+    @BeforeClass
+    public static void startServer() throws Exception
+    {
+        server = Launcher.createServer(0);
+        server.start();
+        port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+    }
+
+    @AfterClass
+    public static void stopServer() throws Exception
+    {
+        server.stop();
+    }
+
+    /**
+     * Posts a JSON body to the server.
+     * @param path Path to post to
+     * @param body JSON request body
+     * @return The connection, with the request sent.
+     * @throws Exception
+     */
+    private static HttpURLConnection post(String path, String body) throws Exception
+    {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http", "localhost", port, path).openConnection();
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json");
+
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+
+        return connection;
+    }
+
+    /**
+     * Reads the response to a request.
+     * @param connection Connection the request was sent on
+     * @return The response body as JSON.
+     * @throws Exception
+     */
+    private static JsonNode response(HttpURLConnection connection) throws Exception
+    {
+        InputStream body = connection.getResponseCode() < HttpURLConnection.HTTP_BAD_REQUEST
+                ? connection.getInputStream() : connection.getErrorStream();
+
+        try (InputStream in = body) {
+            return RunParser.MAPPER.readTree(in);
+        }
+    }
+
+    /**
+     * Reads a stream to the end.
+     * @param in Stream to be read
+     * @return Everything read, as UTF-8.
+     * @throws IOException
+     */
+    private static String readAll(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream all = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+
+        while ((n = in.read(buffer)) != -1) {
+            all.write(buffer, 0, n);
+        }
+
+        return new String(all.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Sends a request over a plain socket, so that its headers and body need not agree.
+     * @param head Request line and headers, each ending in CRLF
+     * @param body Bytes sent after the headers
+     * @return Everything the server sent back.
+     * @throws Exception
+     */
+    private static String send(String head, byte[] body) throws Exception
+    {
+        try (Socket socket = new Socket("localhost", port)) {
+
+            socket.setSoTimeout(10000);
+            OutputStream out = socket.getOutputStream();
+
+            try {
+                out.write((head + "Host: localhost\r\nConnection: close\r\n\r\n")
+                        .getBytes(StandardCharsets.US_ASCII));
+                out.write(body);
+                out.flush();
+
+                // A body shorter than declared would otherwise be waited for.
+                socket.shutdownOutput();
+            } catch (IOException e) {
+                // The server may close the connection once it has answered.
+            }
+
+            return readAll(socket.getInputStream());
+        }
+    }
+
+    /**
+     * Gives a chunked body made of spaces, all sent as one chunk.
+     * @param size Number of spaces
+     * @return The body, with its chunk header and the final empty chunk.
+     */
+    private static byte[] chunkedSpaces(int size)
+    {
+        byte[] head = (Integer.toHexString(size) + "\r\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] tail = "\r\n0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+        byte[] body = new byte[head.length + size + tail.length];
+
+        Arrays.fill(body, (byte) ' ');
+        System.arraycopy(head, 0, body, 0, head.length);
+        System.arraycopy(tail, 0, body, head.length + size, tail.length);
+
+        return body;
+    }
+
+    /**
+     * Gives the exception counts from the metrics.
+     * @return The chemistry_exceptions_total samples, one to a line.
+     */
+    private static String exceptionCounts()
+    {
+        StringBuilder counts = new StringBuilder();
+
+        for (String line : Metrics.render().split("\n")) {
+            if (line.startsWith("chemistry_exceptions_total{")) {
+                counts.append(line).append('\n');
+            }
+        }
+
+        return counts.toString();
+    }
+
+    /**
+     * Checking and parsing through the asynchronous servlets should give the same result as calling them directly.
+     * @throws Exception
+     */
+    @Test(timeout = 30000)
+    public void testAsyncAnswer() throws Exception
+    {
+        HttpURLConnection check = post("/check", "{\"test\": \"HCl + NaOH\", \"target\": \"NaOH + HCl\"}");
+        JsonNode checked = response(check);
+
+        assertTrue("Expected 200, got " + check.getResponseCode(), check.getResponseCode() == 200);
+        assertTrue("Expected equal answer, got " + checked, checked.get("equal").asBoolean());
+        assertTrue("Expected the same result as RunParser.check, got " + checked,
+                checked.equals(RunParser.MAPPER.readTree(RunParser.check("HCl + NaOH", "NaOH + HCl"))));
+
+        HttpURLConnection parse = post("/parse", "{\"test\": \"H2O +\"}");
+        JsonNode parsed = response(parse);
+
+        assertTrue("Expected 200, got " + parse.getResponseCode(), parse.getResponseCode() == 200);
+        assertTrue("Expected syntax error, got " + parsed, parsed.get("containsError").asBoolean()
+                && parsed.get("syntaxError").get("position").asInt() == 5);
+    }
+
+    /**
+     * A body that is not valid JSON should be refused with 400 and an error body.
+     * @throws Exception
+     */
+    @Test(timeout = 30000)
+    public void testAsyncMalformed() throws Exception
+    {
+        HttpURLConnection check = post("/check", "{\"test\": \"H2O\", \"target\":");
+        assertTrue("Expected 400, got " + check.getResponseCode(), check.getResponseCode() == 400);
+        assertTrue("Expected error body.", response(check).has("error"));
+
+        HttpURLConnection parse = post("/parse", "not json");
+        assertTrue("Expected 400, got " + parse.getResponseCode(), parse.getResponseCode() == 400);
+        assertTrue("Expected error body.", response(parse).get("error").asText().equals("Can't parse input!"));
+    }
+
+    /**
+     * A request whose body never finishes arriving should be answered with 503, a Retry-After header and an error
+     * once <code>chemistry.async.timeout</code> has passed. The build sets it short for this test.
+     * @throws Exception
+     */
+    @Test(timeout = 30000)
+    public void testAsyncTimeout() throws Exception
+    {
+        assumeTrue("Needs a short -Dchemistry.async.timeout", AsyncJsonServlet.TIMEOUT <= 10000);
+
+        try (Socket socket = new Socket("localhost", port)) {
+
+            socket.setSoTimeout(20000);
+            OutputStream out = socket.getOutputStream();
+
+            // Less than the declared length, and the connection is left open, so the body is waited for.
+            out.write(("POST /check HTTP/1.1\r\nContent-Type: application/json\r\nContent-Length: 100\r\n"
+                    + "Host: localhost\r\nConnection: close\r\n\r\n{\"test\": \"H2O\"")
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            String response = readAll(socket.getInputStream());
+
+            assertTrue("Expected 503, got " + response, response.startsWith("HTTP/1.1 503"));
+            assertTrue("Expected Retry-After, got " + response,
+                    response.contains("Retry-After: " + CheckingPool.RETRY_AFTER));
+            assertTrue("Expected error body, got " + response, response.contains("Timed out!"));
+        }
+
+        HttpURLConnection check = post("/check", "{\"test\": \"H2O\", \"target\": \"H2O\"}");
+        assertTrue("Expected 200 after a timeout, got " + check.getResponseCode(),
+                check.getResponseCode() == 200 && response(check).get("equal").asBoolean());
+    }
+
+    /**
+     * A chunked body over the size limit should be refused once with 413, leaving the server working.
+     * @throws Exception
+     */
+    @Test(timeout = 30000)
+    public void testAsyncTooLarge() throws Exception
+    {
+        String exceptions = exceptionCounts();
+
+        // Just over the limit, and all sent at once, so that the rest of the body has already arrived by the time
+        // it is refused.
+        String response = send("POST /check HTTP/1.1\r\nContent-Type: application/json\r\n"
+                + "Transfer-Encoding: chunked\r\n", chunkedSpaces(RequestBody.MAX_BYTES + 100));
+
+        assertTrue("Expected 413, got " + response, response.startsWith("HTTP/1.1 413")
+                && response.contains("Request too large!"));
+        // Answering again, or decoding the cut off body, would count an exception.
+        assertTrue("Expected the rest of the body to be ignored, got\n" + exceptionCounts(),
+                exceptions.equals(exceptionCounts()));
+
+        HttpURLConnection check = post("/check", "{\"test\": \"H2O\", \"target\": \"H2O\"}");
+        assertTrue("Expected 200 after a refused body, got " + check.getResponseCode(),
+                check.getResponseCode() == 200 && response(check).get("equal").asBoolean());
+    }
+
+    /**
+     * When every checking thread is busy and the queue is full, requests and batches should be turned away with 503 and
+     * a Retry-After header, and answered again once there is room.
+     * @throws Exception
+     */
+    @Test(timeout = 30000)
+    public void testAsyncTooBusy() throws Exception
+    {
+        CountDownLatch release = new CountDownLatch(1);
+
+        try {
+            try {
+                while (true) {
+                    CheckingPool.execute(() -> {
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    });
+                }
+            } catch (RejectedExecutionException e) {
+                // Every thread is busy and the queue is full.
+            }
+
+            HttpURLConnection busy = post("/check", "{\"test\": \"H2O\", \"target\": \"H2O\"}");
+
+            assertTrue("Expected 503, got " + busy.getResponseCode(), busy.getResponseCode() == 503);
+            assertTrue("Expected Retry-After " + CheckingPool.RETRY_AFTER + ", got "
+                    + busy.getHeaderField("Retry-After"),
+                    Integer.toString(CheckingPool.RETRY_AFTER).equals(busy.getHeaderField("Retry-After")));
+            assertTrue("Expected error body.", response(busy).get("error").asText().equals("Too busy!"));
+
+            // Batches share the same threads.
+            HttpURLConnection busyBatch = post("/check/batch", "{\"target\": \"H2O\", \"tests\": [\"H2O\"]}");
+            assertTrue("Expected 503 for a batch, got " + busyBatch.getResponseCode(),
+                    busyBatch.getResponseCode() == 503);
+        } finally {
+            release.countDown();
+        }
+
+        while (CheckingPool.queued() > 0) {
+            Thread.sleep(1);
+        }
+
+        HttpURLConnection check = post("/check", "{\"test\": \"H2O\", \"target\": \"H2O\"}");
+        assertTrue("Expected 200 once the pool has room, got " + check.getResponseCode(),
+                check.getResponseCode() == 200);
+    }
+
+    /**
+     * Batch results should come back in the same order as the answers, each matching a single check.
+     * @throws Exception
+     */
+    @Test(timeout = 30000)
+    public void testBatchOrder() throws Exception
+    {
+        StringBuilder pairs = new StringBuilder();
+        List<String[]> inputs = new ArrayList<>();
+
+        for (int i = 1; i <= 200; i++) {
+            String[] input = {"C" + i + "H" + (2 * i + 2), i % 3 == 0 ? "C" + i + "H" + (2 * i + 2) : "CH4"};
+            inputs.add(input);
+            pairs.append(i == 1 ? "" : ", ").append("{\"test\": \"").append(input[0]).append("\", \"target\": \"")
+                    .append(input[1]).append("\"}");
+        }
+
+        HttpURLConnection batch = post("/check/batch", "{\"pairs\": [" + pairs + "]}");
+        JsonNode results = response(batch);
+
+        assertTrue("Expected 200, got " + batch.getResponseCode(), batch.getResponseCode() == 200);
+        assertTrue("Expected " + inputs.size() + " results, got " + results.size(), results.size() == inputs.size());
+
+        for (int i = 0; i < inputs.size(); i++) {
+            JsonNode expected = RunParser.MAPPER.readTree(RunParser.check(inputs.get(i)[0], inputs.get(i)[1]));
+            assertTrue("Expected result " + i + " to be " + expected + ", got " + results.get(i),
+                    expected.equals(results.get(i)));
+        }
+    }
+
+    /**
+     * An answer or target that cannot be checked should give an error in its own place, leaving the others alone.
+     * @throws Exception
+     */
+    @Test(timeout = 30000)
+    public void testBatchErrors() throws Exception
+    {
+        String tooLong = new String(new char[ParseLimits.MAX_LENGTH + 1]).replace('\0', 'H');
+        HttpURLConnection batch = post("/check/batch", "{\"pairs\": [{\"test\": \"H2O\", \"target\": \"H2O\"}, "
+                + "{\"test\": \"H2O\", \"target\": \"" + tooLong + "\"}, {\"test\": \"HO2\", \"target\": \"H2O\"}, "
+                + "{\"test\": \"" + tooLong + "\", \"target\": \"H2O\"}]}");
+        JsonNode results = response(batch);
+
+        assertTrue("Expected 200, got " + batch.getResponseCode(), batch.getResponseCode() == 200);
+        assertTrue("Expected 4 results, got " + results, results.size() == 4);
+        assertTrue("Expected first answer to be right, got " + results.get(0), results.get(0).get("equal").asBoolean());
+        assertTrue("Expected an error for the unparsable target, got " + results.get(1),
+                results.get(1).has("error") && results.get(1).get("syntaxError").get("message").asText()
+                        .equals("Input too long."));
+        assertTrue("Expected third answer to be wrong, got " + results.get(2),
+                !results.get(2).has("error") && !results.get(2).get("equal").asBoolean());
+        assertTrue("Expected an error for the unparsable answer, got " + results.get(3),
+                results.get(3).has("error") && results.get(3).get("syntaxError").get("message").asText()
+                        .equals("Input too long."));
+    }
+
+    /**
+     * Batches of more answers than allowed should be refused, and batches of exactly that many answered.
+     * @throws Exception
+     */
+    @Test(timeout = 30000)
+    public void testBatchSizeLimit() throws Exception
+    {
+        StringBuilder tests = new StringBuilder();
+
+        for (int i = 0; i < 1000; i++) {
+            tests.append(i == 0 ? "\"H2O\"" : ", \"H2O\"");
+        }
+
+        HttpURLConnection full = post("/check/batch", "{\"target\": \"H2O\", \"tests\": [" + tests + "]}");
+        JsonNode results = response(full);
+        assertTrue("Expected 1000 results, got " + full.getResponseCode(),
+                full.getResponseCode() == 200 && results.size() == 1000);
+
+        HttpURLConnection over = post("/check/batch", "{\"target\": \"H2O\", \"tests\": [" + tests + ", \"H2O\"]}");
+        JsonNode error = response(over);
+        assertTrue("Expected 400 for 1001 answers, got " + over.getResponseCode() + " " + error,
+                over.getResponseCode() == 400 && error.get("error").asText().startsWith("Too many answers!"));
+    }
+
+    /**
+     * Batch bodies over the size limit should be refused with 413, whether or not their length is declared.
+     * @throws Exception
+     */
+    @Test(timeout = 30000)
+    public void testBatchBodyLimit() throws Exception
+    {
+        // Default chemistry.batch.maxBytes.
+        int limit = 1024 * 1024;
+
+        String declared = send("POST /check/batch HTTP/1.1\r\nContent-Type: application/json\r\n"
+                + "Content-Length: " + (limit + 1) + "\r\n", new byte[0]);
+        assertTrue("Expected 413 for a declared length over the limit, got " + declared,
+                declared.startsWith("HTTP/1.1 413") && declared.contains("Request too large!"));
+
+        String chunked = send("POST /check/batch HTTP/1.1\r\nContent-Type: application/json\r\n"
+                + "Transfer-Encoding: chunked\r\n", chunkedSpaces(limit + 100));
+        assertTrue("Expected 413 for a chunked body over the limit, got " + chunked,
+                chunked.startsWith("HTTP/1.1 413") && chunked.contains("Request too large!"));
+    }
+}